@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.benchmark;
+
+import android.net.Uri;
+import com.jcodeing.kmedia.APlayer;
+import com.jcodeing.kmedia.IMediaPlayer;
+import com.jcodeing.kmedia.PlayerListener;
+import com.jcodeing.kmedia.benchmark.SimulatedMediaPlayer.VirtualClock;
+import com.jcodeing.kmedia.definition.IPositionUnitList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * {@link APlayer} listener fan-out and updatePlayProgress (position unit + A-B + play progress per
+ * tick) on a {@link SimulatedMediaPlayer} stub engine, playing, position set by the benchmark.
+ * <p>Runs without a FlightRecorder (SystemClock is native on the JVM).<p/>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class APlayerBenchmark {
+
+  private static final long DURATION_MS = 60 * 60 * 1000;
+  private static final String MEDIA_ID = "bench";
+
+  @Param({"1", "8"})
+  int listeners;
+
+  /**
+   * position units in the media, 0: none
+   */
+  @Param({"0", "1000"})
+  int posUnits;
+
+  private BenchPlayer player;
+  private StubEngine engine;
+  private long position;
+
+  @Setup
+  public void setUp() {
+    JvmLooper.prepare();
+    VirtualClock clock = new VirtualClock();
+    engine = new StubEngine(clock);
+    engine.setMediaDuration(DURATION_MS);
+    engine.setPrepareLatency(SimulatedMediaPlayer.Latency.fixed(0));
+    player = new BenchPlayer();
+    player.init(engine);
+    for (int i = 0; i < listeners; i++) {
+      player.addListener(new PlayerListener() {
+        @Override
+        public boolean onPlayProgress(long position, long duration) {
+          return true;
+        }
+      });
+    }
+    if (posUnits > 0) {
+      player.setPositionUnitList(new UnitList(posUnits));
+    }
+    player.play(new MediaQueueBenchmark.Item(MEDIA_ID, Uri.parse("sim://media/0")));
+    clock.advance(1000);//prepared, started
+    if (!engine.isPlaying()) {
+      throw new IllegalStateException("stub engine not playing");
+    }
+  }
+
+  /**
+   * One progress tick, 200ms apart
+   */
+  @Benchmark
+  public int updatePlayProgress() {
+    position = (position + 200) % DURATION_MS;
+    engine.position = position;
+    player.tick();
+    return player.scheduled;
+  }
+
+  @Benchmark
+  public boolean fanOutPlayProgress() {
+    position = (position + 200) % DURATION_MS;
+    return player.dispatchPlayProgress(position, DURATION_MS);
+  }
+
+  @Benchmark
+  public boolean fanOutInfo() {
+    return player.onInfo(IMediaPlayer.MEDIA_INFO_BUFFERING_END, 0);
+  }
+
+  // ============================@Stub@============================
+  static final class BenchPlayer extends APlayer<BenchPlayer> {
+
+    int scheduled;
+
+    BenchPlayer() {
+      setEnabledAudioFocusManage(false);
+      setFlightRecorder(null);
+    }
+
+    @Override
+    protected BenchPlayer returnThis() {
+      return this;
+    }
+
+    void tick() {
+      updatePlayProgress(11);
+    }
+
+    boolean dispatchPlayProgress(long position, long duration) {
+      return onPlayProgress(position, duration);
+    }
+
+    @Override
+    protected void schedulePlayProgress(long delayMs) {
+      scheduled++;//the benchmark ticks
+    }
+
+    @Override
+    protected void cancelPlayProgress() {
+      //nothing scheduled
+    }
+  }
+
+  static final class StubEngine extends SimulatedMediaPlayer {
+
+    long position;
+
+    StubEngine(VirtualClock clock) {
+      super(clock, 1);
+    }
+
+    @Override
+    public long getCurrentPosition() {
+      return position;
+    }
+  }
+
+  static final class UnitList implements IPositionUnitList {
+
+    private final long unitMs;
+    private final int size;
+
+    UnitList(int size) {
+      this.size = size;
+      unitMs = DURATION_MS / size;
+    }
+
+    @Override
+    public String getMediaId() {
+      return MEDIA_ID;
+    }
+
+    @Override
+    public int positionUnitSize() {
+      return size;
+    }
+
+    @Override
+    public long getStartPosition(int posUnitIndex) {
+      return posUnitIndex * unitMs + 100;
+    }
+
+    @Override
+    public long getEndPosition(int posUnitIndex) {
+      return (posUnitIndex + 1) * unitMs - 100;
+    }
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.benchmark;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * A Looper for the JVM (android-all, no native MessageQueue). <p>{@link com.jcodeing.kmedia.APlayer} creates its
+ * handlers on construction, they need a Looper on the calling thread. This one is never looped:
+ * messages sent to it are queued and never run, so the player under test must drive its
+ * progress/methodAgent scheduling itself (see {@link SoakHarness.SimulatedPlayer}).<p/>
+ */
+final class JvmLooper {
+
+  private JvmLooper() {
+  }
+
+  /**
+   * Install on the calling thread, no-op if it has a Looper already
+   */
+  static void prepare() {
+    if (Looper.myLooper() != null) {
+      return;
+    }
+    try {
+      Looper looper = (Looper) allocateInstance(Looper.class);
+      set(Looper.class, looper, "mQueue", allocateInstance(MessageQueue.class));
+      set(Looper.class, looper, "mThread", Thread.currentThread());
+      @SuppressWarnings("unchecked")
+      ThreadLocal<Looper> threadLocal = (ThreadLocal<Looper>) get(Looper.class, null,
+          "sThreadLocal");
+      threadLocal.set(looper);
+    } catch (Exception e) {
+      throw new IllegalStateException("Cannot install a JVM Looper", e);
+    }
+  }
+
+  /**
+   * Unsafe.allocateInstance: skip the constructors, they call nativeInit()
+   */
+  private static Object allocateInstance(Class<?> cls) throws Exception {
+    Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+    Object unsafe = get(unsafeClass, null, "theUnsafe");
+    Method allocateInstance = unsafeClass.getMethod("allocateInstance", Class.class);
+    return allocateInstance.invoke(unsafe, cls);
+  }
+
+  private static Object get(Class<?> cls, Object obj, String name) throws Exception {
+    Field field = cls.getDeclaredField(name);
+    field.setAccessible(true);
+    return field.get(obj);
+  }
+
+  private static void set(Class<?> cls, Object obj, String name, Object value) throws Exception {
+    Field field = cls.getDeclaredField(name);
+    field.setAccessible(true);
+    field.set(obj, value);
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.benchmark;
+
+import android.net.Uri;
+import android.os.Bundle;
+import com.jcodeing.kmedia.definition.IMediaItem;
+import com.jcodeing.kmedia.definition.MediaQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * {@link MediaQueue#seekIndexByMediaId(String)} and {@link MediaQueue#getRandomIndex()}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MediaQueueBenchmark {
+
+  @Param({"100", "30000"})
+  int size;
+
+  private MediaQueue queue;
+  private String[] mediaIds;
+  private int cursor;
+
+  @Setup
+  public void setup() {
+    List<IMediaItem> items = new ArrayList<>(size);
+    mediaIds = new String[size];
+    for (int i = 0; i < size; i++) {
+      mediaIds[i] = "media-" + i;
+      items.add(new Item(mediaIds[i]));
+    }
+    queue = new MediaQueue();
+    queue.update(items);
+    queue.setShuffleSeed(42);
+  }
+
+  @Benchmark
+  public int seekIndexByMediaId() {
+    //walk ids, average half queue scan
+    cursor = (cursor + 7919) % size;
+    return queue.seekIndexByMediaId(mediaIds[cursor]);
+  }
+
+  @Benchmark
+  public int getRandomIndex() {
+    return queue.getRandomIndex();
+  }
+
+  static final class Item implements IMediaItem {
+
+    private final String mediaId;
+    private final Uri mediaUri;
+
+    Item(String mediaId) {
+      this(mediaId, null);
+    }
+
+    Item(String mediaId, Uri mediaUri) {
+      this.mediaId = mediaId;
+      this.mediaUri = mediaUri;
+    }
+
+    @Override
+    public String getMediaId() {
+      return mediaId;
+    }
+
+    @Override
+    public Uri getMediaUri() {
+      return mediaUri;
+    }
+
+    @Override
+    public CharSequence getTitle() {
+      return mediaId;
+    }
+
+    @Override
+    public CharSequence getDescription() {
+      return null;
+    }
+
+    @Override
+    public Uri getIconUri() {
+      return null;
+    }
+
+    @Override
+    public Bundle getExtras() {
+      return null;
+    }
+  }
+}
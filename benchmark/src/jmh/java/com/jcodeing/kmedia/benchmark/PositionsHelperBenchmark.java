@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.benchmark;
+
+import com.jcodeing.kmedia.assist.PositionsHelper;
+import com.jcodeing.kmedia.definition.IPositionUnit;
+import com.jcodeing.kmedia.definition.IPositionUnitList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * {@link PositionsHelper#searchStartIndex} on a List and on an IPositionUnitList
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PositionsHelperBenchmark {
+
+  @Param({"100", "10000"})
+  int size;
+
+  private List<IPositionUnit> units;
+  private IPositionUnitList unitList;
+  private long[] positions;
+  private int cursor;
+
+  @Setup
+  public void setup() {
+    final long[] starts = new long[size];
+    units = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      final long start = i * 3000L;
+      starts[i] = start;
+      units.add(new IPositionUnit() {
+        @Override
+        public long getStartPos() {
+          return start;
+        }
+
+        @Override
+        public long getEndPos() {
+          return start + 2500;
+        }
+      });
+    }
+    unitList = new IPositionUnitList() {
+      @Override
+      public String getMediaId() {
+        return "benchmark";
+      }
+
+      @Override
+      public int positionUnitSize() {
+        return starts.length;
+      }
+
+      @Override
+      public long getStartPosition(int posUnitIndex) {
+        return starts[posUnitIndex];
+      }
+
+      @Override
+      public long getEndPosition(int posUnitIndex) {
+        return starts[posUnitIndex] + 2500;
+      }
+    };
+    //pseudo random positions, not let the branch predictor learn one path
+    positions = new long[1024];
+    long seed = 42;
+    for (int i = 0; i < positions.length; i++) {
+      seed = seed * 6364136223846793005L + 1442695040888963407L;
+      positions[i] = ((seed >>> 33) % (size * 3000L));
+    }
+  }
+
+  private long nextPosition() {
+    return positions[cursor++ & (positions.length - 1)];
+  }
+
+  @Benchmark
+  public int searchStartIndexList() {
+    return PositionsHelper.searchStartIndex(units, nextPosition());
+  }
+
+  @Benchmark
+  public int searchStartIndexPositionUnitList() {
+    return PositionsHelper.searchStartIndex(unitList, nextPosition());
+  }
+}
@@ -0,0 +1,661 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.benchmark;
+
+import android.content.Context;
+import android.net.Uri;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+import android.view.TextureView;
+import com.jcodeing.kmedia.AMediaPlayer;
+import java.io.IOException;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Simulated media player, no decoding, driven by a {@link VirtualClock}. <p>Prepare, seek and
+ * buffering take a latency sampled from a {@link Latency}, stalls and errors are injected at a rate
+ * per hour of played media, speed is supported. Nothing happens until the clock is advanced, so
+ * hours of playback run in milliseconds and are repeatable with the same seed.<p/>
+ * <pre>
+ * e.g.
+ * SimulatedMediaPlayer.VirtualClock clock = new SimulatedMediaPlayer.VirtualClock();
+ * SimulatedMediaPlayer mp = new SimulatedMediaPlayer(clock, 1);
+ * mp.setMediaDuration(3 * 60 * 1000);
+ * mp.setStallsPerHour(6);
+ * player.init(mp);
+ * player.play(uri);
+ * clock.advanceTo(clock.now() + 60 * 60 * 1000);
+ * </pre>
+ *
+ * @see SoakHarness
+ */
+public class SimulatedMediaPlayer extends AMediaPlayer {
+
+  // ============================@Clock@============================
+  /**
+   * Single threaded discrete event clock, shared by the simulated player(s) and anything
+   * scheduled on it (e.g. {@link SoakHarness} player handlers)
+   */
+  public static final class VirtualClock {
+
+    private final PriorityQueue<Task> tasks = new PriorityQueue<>();
+    private long now;
+    private long sequence;
+    private int pending;
+    private int maxPending;
+    private long executedCount;
+    private long maxTaskNanos;
+
+    public long now() {
+      return now;
+    }
+
+    /**
+     * @return token for {@link #cancel(Object)}
+     */
+    public Object schedule(long delayMs, Runnable runnable) {
+      Task task = new Task(now + Math.max(0, delayMs), sequence++, runnable);
+      tasks.add(task);
+      if (++pending > maxPending) {
+        maxPending = pending;
+      }
+      return task;
+    }
+
+    public void cancel(Object token) {
+      if (token instanceof Task && !((Task) token).cancelled) {
+        ((Task) token).cancelled = true;//lazy removal
+        pending--;
+      }
+    }
+
+    /**
+     * Run the next task due not after time, or move the clock to time
+     *
+     * @return false: no task left before time
+     */
+    public boolean runNext(long time) {
+      Task task;
+      while ((task = tasks.peek()) != null && task.cancelled) {
+        tasks.poll();
+      }
+      if (task == null || task.time > time) {
+        if (time > now) {
+          now = time;
+        }
+        return false;
+      }
+      tasks.poll();
+      task.cancelled = true;
+      pending--;
+      now = task.time;
+      long start = System.nanoTime();
+      task.runnable.run();
+      long took = System.nanoTime() - start;
+      if (took > maxTaskNanos) {
+        maxTaskNanos = took;
+      }
+      executedCount++;
+      return true;
+    }
+
+    public void advanceTo(long time) {
+      while (runNext(time)) {
+        //run all due
+      }
+    }
+
+    public void advance(long ms) {
+      advanceTo(now + ms);
+    }
+
+    // =========@Counter@=========
+    /**
+     * @return scheduled and not yet run/cancelled (backlog)
+     */
+    public int getPendingCount() {
+      return pending;
+    }
+
+    public int getMaxPendingCount() {
+      return maxPending;
+    }
+
+    public long getExecutedCount() {
+      return executedCount;
+    }
+
+    /**
+     * @return longest real (wall) time one task took
+     */
+    public long getMaxTaskNanos() {
+      return maxTaskNanos;
+    }
+
+    private static final class Task implements Comparable<Task> {
+
+      final long time;
+      final long sequence;
+      final Runnable runnable;
+      boolean cancelled;
+
+      Task(long time, long sequence, Runnable runnable) {
+        this.time = time;
+        this.sequence = sequence;
+        this.runnable = runnable;
+      }
+
+      @Override
+      public int compareTo(Task o) {
+        if (time != o.time) {
+          return time < o.time ? -1 : 1;
+        }
+        return sequence < o.sequence ? -1 : (sequence == o.sequence ? 0 : 1);
+      }
+    }
+  }
+
+  // ============================@Latency@============================
+  /**
+   * Latency distribution (ms)
+   */
+  public abstract static class Latency {
+
+    public abstract long sample(Random random);
+
+    public static Latency fixed(final long ms) {
+      return new Latency() {
+        @Override
+        public long sample(Random random) {
+          return ms;
+        }
+      };
+    }
+
+    public static Latency uniform(final long minMs, final long maxMs) {
+      return new Latency() {
+        @Override
+        public long sample(Random random) {
+          return minMs + (long) (random.nextDouble() * (maxMs - minMs));
+        }
+      };
+    }
+
+    /**
+     * Long tail, e.g. network buffering
+     */
+    public static Latency exponential(final long minMs, final long meanMs) {
+      return new Latency() {
+        @Override
+        public long sample(Random random) {
+          return minMs + (long) (-Math.log(1 - random.nextDouble()) * (meanMs - minMs));
+        }
+      };
+    }
+  }
+
+  // ============================@Config@============================
+  private final VirtualClock clock;
+  private final Random random;
+
+  private long mediaDuration = 5 * 60 * 1000;
+  private Latency prepareLatency = Latency.uniform(50, 300);
+  private Latency seekLatency = Latency.uniform(10, 120);
+  private Latency bufferingLatency = Latency.exponential(200, 1500);
+  private double stallsPerHour;
+  private double errorsPerHour;
+  private double prepareErrorProbability;
+  private int videoWidth;
+  private int videoHeight;
+
+  public SimulatedMediaPlayer(VirtualClock clock, long seed) {
+    this.clock = clock;
+    this.random = new Random(seed);
+  }
+
+  public VirtualClock getClock() {
+    return clock;
+  }
+
+  /**
+   * Duration of every data source
+   */
+  public void setMediaDuration(long mediaDuration) {
+    this.mediaDuration = mediaDuration;
+  }
+
+  public long getMediaDuration() {
+    return mediaDuration;
+  }
+
+  public void setPrepareLatency(Latency prepareLatency) {
+    this.prepareLatency = prepareLatency;
+  }
+
+  public void setSeekLatency(Latency seekLatency) {
+    this.seekLatency = seekLatency;
+  }
+
+  /**
+   * Stall length, between MEDIA_INFO_BUFFERING_START and END
+   */
+  public void setBufferingLatency(Latency bufferingLatency) {
+    this.bufferingLatency = bufferingLatency;
+  }
+
+  /**
+   * @param stallsPerHour mean stalls per hour of played media (poisson), 0: none
+   */
+  public void setStallsPerHour(double stallsPerHour) {
+    this.stallsPerHour = stallsPerHour;
+  }
+
+  /**
+   * @param errorsPerHour mean playback errors per hour of played media (poisson), 0: none
+   */
+  public void setErrorsPerHour(double errorsPerHour) {
+    this.errorsPerHour = errorsPerHour;
+  }
+
+  /**
+   * @param probability 0~1, prepareAsync ends with error instead of prepared
+   */
+  public void setPrepareErrorProbability(double probability) {
+    this.prepareErrorProbability = probability;
+  }
+
+  public void setVideoSize(int width, int height) {
+    videoWidth = width;
+    videoHeight = height;
+  }
+
+  // ============================@State@============================
+  private boolean isPrepared;
+  private boolean playing;
+  private boolean seeking;
+  private boolean stalled;
+  private boolean looping;
+  private float speed = 1;
+  private float volume = 1;
+  /**
+   * position at baseTime, position advances from baseTime only while {@link #advancing()}
+   */
+  private long basePosition;
+  private long baseTime;
+  // =========@Pending event token@=========
+  private Object prepareToken;
+  private Object seekToken;
+  private Object stallEndToken;
+  private Object completionToken;
+  private Object stallToken;
+  private Object errorToken;
+
+  private boolean advancing() {
+    return playing && !seeking && !stalled;
+  }
+
+  /**
+   * Fold elapsed time into basePosition
+   */
+  private void rebase() {
+    basePosition = position();
+    baseTime = clock.now();
+  }
+
+  private long position() {
+    if (!advancing()) {
+      return basePosition;
+    }
+    long position = basePosition + (long) ((clock.now() - baseTime) * speed);
+    return Math.min(position, mediaDuration);
+  }
+
+  /**
+   * @param rate per hour of media
+   * @return ms of clock time, until next poisson event
+   */
+  private long sampleInterval(double rate) {
+    double mediaMs = -Math.log(1 - random.nextDouble()) * 3600000d / rate;
+    return (long) (mediaMs / speed);
+  }
+
+  /**
+   * (Re)schedule completion/stall/error, from the current position
+   */
+  private void schedulePlayEvents() {
+    cancelPlayEvents();
+    if (!advancing()) {
+      return;
+    }
+    completionToken = clock.schedule((long) Math.ceil((mediaDuration - basePosition) / speed),
+        completionAction);
+    if (stallsPerHour > 0) {
+      stallToken = clock.schedule(sampleInterval(stallsPerHour), stallAction);
+    }
+    if (errorsPerHour > 0) {
+      errorToken = clock.schedule(sampleInterval(errorsPerHour), errorAction);
+    }
+  }
+
+  private void cancelPlayEvents() {
+    clock.cancel(completionToken);
+    clock.cancel(stallToken);
+    clock.cancel(errorToken);
+    completionToken = stallToken = errorToken = null;
+  }
+
+  private void cancelAll() {
+    cancelPlayEvents();
+    clock.cancel(prepareToken);
+    clock.cancel(seekToken);
+    clock.cancel(stallEndToken);
+    prepareToken = seekToken = stallEndToken = null;
+  }
+
+  // ============================@Event@============================
+  private final Runnable prepareAction = new Runnable() {
+    @Override
+    public void run() {
+      prepareToken = null;
+      if (random.nextDouble() < prepareErrorProbability) {
+        error(MEDIA_ERROR_IO);
+        return;
+      }
+      isPrepared = true;
+      setPlaybackState(STATE_READY);
+      if (videoWidth > 0 && videoHeight > 0) {
+        notifyOnVideoSizeChanged(videoWidth, videoHeight, 0, 1);
+      }
+      notifyOnPrepared();
+    }
+  };
+
+  private final Runnable seekAction = new Runnable() {
+    @Override
+    public void run() {
+      seekToken = null;
+      seeking = false;
+      baseTime = clock.now();
+      schedulePlayEvents();
+      setPlaybackState(STATE_READY);
+      notifyOnSeekComplete();
+    }
+  };
+
+  private final Runnable stallAction = new Runnable() {
+    @Override
+    public void run() {
+      stallToken = null;
+      rebase();
+      stalled = true;
+      cancelPlayEvents();
+      stallEndToken = clock.schedule(bufferingLatency.sample(random), stallEndAction);
+      notifyOnInfo(MEDIA_INFO_BUFFERING_START, 0);
+    }
+  };
+
+  private final Runnable stallEndAction = new Runnable() {
+    @Override
+    public void run() {
+      stallEndToken = null;
+      stalled = false;
+      baseTime = clock.now();
+      schedulePlayEvents();
+      notifyOnInfo(MEDIA_INFO_BUFFERING_END, 0);
+    }
+  };
+
+  private final Runnable errorAction = new Runnable() {
+    @Override
+    public void run() {
+      errorToken = null;
+      error(MEDIA_ERROR_UNKNOWN);
+    }
+  };
+
+  private final Runnable completionAction = new Runnable() {
+    @Override
+    public void run() {
+      completionToken = null;
+      if (looping) {
+        basePosition = 0;
+        baseTime = clock.now();
+        schedulePlayEvents();
+        return;
+      }
+      basePosition = mediaDuration;
+      playing = false;
+      cancelPlayEvents();
+      setPlaybackState(STATE_ENDED);
+      notifyOnCompletion();
+    }
+  };
+
+  private void error(int what) {
+    rebase();
+    playing = false;
+    cancelAll();
+    isPrepared = false;
+    setPlaybackState(STATE_IDLE);
+    notifyOnError(what, 0, null);
+  }
+
+  // ============================@Source@============================
+  @Override
+  public void setDataSource(Context context, Uri uri, Map<String, String> headers)
+      throws IOException, IllegalArgumentException, SecurityException, IllegalStateException {
+    super.setDataSource(context, uri, headers);
+    setPlaybackState(STATE_GOT_SOURCE);
+  }
+
+  @Override
+  public void prepareAsync() throws IllegalStateException {
+    if (dataSource == null) {
+      throw new IllegalStateException("no data source");
+    }
+    isPrepared = false;
+    clock.cancel(prepareToken);
+    prepareToken = clock.schedule(prepareLatency.sample(random), prepareAction);
+    setPlaybackState(STATE_BUFFERING);
+  }
+
+  // ============================@Control@============================
+  @Override
+  public boolean start() throws IllegalStateException {
+    if (!isPrepared) {
+      throw new IllegalStateException("not prepared");
+    }
+    if (!playing) {
+      if (getPlaybackState() == STATE_ENDED) {
+        basePosition = 0;
+      }
+      playing = true;
+      baseTime = clock.now();
+      schedulePlayEvents();
+    }
+    notifyOnStateChanged();
+    return true;
+  }
+
+  @Override
+  public boolean pause() throws IllegalStateException {
+    if (!isPrepared) {
+      throw new IllegalStateException("not prepared");
+    }
+    rebase();
+    playing = false;
+    cancelPlayEvents();
+    notifyOnStateChanged();
+    return true;
+  }
+
+  @Override
+  public boolean seekTo(long ms) throws IllegalStateException {
+    if (!isPrepared) {
+      throw new IllegalStateException("not prepared");
+    }
+    cancelPlayEvents();
+    clock.cancel(seekToken);
+    basePosition = Math.max(0, Math.min(ms, mediaDuration));
+    baseTime = clock.now();
+    seeking = true;
+    seekToken = clock.schedule(seekLatency.sample(random), seekAction);
+    setPlaybackState(STATE_BUFFERING);
+    return true;
+  }
+
+  @Override
+  public void stop() throws IllegalStateException {
+    rebase();
+    playing = false;
+    cancelAll();
+  }
+
+  @Override
+  public void reset() {
+    cancelAll();
+    isPrepared = playing = seeking = stalled = false;
+    basePosition = 0;
+    baseTime = clock.now();
+    dataSource = null;
+    setPlaybackState(STATE_IDLE);
+  }
+
+  @Override
+  public void release() {
+    reset();
+    releaseListeners();
+  }
+
+  // ============================@Video@============================
+  @Override
+  public void setVideo(SurfaceView surfaceView) {
+    //Do nothing
+  }
+
+  @Override
+  public void setVideo(TextureView textureView) {
+    //Do nothing
+  }
+
+  @Override
+  public void clearVideo() {
+    //Do nothing
+  }
+
+  @Override
+  public void setDisplay(SurfaceHolder sh) {
+    //Do nothing
+  }
+
+  @Override
+  public void setSurface(Surface surface) {
+    //Do nothing
+  }
+
+  // ============================@Set/Get/Is@============================
+  @Override
+  public void setAudioStreamType(int streamtype) {
+    //Do nothing
+  }
+
+  @Override
+  public void setVolume(float leftVolume, float rightVolume) {
+    volume = leftVolume;
+  }
+
+  @Override
+  public float getVolume() {
+    return volume;
+  }
+
+  @Override
+  public void setScreenOnWhilePlaying(boolean screenOn) {
+    //Do nothing
+  }
+
+  @Override
+  public void setLooping(boolean looping) {
+    this.looping = looping;
+  }
+
+  @Override
+  public boolean isLooping() {
+    return looping;
+  }
+
+  @Override
+  public boolean setPlaybackSpeed(float speed) {
+    if (speed <= 0) {
+      return false;
+    }
+    rebase();
+    this.speed = speed;
+    schedulePlayEvents();
+    return true;
+  }
+
+  @Override
+  public float getPlaybackSpeed() {
+    return speed;
+  }
+
+  @Override
+  public long getCurrentPosition() {
+    return position();
+  }
+
+  @Override
+  public long getDuration() {
+    return isPrepared ? mediaDuration : 0;
+  }
+
+  @Override
+  public int getVideoWidth() {
+    return videoWidth;
+  }
+
+  @Override
+  public int getVideoHeight() {
+    return videoHeight;
+  }
+
+  @Override
+  public int getAudioSessionId() {
+    return 0;
+  }
+
+  @Override
+  public boolean isPlayable() {
+    int state = getPlaybackState();
+    switch (state) {
+      case STATE_IDLE:
+      case STATE_GOT_SOURCE:
+      case STATE_BUFFERING:
+        return false;
+      default:
+        return true;
+    }
+  }
+
+  @Override
+  public boolean isPlaying() {
+    return playing;
+  }
+}
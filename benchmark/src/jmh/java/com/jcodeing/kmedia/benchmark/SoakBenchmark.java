@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * {@link SoakHarness}: hours of simulated playback (stalls, errors, seeks, position unit loops)
+ * per invocation, the report printed after each iteration
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SoakBenchmark {
+
+  @Param({"1000"})
+  long hours;
+
+  private SoakHarness harness;
+  private SoakHarness.Report report;
+
+  @Setup(Level.Iteration)
+  public void setUp() {
+    harness = new SoakHarness(1).setSeeksPerHour(6);
+    harness.getMediaPlayer().setStallsPerHour(4);
+    harness.getMediaPlayer().setErrorsPerHour(0.5);
+    harness.getPlayer().setEnabledPositionUnitLoop(true, 2, 0);
+  }
+
+  @Benchmark
+  public long soak() {
+    report = harness.run(hours * 60 * 60 * 1000);
+    return report.events;
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDown() {
+    System.out.println();
+    System.out.println(report);
+  }
+}
@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.benchmark;
+
+import android.net.Uri;
+import com.jcodeing.kmedia.APlayer;
+import com.jcodeing.kmedia.IMediaPlayer;
+import com.jcodeing.kmedia.IPlayer;
+import com.jcodeing.kmedia.PlayerListener;
+import com.jcodeing.kmedia.benchmark.SimulatedMediaPlayer.VirtualClock;
+import com.jcodeing.kmedia.assist.C;
+import com.jcodeing.kmedia.definition.IMediaItem;
+import com.jcodeing.kmedia.definition.IPositionUnitList;
+import com.jcodeing.kmedia.utils.Histogram;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Load/soak harness: a real {@link APlayer} (loops, A-B, position units, queue auto-skip) on a
+ * {@link SimulatedMediaPlayer}, with the player's progress/methodAgent scheduling moved onto the
+ * same {@link VirtualClock}. <p>Reports event throughput, missed position unit boundaries (detected
+ * later than the tolerance) and scheduling backlog. Runs on the JVM, the APlayer handlers get a
+ * {@link JvmLooper} when the thread has no Looper, nothing is posted to it.<p/>
+ * <pre>
+ * e.g.
+ * SoakHarness harness = new SoakHarness(1);
+ * harness.getMediaPlayer().setStallsPerHour(4);
+ * harness.getPlayer().setEnabledPositionUnitLoop(true, 2, 0);
+ * System.out.println(harness.run(1000L * 60 * 60 * 1000));//1000 hours
+ * </pre>
+ */
+public class SoakHarness {
+
+  // ============================@Player@============================
+  /**
+   * APlayer with progress updates and methodAgent messages on the virtual clock
+   */
+  public static final class SimulatedPlayer extends APlayer<SimulatedPlayer> {
+
+    private final VirtualClock clock;
+    private Object playProgressToken;
+    private final Runnable playProgressAction = new Runnable() {
+      @Override
+      public void run() {
+        playProgressToken = null;
+        updatePlayProgress(11);
+      }
+    };
+
+    SimulatedPlayer(VirtualClock clock) {
+      this.clock = clock;
+      setEnabledAudioFocusManage(false);//no context, no audio focus
+      setFlightRecorder(null);//wall clock records, meaningless in virtual time
+    }
+
+    @Override
+    protected SimulatedPlayer returnThis() {
+      return this;
+    }
+
+    @Override
+    protected void schedulePlayProgress(long delayMs) {
+      clock.cancel(playProgressToken);
+      playProgressToken = clock.schedule(delayMs, playProgressAction);
+    }
+
+    @Override
+    protected void cancelPlayProgress() {
+      clock.cancel(playProgressToken);
+      playProgressToken = null;
+    }
+
+    @Override
+    protected void sendMethodAgent(final int what, final int arg1, long delayMs) {
+      clock.schedule(delayMs, new Runnable() {
+        @Override
+        public void run() {
+          handleMethodAgent(what, arg1);
+        }
+      });
+    }
+  }
+
+  // ============================@Config@============================
+  private final VirtualClock clock = new VirtualClock();
+  private final SimulatedMediaPlayer mediaPlayer;
+  private final SimulatedPlayer player;
+  private final Random random;
+
+  private int itemCount = 20;
+  private long posUnitLengthMs = 5000;
+  private long posUnitGapMs = 500;
+  private long boundaryToleranceMs = 250;
+  private double seeksPerHour;
+  private long errorRetryDelayMs = 1000;
+
+  public SoakHarness(long seed) {
+    JvmLooper.prepare();
+    random = new Random(seed);
+    mediaPlayer = new SimulatedMediaPlayer(clock, seed);
+    player = new SimulatedPlayer(clock);
+    player.init(mediaPlayer);
+    player.addListener(listener);
+    player.setPositionUnitList(posUnitList);
+  }
+
+  public VirtualClock getClock() {
+    return clock;
+  }
+
+  /**
+   * Latencies, stalls, errors, media duration...
+   */
+  public SimulatedMediaPlayer getMediaPlayer() {
+    return mediaPlayer;
+  }
+
+  /**
+   * Loops, A-B, progress delay, media queue auto skip mode...
+   */
+  public SimulatedPlayer getPlayer() {
+    return player;
+  }
+
+  /**
+   * @param itemCount queue size (>= 2 to auto skip)
+   */
+  public SoakHarness setItemCount(int itemCount) {
+    this.itemCount = itemCount;
+    return this;
+  }
+
+  /**
+   * Every item split into [gap][unit][gap][unit]...
+   *
+   * @param lengthMs 0: no position units
+   */
+  public SoakHarness setPositionUnit(long lengthMs, long gapMs) {
+    posUnitLengthMs = lengthMs;
+    posUnitGapMs = gapMs;
+    return this;
+  }
+
+  /**
+   * @param toleranceMs position unit start/end reported later than this is a missed boundary
+   */
+  public SoakHarness setBoundaryToleranceMs(long toleranceMs) {
+    boundaryToleranceMs = toleranceMs;
+    return this;
+  }
+
+  /**
+   * @param seeksPerHour random user seeks per hour of simulated time, 0: none
+   */
+  public SoakHarness setSeeksPerHour(double seeksPerHour) {
+    this.seeksPerHour = seeksPerHour;
+    return this;
+  }
+
+  private final IPositionUnitList posUnitList = new IPositionUnitList() {
+    @Override
+    public String getMediaId() {
+      return posUnitLengthMs > 0 ? player.getCurrentMediaId() : null;
+    }
+
+    @Override
+    public int positionUnitSize() {
+      return (int) (mediaPlayer.getMediaDuration() / (posUnitLengthMs + posUnitGapMs));
+    }
+
+    @Override
+    public long getStartPosition(int posUnitIndex) {
+      return posUnitIndex * (posUnitLengthMs + posUnitGapMs) + posUnitGapMs;
+    }
+
+    @Override
+    public long getEndPosition(int posUnitIndex) {
+      return getStartPosition(posUnitIndex) + posUnitLengthMs;
+    }
+  };
+
+  // ============================@Run@============================
+  private long events;
+  private long boundaries;
+  private long missedBoundaries;
+  private long stalls;
+  private long errors;
+  private long completions;
+  private long seeks;
+  private Histogram boundaryLateness;
+
+  /**
+   * Play the queue from the first item, for simulatedMs of virtual time
+   */
+  public Report run(long simulatedMs) {
+    events = boundaries = missedBoundaries = stalls = errors = completions = seeks = 0;
+    boundaryLateness = new Histogram();
+    ArrayList<IMediaItem> items = new ArrayList<>(itemCount);
+    for (int i = 0; i < itemCount; i++) {
+      String mediaId = "sim_" + i;
+      items.add(new MediaQueueBenchmark.Item(mediaId, Uri.parse("sim://media/" + i)));
+    }
+    player.getMediaQueue().update(items);
+
+    long startTime = clock.now();
+    long wallStart = System.nanoTime();
+    if (seeksPerHour > 0) {
+      scheduleSeek();
+    }
+    player.getMediaQueue().skipToIndex(0);
+    clock.advanceTo(startTime + simulatedMs);
+    clock.cancel(nextSeekToken);
+    long wallMs = (System.nanoTime() - wallStart) / 1000000;
+    player.stop();
+    return new Report(clock.now() - startTime, wallMs, events, boundaries, missedBoundaries,
+        boundaryLateness, stalls, errors, completions, seeks, clock.getExecutedCount(),
+        clock.getMaxPendingCount(), clock.getPendingCount(), clock.getMaxTaskNanos());
+  }
+
+  private Object nextSeekToken;
+
+  private void scheduleSeek() {
+    long delay = (long) (-Math.log(1 - random.nextDouble()) * 3600000d / seeksPerHour);
+    nextSeekToken = clock.schedule(delay, seekAction);
+  }
+
+  private final Runnable seekAction = new Runnable() {
+    @Override
+    public void run() {
+      if (player.isPlayable() && player.seekTo((long) (random.nextDouble() * player.getDuration()))) {
+        seeks++;
+      }
+      scheduleSeek();
+    }
+  };
+
+  private final Runnable retryAction = new Runnable() {
+    @Override
+    public void run() {
+      player.getMediaQueue().skipToNext();
+    }
+  };
+
+  private final PlayerListener listener = new PlayerListener() {
+    @Override
+    public void onPrepared() {
+      events++;
+    }
+
+    @Override
+    public void onSeekComplete() {
+      events++;
+    }
+
+    @Override
+    public boolean onInfo(int what, int extra) {
+      events++;
+      if (what == IMediaPlayer.MEDIA_INFO_BUFFERING_START) {
+        stalls++;
+      }
+      return false;
+    }
+
+    @Override
+    public boolean onError(int what, int extra, Exception e) {
+      events++;
+      errors++;
+      clock.schedule(errorRetryDelayMs, retryAction);
+      return true;
+    }
+
+    @Override
+    public void onStateChanged(int playbackState) {
+      events++;
+      if (playbackState == IPlayer.STATE_ENDED) {
+        completions++;
+      }
+    }
+
+    @Override
+    public boolean onPlayProgress(long position, long duration) {
+      events++;
+      return true;//keep updating, as a progress bar does
+    }
+
+    @Override
+    public void onPositionUnitProgress(long position, int posUnitIndex, int posUnitState) {
+      events++;
+      if (posUnitIndex < 0 || position < 0) {
+        return;
+      }
+      long boundary;
+      if (posUnitState == C.STATE_PROGRESS_POS_UNIT_START) {
+        boundary = posUnitList.getStartPosition(posUnitIndex);
+      } else if (posUnitState == C.STATE_PROGRESS_POS_UNIT_END) {
+        boundary = posUnitList.getEndPosition(posUnitIndex);
+      } else {
+        return;
+      }
+      long lateness = position - boundary;
+      boundaries++;
+      boundaryLateness.record(lateness);
+      if (lateness > boundaryToleranceMs) {
+        missedBoundaries++;
+      }
+    }
+
+    @Override
+    public void onABProgress(long position, long duration, int abState) {
+      events++;
+    }
+  };
+
+  // ============================@Report@============================
+  public static final class Report {
+
+    public final long simulatedMs;
+    public final long wallMs;
+    /**
+     * player listener callbacks
+     */
+    public final long events;
+    public final long boundaries;
+    public final long missedBoundaries;
+    /**
+     * position unit start/end reported position - boundary position
+     */
+    public final Histogram boundaryLateness;
+    public final long stalls;
+    public final long errors;
+    public final long completions;
+    public final long seeks;
+    /**
+     * clock tasks run (player handlers + simulated media events)
+     */
+    public final long tasks;
+    public final int maxBacklog;
+    public final int finalBacklog;
+    public final long maxTaskNanos;
+
+    Report(long simulatedMs, long wallMs, long events, long boundaries, long missedBoundaries,
+        Histogram boundaryLateness, long stalls, long errors, long completions, long seeks,
+        long tasks, int maxBacklog, int finalBacklog, long maxTaskNanos) {
+      this.simulatedMs = simulatedMs;
+      this.wallMs = wallMs;
+      this.events = events;
+      this.boundaries = boundaries;
+      this.missedBoundaries = missedBoundaries;
+      this.boundaryLateness = boundaryLateness;
+      this.stalls = stalls;
+      this.errors = errors;
+      this.completions = completions;
+      this.seeks = seeks;
+      this.tasks = tasks;
+      this.maxBacklog = maxBacklog;
+      this.finalBacklog = finalBacklog;
+      this.maxTaskNanos = maxTaskNanos;
+    }
+
+    public double getEventsPerSecond() {
+      return wallMs > 0 ? events * 1000d / wallMs : events;
+    }
+
+    /**
+     * @return simulated time / wall time
+     */
+    public double getSpeedup() {
+      return wallMs > 0 ? (double) simulatedMs / wallMs : simulatedMs;
+    }
+
+    @Override
+    public String toString() {
+      return "simulated=" + simulatedMs / 3600000d + "h wall=" + wallMs + "ms speedup=" +
+          (long) getSpeedup() + "x\nevents=" + events + " (" + (long) getEventsPerSecond() +
+          "/s) tasks=" + tasks + "\nboundaries=" + boundaries + " missed=" + missedBoundaries +
+          " lateness(" + boundaryLateness + ")\nstalls=" + stalls + " errors=" + errors +
+          " completions=" + completions + " seeks=" + seeks + "\nbacklog max=" + maxBacklog +
+          " final=" + finalBacklog + " maxTask=" + maxTaskNanos / 1000 + "us";
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.benchmark;
+
+import com.jcodeing.kmedia.utils.TimeFormatter;
+import com.jcodeing.kmedia.utils.TimeProgress;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * {@link TimeProgress#stringForTime(long)} vs {@link TimeFormatter} (called per progress tick) and
+ * {@link TimeProgress#timeForString(String)} (position unit parsing)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TimeProgressBenchmark {
+
+  private long timeMs = 3723456;
+  private final TimeFormatter formatter = new TimeFormatter();
+  private long tickMs;
+
+  @Benchmark
+  public String stringForTime() {
+    timeMs += 1000;
+    return TimeProgress.stringForTime(timeMs);
+  }
+
+  @Benchmark
+  public String stringForTimeUnderHour() {
+    timeMs += 1000;
+    return TimeProgress.stringForTime(timeMs % 3600000);
+  }
+
+  /**
+   * 200ms progress ticks, 4 of 5 hit the memo
+   */
+  @Benchmark
+  public int timeFormatterTick() {
+    tickMs += 200;
+    formatter.update(tickMs);
+    return formatter.length();
+  }
+
+  @Benchmark
+  public int timeFormatterEverySecond() {
+    timeMs += 1000;
+    formatter.update(timeMs);
+    return formatter.length();
+  }
+
+  @Benchmark
+  public int timeForString() {
+    return TimeProgress.timeForString("01:02:03.456");
+  }
+
+  @Benchmark
+  public int timeForStringMinutes() {
+    return TimeProgress.timeForString("02:03.456");
+  }
+}
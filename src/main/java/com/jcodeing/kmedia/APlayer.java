@@ -40,6 +40,7 @@ import com.jcodeing.kmedia.definition.IMediaQueue;
 import com.jcodeing.kmedia.definition.IPositionUnitList;
 import com.jcodeing.kmedia.definition.MediaQueue;
 import com.jcodeing.kmedia.utils.Assert;
+import com.jcodeing.kmedia.utils.FlightRecorder;
 import com.jcodeing.kmedia.utils.L;
 import com.jcodeing.kmedia.utils.TimeProgress;
 import java.util.ArrayList;
@@ -97,6 +98,68 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
     return internalPlayer;
   }
 
+  /**
+   * Records listener events, commands and methodAgent messages, default {@link
+   * FlightRecorder#getDefault()}
+   */
+  protected FlightRecorder recorder = FlightRecorder.getDefault();
+
+  /**
+   * @param recorder null: not record
+   */
+  public P setFlightRecorder(FlightRecorder recorder) {
+    this.recorder = recorder;
+    return returnThis();
+  }
+
+  protected void record(int type, long arg1, long arg2) {
+    if (recorder != null) {
+      recorder.record(type, arg1, arg2);
+    }
+  }
+
+  /**
+   * QoE metrics, null(default): not measure
+   */
+  protected PlaybackMetrics metrics;
+
+  public P setPlaybackMetrics(PlaybackMetrics metrics) {
+    this.metrics = metrics;
+    return returnThis();
+  }
+
+  public interface PrepareGate {
+
+    /**
+     * Before a new source touches the engine (not called when already prepared)
+     *
+     * @return false: not prepare, prepare(..) returns false
+     */
+    boolean onPrepare(APlayer player, Uri uri);
+  }
+
+  /**
+   * e.g. decoder budget of {@link com.jcodeing.kmedia.service.PlayerService} sessions
+   */
+  protected PrepareGate prepareGate;
+
+  /**
+   * @param prepareGate null: always prepare
+   */
+  public P setPrepareGate(PrepareGate prepareGate) {
+    this.prepareGate = prepareGate;
+    return returnThis();
+  }
+
+  public PlaybackMetrics getPlaybackMetrics() {
+    return metrics;
+  }
+
+  /**
+   * methodAgent loop seek(position unit/A-B) in progress
+   */
+  private boolean loopSeeking;
+
   /**
    * @return internalPlayer != null
    */
@@ -138,6 +201,7 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
   }
 
   protected boolean prepare(Uri uri, boolean shouldAutoPlayWhenPrepared) {
+    record(FlightRecorder.CMD_PREPARE, shouldAutoPlayWhenPrepared ? 1 : 0, 0);
     this.shouldAutoPlayWhenPrepared = shouldAutoPlayWhenPrepared;
     try {
       if (uri == null || TextUtils.isEmpty(uri.toString()) || internalPlayer == null) {
@@ -148,11 +212,18 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
         onPrepared();
         return true;
       }
+      // =========@gate@=========
+      if (prepareGate != null && !prepareGate.onPrepare(this, uri)) {
+        return false;
+      }
       // =========@reset@=========
       reset();
       // =========@source prepare@=========
       internalPlayer.setDataSource(uri.toString());
       internalPlayer.prepareAsync();
+      if (metrics != null) {
+        metrics.onPrepareStart();
+      }
 
       // =========@Default@=========
       currentMediaId = uri.toString();
@@ -267,6 +338,11 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
     pendingSeekToMs = ms;
   }
 
+  @Override
+  public long getSeekToPending() {
+    return pendingSeekToMs;
+  }
+
   protected boolean haveSeekToPending() {
     return pendingSeekToMs != C.POSITION_UNSET;
   }
@@ -284,6 +360,7 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
   // ============================@Control
   @Override
   public boolean start() {
+    record(FlightRecorder.CMD_START, 0, 0);
     shouldAutoPlayWhenSeekComplete = true;
     try {
       if (isPlayable()) {
@@ -291,6 +368,9 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
           return false;
         }
         internalPlayer.start();
+        if (metrics != null) {
+          metrics.onPlayingChanged(true);
+        }
         //go update...
         updatePlayProgress(1);
         //start notification
@@ -327,12 +407,16 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
 
   @Override
   public boolean pause() {
+    record(FlightRecorder.CMD_PAUSE, 0, 0);
     shouldAutoPlayWhenSeekComplete = false;
     try {
       //interrupt update...
       updatePlayProgress(0);
       if (isPlayable()) {
         internalPlayer.pause();
+        if (metrics != null) {
+          metrics.onPlayingChanged(false);
+        }
         return true;
       }
     } catch (Exception e) {
@@ -344,11 +428,15 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
 
   @Override
   public boolean seekTo(long ms, int processingLevel) {
+    record(FlightRecorder.CMD_SEEK_TO, ms, processingLevel);
     try {
       if (isPlayable()) {
         long duration = getDuration();
         long position = Math.min(ms < 0 ? 0 : ms, duration);
         internalPlayer.seekTo(position);
+        if (metrics != null) {
+          metrics.onSeekStart(loopSeeking);
+        }
         // =========@processing@=========
         if (processingLevel >= 1) {
           onPlayProgress(position, duration);
@@ -377,12 +465,16 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
 
   @Override
   public void stop() {
+    record(FlightRecorder.CMD_STOP, 0, 0);
     try {
       //interrupt update...
       updatePlayProgress(0);
       if (internalPlayer != null) {
         internalPlayer.stop();
       }
+      if (metrics != null) {
+        metrics.onReset();
+      }
       giveUpAudioFocus();
       unregisterComponentReceiver();
       //stop notification
@@ -395,6 +487,7 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
 
   @Override
   public void reset() {
+    record(FlightRecorder.CMD_RESET, 0, 0);
     //interrupt update...
     updatePlayProgress(0);
     // =========@Reset@=========
@@ -407,10 +500,14 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
     if (internalPlayer != null) {
       internalPlayer.reset();
     }
+    if (metrics != null) {
+      metrics.onReset();
+    }
   }
 
   @Override
   public void release() {
+    record(FlightRecorder.CMD_RELEASE, 0, 0);
     stop();
     // =========@Release@=========
     if (internalPlayer != null) {
@@ -542,6 +639,10 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
 
   @Override
   public void onPrepared() {
+    record(FlightRecorder.EVENT_PREPARED, 0, 0);
+    if (metrics != null) {
+      metrics.onPrepared();
+    }
     if (shouldAutoPlayWhenPrepared) {
       start();
     }
@@ -552,6 +653,7 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
 
   @Override
   public void onBufferingUpdate(int percent) {
+    record(FlightRecorder.EVENT_BUFFERING_UPDATE, percent, 0);
     for (Listener listener : listeners) {
       listener.onBufferingUpdate(percent);
     }
@@ -567,6 +669,10 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
 
   @Override
   public void onSeekComplete() {
+    record(FlightRecorder.EVENT_SEEK_COMPLETE, 0, 0);
+    if (metrics != null) {
+      metrics.onSeekComplete();
+    }
     if (shouldAutoPlayWhenSeekComplete) {
       start();
     }
@@ -577,6 +683,10 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
 
   @Override
   public int onCompletion() {
+    record(FlightRecorder.EVENT_COMPLETION, 0, 0);
+    if (metrics != null) {
+      metrics.onPlayingChanged(false);
+    }
     // =========@LoopProcessing
     int loopReturnParam;
     // ======@PositionUnit
@@ -605,6 +715,10 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
 
   @Override
   public boolean onInfo(int what, int extra) {
+    record(FlightRecorder.EVENT_INFO, what, extra);
+    if (metrics != null) {
+      metrics.onInfo(what);
+    }
     boolean info_was_handled = false;
     for (Listener listener : listeners) {
       if (listener.onInfo(what, extra)) {
@@ -616,6 +730,7 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
 
   @Override
   public boolean onError(int what, int extra, Exception e) {
+    record(FlightRecorder.EVENT_ERROR, what, extra);
     boolean error_was_handled = false;
     for (Listener listener : listeners) {
       if (listener.onError(what, extra, e)) {
@@ -628,6 +743,7 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
   @Override
   public void onVideoSizeChanged(int width, int height,
       int unappliedRotationDegrees, float pixelWidthHeightRatio) {
+    record(FlightRecorder.EVENT_VIDEO_SIZE_CHANGED, width, height);
     for (Listener listener : listeners) {
       listener
           .onVideoSizeChanged(width, height, unappliedRotationDegrees, pixelWidthHeightRatio);
@@ -637,6 +753,7 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
   // =========@Base Extend
   @Override
   public void onStateChanged(int playbackState) {
+    record(FlightRecorder.EVENT_STATE_CHANGED, playbackState, 0);
     if (playbackState == IPlayer.STATE_READY) {
       //update notification(with started)
       onNotificationRequired(2);
@@ -650,6 +767,7 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
   // Must be kept in sync with IPlayer.Listener
   protected boolean onIntent(Intent intent) {
     if (intent != null) {
+      record(FlightRecorder.EVENT_INTENT, 0, 0);
       for (Listener listener : listeners) {
         listener.onIntent(intent);
       }
@@ -659,6 +777,7 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
   }
 
   protected boolean onPlayProgress(long position, long duration) {
+    record(FlightRecorder.EVENT_PLAY_PROGRESS, position, duration);
     boolean play_progress_was_handled = false;
     for (Listener listener : listeners) {
       if (listener.onPlayProgress(position, duration)) {
@@ -670,6 +789,8 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
   }
 
   protected void onPositionUnitProgress(long position, int posUnitIndex, int posUnitState) {
+    record(FlightRecorder.EVENT_POS_UNIT_PROGRESS, position,
+        ((long) posUnitIndex << 32) | (posUnitState & 0xFFFFFFFFL));
     for (Listener listener : listeners) {
       listener.onPositionUnitProgress(position, posUnitIndex, posUnitState);
     }
@@ -685,6 +806,7 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
   }
 
   protected void onABProgress(long position, long duration, int abState) {
+    record(FlightRecorder.EVENT_AB_PROGRESS, position, abState);
     for (Listener listener : listeners) {
       listener.onABProgress(position, duration, abState);
     }
@@ -700,12 +822,14 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
   }
 
   protected void onNotificationRequired(int order) {
+    record(FlightRecorder.EVENT_NOTIFICATION_REQUIRED, order, 0);
     for (Listener listener : listeners) {
       listener.onNotificationRequired(order);
     }
   }
 
   protected boolean onAudioFocusChange(int focusChange) {
+    record(FlightRecorder.EVENT_AUDIO_FOCUS_CHANGE, focusChange, 0);
     boolean was_handled = false;
     for (Listener listener : listeners) {
       if (listener.onAudioFocusChange(focusChange)) {
@@ -747,7 +871,7 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
   protected void updatePlayProgress(int updatePlayProgressCommand) {
     if (updatePlayProgressCommand == 0) {
       updatePlayProgressBaseInterruptConditions = true;
-      handler.removeCallbacks(updatePlayProgressAction);
+      cancelPlayProgress();
       return;
     } else if (updatePlayProgressCommand == 1) {
       updatePlayProgressBaseInterruptConditions = false;
@@ -774,7 +898,7 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
       return;
     }
 
-    handler.removeCallbacks(updatePlayProgressAction);
+    cancelPlayProgress();
     // Schedule an update
     long delayMs;
     if (updatePlayProgressDelayMs < 0) {
@@ -785,9 +909,20 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
     } else {
       delayMs = updatePlayProgressDelayMs;
     }
+    schedulePlayProgress(delayMs);
+  }
+
+  /**
+   * Default on {@link #handler}, override to drive by another clock (e.g. simulation)
+   */
+  protected void schedulePlayProgress(long delayMs) {
     handler.postDelayed(updatePlayProgressAction, delayMs);
   }
 
+  protected void cancelPlayProgress() {
+    handler.removeCallbacks(updatePlayProgressAction);
+  }
+
   // ============================@PositionUnit@============================
   // 0[start~PosUnit~end] - 1[s~PosUnit~e] - 2[s~PosUnit~e] - . .. ... ....
   /**
@@ -846,7 +981,7 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
           posUnitList.getEndPosition(currentPosUnitIndex) <= position) {
         isInPosUnit = false;//[s~PosUnit~e]...
         onPositionUnitProgress(position, currentPosUnitIndex, C.STATE_PROGRESS_POS_UNIT_END);
-        L.v(TAG, "Pos(" + position + ") PosUnitIndex(" + currentPosUnitIndex + ") End ...");
+        L.v(TAG, "Pos({}) PosUnitIndex({}) End ...", position, currentPosUnitIndex);
         return true;//(if condition 1End == 2Start, still return Avoid operating together)
       }
 
@@ -860,7 +995,7 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
         currentPosUnitIndex = posUnitIndexNext;
         isInPosUnit = true;//[s~PosUnit~e]
         onPositionUnitProgress(position, currentPosUnitIndex, C.STATE_PROGRESS_POS_UNIT_START);
-        L.v(TAG, "Pos(" + position + ") PosUnitIndex(" + currentPosUnitIndex + ") Start ...");
+        L.v(TAG, "Pos({}) PosUnitIndex({}) Start ...", position, currentPosUnitIndex);
       }
       return true;
     }
@@ -966,13 +1101,13 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
       if (posUnitLoopMode == -8) {
         // =========@infinity loop[-8]@=========
         pause();
-        methodAgent.sendEmptyMessageDelayed(31, posUnitLoopInterval * 1000);
+        sendMethodAgent(31, 0, posUnitLoopInterval * 1000);
         return 1;//enable(processing[infinity loop])
       } else if (posUnitLoopMode > 0) {
         // =========@specified loop[>0]@=========
         if (posUnitLoopedCount < posUnitLoopMode) {
           pause();
-          methodAgent.sendEmptyMessageDelayed(311, posUnitLoopInterval * 1000);
+          sendMethodAgent(311, 0, posUnitLoopInterval * 1000);
           return 1;//enable(processing[specified loop])
         } else {
           // =========@specified loop finish@=========
@@ -988,9 +1123,7 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
               currentPosUnitIndex >= posUnitLoopIndexList.get(posUnitLoopIndexList.size() - 1)) {
             if (posUnitLoopInterval > 0) {
               pause();
-              Message message = methodAgent.obtainMessage(3111);
-              message.arg1 = posUnitLoopIndexList.get(0);
-              methodAgent.sendMessageDelayed(message, posUnitLoopInterval * 1000);
+              sendMethodAgent(3111, posUnitLoopIndexList.get(0), posUnitLoopInterval * 1000);
             } else {
               seekToPositionUnitIndex(posUnitLoopIndexList.get(0));//B end go play A
             }
@@ -1008,9 +1141,7 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
             currentPosUnitIndex >= posUnitLoopIndexList.get(posUnitLoopIndexList.size() - 1)) {
           if (posUnitLoopInterval > 0) {
             pause();
-            Message message = methodAgent.obtainMessage(3111);
-            message.arg1 = posUnitLoopIndexList.get(0);
-            methodAgent.sendMessageDelayed(message, posUnitLoopInterval * 1000);
+            sendMethodAgent(3111, posUnitLoopIndexList.get(0), posUnitLoopInterval * 1000);
           } else {
             seekToPositionUnitIndex(posUnitLoopIndexList.get(0));//B end go play A
           }
@@ -1018,7 +1149,7 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
         } else {
           if (posUnitLoopInterval > 0) {
             pause();
-            methodAgent.sendEmptyMessageDelayed(1, posUnitLoopInterval * 1000);//start()
+            sendMethodAgent(1, 0, posUnitLoopInterval * 1000);//start()
           }
           return 2;//enable(finish[not loop])
         }
@@ -1039,41 +1170,59 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
   protected final Handler methodAgent = new Handler(new Callback() {
     @Override
     public boolean handleMessage(Message msg) {
-      switch (msg.what) {
-        case 1:
-          start();
-          break;
-        // =========@PosUnit@=========
-        case 31:
-          shouldAutoPlayWhenSeekComplete = true;
-          seekToPositionUnitIndex(currentPosUnitIndex);
-          break;
-        case 311:
-          shouldAutoPlayWhenSeekComplete = true;
-          if (seekToPositionUnitIndex(currentPosUnitIndex) >= 0) {
-            posUnitLoopedCount++;
-          }
-          break;
-        case 3111:
-          shouldAutoPlayWhenSeekComplete = true;
-          seekToPositionUnitIndex(msg.arg1);
-          break;
-        // =========@AB@=========
-        case 32:
-          shouldAutoPlayWhenSeekComplete = true;
-          seekTo(abStartPosition);
-          break;
-        case 322:
-          shouldAutoPlayWhenSeekComplete = true;
-          if (seekTo(abStartPosition)) {
-            abLoopedCount++;
-          }
-          break;
-      }
+      handleMethodAgent(msg.what, msg.arg1);
       return true;
     }
   });
 
+  /**
+   * Default on {@link #methodAgent}, override to drive by another clock (e.g. simulation)
+   *
+   * @see #handleMethodAgent(int, int)
+   */
+  protected void sendMethodAgent(int what, int arg1, long delayMs) {
+    Message message = methodAgent.obtainMessage(what);
+    message.arg1 = arg1;
+    methodAgent.sendMessageDelayed(message, delayMs);
+  }
+
+  protected void handleMethodAgent(int what, int arg1) {
+    record(FlightRecorder.METHOD_AGENT, what, arg1);
+    loopSeeking = what != 1;
+    switch (what) {
+      case 1:
+        start();
+        break;
+      // =========@PosUnit@=========
+      case 31:
+        shouldAutoPlayWhenSeekComplete = true;
+        seekToPositionUnitIndex(currentPosUnitIndex);
+        break;
+      case 311:
+        shouldAutoPlayWhenSeekComplete = true;
+        if (seekToPositionUnitIndex(currentPosUnitIndex) >= 0) {
+          posUnitLoopedCount++;
+        }
+        break;
+      case 3111:
+        shouldAutoPlayWhenSeekComplete = true;
+        seekToPositionUnitIndex(arg1);
+        break;
+      // =========@AB@=========
+      case 32:
+        shouldAutoPlayWhenSeekComplete = true;
+        seekTo(abStartPosition);
+        break;
+      case 322:
+        shouldAutoPlayWhenSeekComplete = true;
+        if (seekTo(abStartPosition)) {
+          abLoopedCount++;
+        }
+        break;
+    }
+    loopSeeking = false;
+  }
+
   // ============================@A-B@============================
   // [A-B] can be based on [position unit] to quickly implement
   // But here compatible with both can coexist choose alone implement
@@ -1174,7 +1323,7 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
         isInAB = false;//[s~AB~e]...
         onABProgress(position - abStartPosition, abEndPosition - abStartPosition,
             C.STATE_PROGRESS_AB_END);
-        L.v(TAG, "Progress Pos(" + position + ") AB End ...");
+        L.v(TAG, "Progress Pos({}) AB End ...", position);
         return true;
       }
 
@@ -1183,7 +1332,7 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
         isInAB = true;//[s~AB~e]
         onABProgress(position - abStartPosition, abEndPosition - abStartPosition,
             C.STATE_PROGRESS_AB_START);
-        L.v(TAG, "Progress Pos(" + position + ") AB Start ...");
+        L.v(TAG, "Progress Pos({}) AB Start ...", position);
       }
 
       // =========@Mid@=========
@@ -1207,13 +1356,13 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
       if (abLoopMode == -8) {
         // =========@infinity loop[-8]@=========
         pause();
-        methodAgent.sendEmptyMessageDelayed(32, abInterval * 1000);
+        sendMethodAgent(32, 0, abInterval * 1000);
         return 1;//enable(processing[infinity loop])
       } else if (abLoopMode > 0) {
         // =========@specified loop[>0]@=========
         if (abLoopedCount < abLoopMode) {
           pause();
-          methodAgent.sendEmptyMessageDelayed(322, abInterval * 1000);
+          sendMethodAgent(322, 0, abInterval * 1000);
           return 1;//enable(processing[specified loop])
         } else {
           // =========@specified loop finish@=========
@@ -1359,7 +1508,7 @@ public abstract class APlayer<P extends APlayer> implements IPlayer<P>, IPlayerB
     @Override
     public void onAudioFocusChange(int focusChange) {
       currentAudioFocusState = focusChange;
-      L.d(TAG, "onAudioFocusChange. focusChange(" + focusChange + ")");
+      L.d(TAG, "onAudioFocusChange. focusChange({})", focusChange);
       if (!APlayer.this.onAudioFocusChange(focusChange)) {
         //If there is no one handled, with so me handle
         configureAudioFocus();
@@ -26,6 +26,7 @@ import android.support.annotation.RequiresPermission;
 import android.view.SurfaceView;
 import android.view.TextureView;
 import com.jcodeing.kmedia.assist.AudioMgrHelper;
+import com.jcodeing.kmedia.assist.C;
 import com.jcodeing.kmedia.definition.IMediaItem;
 import com.jcodeing.kmedia.definition.IMediaQueue;
 import com.jcodeing.kmedia.definition.IPositionUnitList;
@@ -264,8 +265,30 @@ public abstract class APlayerBinding<P extends APlayerBinding> implements IPlaye
     return 1;
   }
 
+  // ============================@State Channel
+
+  private PlayerStateChannel.Reader stateChannel;
+
+  /**
+   * State getters (position/duration/playing/state/speed) read the shared memory channel instead of
+   * calling the service player, binder only carry commands.
+   *
+   * @param stateChannel null: call the service player
+   * @see PlayerStateChannel
+   */
+  public void setStateChannel(PlayerStateChannel.Reader stateChannel) {
+    this.stateChannel = stateChannel;
+  }
+
+  private boolean useStateChannel() {
+    return stateChannel != null && stateChannel.isValid();
+  }
+
   @Override
   public long getCurrentPosition() {
+    if (useStateChannel()) {
+      return stateChannel.getCurrentPosition();
+    }
     if (mBound) {
       return mService.player().getCurrentPosition();
     }
@@ -274,6 +297,9 @@ public abstract class APlayerBinding<P extends APlayerBinding> implements IPlaye
 
   @Override
   public long getDuration() {
+    if (useStateChannel()) {
+      return stateChannel.getDuration();
+    }
     if (mBound) {
       return mService.player().getDuration();
     }
@@ -282,11 +308,17 @@ public abstract class APlayerBinding<P extends APlayerBinding> implements IPlaye
 
   @Override
   public boolean isPlaying() {
+    if (useStateChannel()) {
+      return stateChannel.isPlaying();
+    }
     return mBound && mService.player().isPlaying();
   }
 
   @Override
   public float getPlaybackSpeed() {
+    if (useStateChannel()) {
+      return stateChannel.getPlaybackSpeed();
+    }
     if (mBound) {
       return mService.player().getPlaybackSpeed();
     }
@@ -300,6 +332,9 @@ public abstract class APlayerBinding<P extends APlayerBinding> implements IPlaye
 
   @Override
   public int getPlaybackState() {
+    if (useStateChannel()) {
+      return stateChannel.getPlaybackState();
+    }
     if (mBound) {
       return mService.player().getPlaybackState();
     }
@@ -402,6 +437,14 @@ public abstract class APlayerBinding<P extends APlayerBinding> implements IPlaye
     }
   }
 
+  @Override
+  public long getSeekToPending() {
+    if (mBound) {
+      return mService.player().getSeekToPending();
+    }
+    return C.POSITION_UNSET;
+  }
+
   @Override
   public long seekToProgress(int progress, int progressMax) {
     if (mBound) {
@@ -17,6 +17,7 @@ package com.jcodeing.kmedia;
 
 import android.annotation.TargetApi;
 import android.content.Context;
+import android.graphics.SurfaceTexture;
 import android.media.MediaPlayer;
 import android.net.Uri;
 import android.os.Build.VERSION;
@@ -124,7 +125,7 @@ public class AndroidMediaPlayer extends AMediaPlayer implements
   public boolean seekTo(long ms) throws IllegalStateException {
     internalPlayer.seekTo((int) ms);
     setPlaybackState(STATE_BUFFERING);
-    L.dd(TAG, "seekTo(" + ms + ")");
+    L.dd(TAG, "seekTo({})", ms);
     return true;
   }
 
@@ -145,6 +146,9 @@ public class AndroidMediaPlayer extends AMediaPlayer implements
   @Override
   public void release() {
     internalPlayer.release();
+    if (VERSION.SDK_INT >= VERSION_CODES.ICE_CREAM_SANDWICH) {
+      releaseVideoSurface();
+    }
     releaseListeners();
   }
 
@@ -160,18 +164,43 @@ public class AndroidMediaPlayer extends AMediaPlayer implements
   @RequiresApi(api = VERSION_CODES.ICE_CREAM_SANDWICH)
   @Override
   public void setVideo(TextureView textureView) {
-    setSurface(new Surface(textureView.getSurfaceTexture()));
+    SurfaceTexture surfaceTexture = textureView.getSurfaceTexture();
+    if (surfaceTexture == null) {
+      L.w(TAG, "setVideo(TextureView) surface texture not available yet");
+      return;
+    }
+    if (surfaceTexture == videoSurfaceTexture && videoSurface != null) {
+      return;//same texture, reuse surface
+    }
+    Surface surface = new Surface(surfaceTexture);
+    setSurface(surface);//releases the previous wrapper
+    videoSurfaceTexture = surfaceTexture;
+    videoSurface = surface;
   }
 
   @Override
   public void clearVideo() {
     if (VERSION.SDK_INT >= VERSION_CODES.ICE_CREAM_SANDWICH) {
       setSurface(null);
+      releaseVideoSurface();
     } else {
       setDisplay(null);
     }
   }
 
+  // =========@Surface wrapper@=========
+  private SurfaceTexture videoSurfaceTexture;
+  private Surface videoSurface;
+
+  @TargetApi(VERSION_CODES.ICE_CREAM_SANDWICH)
+  private void releaseVideoSurface() {
+    if (videoSurface != null) {
+      videoSurface.release();
+      videoSurface = null;
+    }
+    videoSurfaceTexture = null;
+  }
+
   // ============================@SurfaceCallback
   @Override
   public void surfaceCreated(SurfaceHolder holder) {
@@ -212,6 +241,10 @@ public class AndroidMediaPlayer extends AMediaPlayer implements
       internalPlayer.setDisplay(sh);
     } catch (IllegalStateException e) {
       L.printStackTrace(e);
+      return;
+    }
+    if (VERSION.SDK_INT >= VERSION_CODES.ICE_CREAM_SANDWICH) {
+      releaseVideoSurface();//output moved, texture cache stale
     }
   }
 
@@ -222,6 +255,9 @@ public class AndroidMediaPlayer extends AMediaPlayer implements
   @Override
   public void setSurface(Surface surface) {
     internalPlayer.setSurface(surface);
+    if (surface != videoSurface) {
+      releaseVideoSurface();//output moved (e.g. SurfaceHandoff), texture cache stale
+    }
   }
 
   @Override
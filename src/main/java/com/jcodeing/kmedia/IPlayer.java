@@ -108,6 +108,12 @@ public interface IPlayer<P extends IPlayer> extends IPlayerBase {
    */
   void seekToPending(long ms);
 
+  /**
+   * @return position of {@link #seekToPending(long)} not yet disposed, {@link C#POSITION_UNSET}:
+   * none
+   */
+  long getSeekToPending();
+
   /**
    * Seeks to specified progress
    *
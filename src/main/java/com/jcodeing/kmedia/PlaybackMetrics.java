@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia;
+
+import android.os.SystemClock;
+import com.jcodeing.kmedia.utils.Histogram;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Playback QoE metrics, fed by {@link APlayer} (player thread). <ul> <li>{@link #PREPARE}:
+ * prepareAsync -> onPrepared <li>{@link #FIRST_FRAME}: prepareAsync -> MEDIA_INFO_VIDEO_RENDERING_START
+ * <li>{@link #SEEK}: seekTo -> onSeekComplete <li>{@link #REBUFFER}: MEDIA_INFO_BUFFERING_START ->
+ * END <li>{@link #LOOP_RESTART}: position unit/A-B loop seek -> onSeekComplete<ul/> All in ms, kept in
+ * fixed memory {@link Histogram}s.
+ * <pre>
+ * e.g.
+ * PlaybackMetrics metrics = new PlaybackMetrics();
+ * player.setPlaybackMetrics(metrics);
+ * // =========@export
+ * PlaybackMetrics.Snapshot s = metrics.snapshot();
+ * s.get(PlaybackMetrics.SEEK).getPercentile(95);
+ * </pre>
+ */
+public class PlaybackMetrics {
+
+  // ============================@Metric@============================
+  public static final int PREPARE = 0;
+  public static final int FIRST_FRAME = 1;
+  public static final int SEEK = 2;
+  public static final int REBUFFER = 3;
+  public static final int LOOP_RESTART = 4;
+  public static final int METRIC_COUNT = 5;
+
+  private static final String[] NAMES = {"prepare", "first_frame", "seek", "rebuffer",
+      "loop_restart"};
+
+  public static String name(int metric) {
+    return metric >= 0 && metric < NAMES.length ? NAMES[metric] : String.valueOf(metric);
+  }
+
+  public interface Listener {
+
+    /**
+     * Player thread, keep it light
+     *
+     * @param valueMs latency/duration ms
+     */
+    void onMetricRecorded(int metric, long valueMs);
+  }
+
+  private final Histogram[] histograms = new Histogram[METRIC_COUNT];
+  private final CopyOnWriteArraySet<Listener> listeners = new CopyOnWriteArraySet<>();
+
+  public PlaybackMetrics() {
+    for (int i = 0; i < METRIC_COUNT; i++) {
+      histograms[i] = new Histogram();
+    }
+  }
+
+  public void addListener(Listener listener) {
+    if (listener != null) {
+      listeners.add(listener);
+    }
+  }
+
+  public void removeListener(Listener listener) {
+    listeners.remove(listener);
+  }
+
+  private void record(int metric, long valueMs) {
+    histograms[metric].record(valueMs);
+    for (Listener listener : listeners) {
+      listener.onMetricRecorded(metric, valueMs);
+    }
+  }
+
+  // ============================@Hook(APlayer)@============================
+  private static final long UNSET = -1;
+
+  private long prepareStart = UNSET;
+  /**
+   * first frame pending since prepareStart
+   */
+  private long firstFrameStart = UNSET;
+  private long seekStart = UNSET;
+  private boolean seekIsLoopRestart;
+  private long stallStart = UNSET;
+  private long playStart = UNSET;
+  // =========@Counter@=========
+  private long playTimeMs;
+  private long stallTimeMs;
+
+  private static long now() {
+    return SystemClock.elapsedRealtime();
+  }
+
+  void onPrepareStart() {
+    onReset();
+    prepareStart = firstFrameStart = now();
+  }
+
+  void onPrepared() {
+    if (prepareStart != UNSET) {
+      record(PREPARE, now() - prepareStart);
+      prepareStart = UNSET;
+    }
+  }
+
+  /**
+   * @param loopRestart position unit/A-B loop seek back
+   */
+  void onSeekStart(boolean loopRestart) {
+    seekStart = now();
+    seekIsLoopRestart = loopRestart;
+  }
+
+  void onSeekComplete() {
+    if (seekStart != UNSET) {
+      record(seekIsLoopRestart ? LOOP_RESTART : SEEK, now() - seekStart);
+      seekStart = UNSET;
+    }
+  }
+
+  void onInfo(int what) {
+    switch (what) {
+      case IMediaPlayer.MEDIA_INFO_VIDEO_RENDERING_START:
+        if (firstFrameStart != UNSET) {
+          record(FIRST_FRAME, now() - firstFrameStart);
+          firstFrameStart = UNSET;
+        }
+        break;
+      case IMediaPlayer.MEDIA_INFO_BUFFERING_START:
+        if (stallStart == UNSET) {
+          stallStart = now();
+        }
+        break;
+      case IMediaPlayer.MEDIA_INFO_BUFFERING_END:
+        endStall();
+        break;
+    }
+  }
+
+  /**
+   * @param playing started/paused(stopped, completed)
+   */
+  void onPlayingChanged(boolean playing) {
+    if (playing) {
+      if (playStart == UNSET) {
+        playStart = now();
+      }
+    } else if (playStart != UNSET) {
+      playTimeMs += now() - playStart;
+      playStart = UNSET;
+    }
+  }
+
+  /**
+   * stop/reset: pending measurements dropped
+   */
+  void onReset() {
+    onPlayingChanged(false);
+    endStall();
+    prepareStart = UNSET;
+    firstFrameStart = UNSET;
+    seekStart = UNSET;
+  }
+
+  private void endStall() {
+    if (stallStart != UNSET) {
+      long stall = now() - stallStart;
+      stallTimeMs += stall;
+      stallStart = UNSET;
+      record(REBUFFER, stall);
+    }
+  }
+
+  // ============================@Snapshot/Reset@============================
+  public static final class Snapshot {
+
+    private final Histogram[] histograms;
+    public final long playTimeMs;
+    public final long stallTimeMs;
+
+    Snapshot(Histogram[] histograms, long playTimeMs, long stallTimeMs) {
+      this.histograms = histograms;
+      this.playTimeMs = playTimeMs;
+      this.stallTimeMs = stallTimeMs;
+    }
+
+    /**
+     * @param metric {@link #PREPARE}, {@link #FIRST_FRAME}, {@link #SEEK}, {@link #REBUFFER},
+     * {@link #LOOP_RESTART}
+     */
+    public Histogram get(int metric) {
+      return histograms[metric];
+    }
+
+    /**
+     * @return stall time / (play time + stall time), 0~1
+     */
+    public double getRebufferRatio() {
+      long total = playTimeMs + stallTimeMs;
+      return total > 0 ? (double) stallTimeMs / total : 0;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < histograms.length; i++) {
+        sb.append(name(i)).append(": ").append(histograms[i]).append('\n');
+      }
+      return sb.append("rebuffer_ratio: ").append(getRebufferRatio()).toString();
+    }
+  }
+
+  /**
+   * @return copy, safe to read on any thread
+   */
+  public Snapshot snapshot() {
+    Histogram[] copies = new Histogram[METRIC_COUNT];
+    for (int i = 0; i < METRIC_COUNT; i++) {
+      copies[i] = histograms[i].copy();
+    }
+    long play = playTimeMs;
+    if (playStart != UNSET) {
+      play += now() - playStart;
+    }
+    return new Snapshot(copies, play, stallTimeMs);
+  }
+
+  /**
+   * Clear histograms and counters (pending measurements kept)
+   */
+  public void reset() {
+    for (Histogram histogram : histograms) {
+      histogram.reset();
+    }
+    playTimeMs = 0;
+    stallTimeMs = 0;
+  }
+}
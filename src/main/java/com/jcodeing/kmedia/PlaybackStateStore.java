@@ -0,0 +1,922 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia;
+
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.v4.util.AtomicFile;
+import android.text.TextUtils;
+import com.jcodeing.kmedia.assist.C;
+import com.jcodeing.kmedia.assist.MediaQueueListener;
+import com.jcodeing.kmedia.definition.IMediaItem;
+import com.jcodeing.kmedia.definition.IMediaQueue;
+import com.jcodeing.kmedia.definition.PagedMediaQueue;
+import com.jcodeing.kmedia.utils.L;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent queue and playback state. <p>Three files in the store dir: <ul> <li>queue: binary
+ * queue items, atomic write only when queue changed <li>state: compact binary state snapshot,
+ * atomic write <li>journal: append-only incremental changes (index change, position checkpoint,
+ * loop/A-B change), compacted into state periodically <ul/><p/>
+ * <pre>
+ * e.g.
+ * PlaybackStateStore store = new PlaybackStateStore(new File(context.getFilesDir(), "kmedia"));
+ * // =========@cold start
+ * PlaybackStateStore.State state = store.restore();//fast, show last item and position
+ * store.restoreTo(player, state);
+ * store.attach(player);
+ * </pre>
+ * All writes run on a single background thread.
+ */
+public class PlaybackStateStore extends PlayerListener {
+
+  private static final int MAGIC_QUEUE = 0x4B4D5351;//KMSQ
+  private static final int MAGIC_STATE = 0x4B4D5353;//KMSS
+  private static final int VERSION = 1;
+
+  // =========@Journal record type
+  private static final byte J_INDEX = 1;
+  private static final byte J_POSITION = 2;
+  private static final byte J_AB = 3;
+  private static final byte J_POS_UNIT_LOOP = 4;
+  private static final byte J_AUTO_SKIP_MODE = 5;
+  private static final byte J_SPEED = 6;
+
+  private final AtomicFile queueFile;
+  private final AtomicFile stateFile;
+  private final File journalFile;
+
+  public PlaybackStateStore(@NonNull File dir) {
+    //noinspection ResultOfMethodCallIgnored
+    dir.mkdirs();
+    queueFile = new AtomicFile(new File(dir, "queue"));
+    stateFile = new AtomicFile(new File(dir, "state"));
+    journalFile = new File(dir, "journal");
+  }
+
+  // ============================@Config@============================
+  private long checkpointIntervalMs = 5000;
+  private int compactThreshold = 200;
+  private boolean persistQueueItems = true;
+
+  /**
+   * @param checkpointIntervalMs position checkpoint interval (default 5s)
+   */
+  public PlaybackStateStore setCheckpointIntervalMs(long checkpointIntervalMs) {
+    this.checkpointIntervalMs = checkpointIntervalMs;
+    return this;
+  }
+
+  /**
+   * @param compactThreshold journal records count to compact into state (default 200)
+   */
+  public PlaybackStateStore setCompactThreshold(int compactThreshold) {
+    this.compactThreshold = compactThreshold;
+    return this;
+  }
+
+  /**
+   * @param persistQueueItems false: only current index/mediaId is saved, queue rebuild by yourself
+   * (e.g. queue items come from a persistent source). A {@link PagedMediaQueue} with a source set
+   * is never persisted item by item
+   */
+  public PlaybackStateStore setPersistQueueItems(boolean persistQueueItems) {
+    this.persistQueueItems = persistQueueItems;
+    return this;
+  }
+
+  // ============================@Attach@============================
+  private APlayer player;
+  private IMediaQueue mediaQueue;
+
+  public void attach(@NonNull APlayer player) {
+    detach();
+    this.player = player;
+    mediaQueue = player.getMediaQueue();
+    mediaQueue.addListener(queueListener);
+    player.addListener(this);
+  }
+
+  public void detach() {
+    if (player != null) {
+      flushSaveQueue();
+      checkpoint();
+      APlayer p = player;
+      player = null;//not re-add in onRemoved
+      p.removeListener(this);
+      if (mediaQueue != null) {
+        mediaQueue.removeListener(queueListener);
+        mediaQueue = null;
+      }
+    }
+  }
+
+  private final IMediaQueue.Listener queueListener = new MediaQueueListener() {
+    @Override
+    public void onQueueUpdated(List<? extends IMediaItem> newQueue) {
+      scheduleSaveQueue();
+    }
+
+    @Override
+    public void onItemsInserted(int from, int count) {
+      scheduleSaveQueue();
+    }
+
+    @Override
+    public void onItemMoved(int from, int to) {
+      scheduleSaveQueue();
+    }
+
+    @Override
+    public void onItemsRemoved(int from, int count) {
+      scheduleSaveQueue();
+    }
+
+    @Override
+    public void onCurrentQueueIndexUpdated(int index) {
+      IMediaItem item = mediaQueue != null ? mediaQueue.getMediaItem(index) : null;
+      journalIndex(index, item != null ? item.getMediaId() : null);
+    }
+  };
+
+  // ============================@Listener@============================
+  private long lastCheckpointTime;
+
+  @Override
+  public boolean onPlayProgress(long position, long duration) {
+    if (SystemClock.elapsedRealtime() - lastCheckpointTime >= checkpointIntervalMs) {
+      checkpoint();
+    }
+    return false;
+  }
+
+  @Override
+  public void onStateChanged(int playbackState) {
+    checkpoint();
+  }
+
+  @Override
+  public void onRemoved() {
+    if (player != null) {//resident
+      player.addListener(this);
+    }
+  }
+
+  // ============================@Write@============================
+  private ExecutorService writer;
+  private boolean restoring;
+
+  private ExecutorService writer() {
+    if (writer == null) {
+      writer = Executors.newSingleThreadExecutor();
+    }
+    return writer;
+  }
+
+  /**
+   * Save position now, and append loop/A-B/speed changes since last checkpoint. <p>Call it in
+   * (e.g. Activity#onPause) to be sure the latest position is saved.</p>
+   */
+  public void checkpoint() {
+    if (player == null || restoring) {
+      return;
+    }
+    lastCheckpointTime = SystemClock.elapsedRealtime();
+    final State s = capture(false);
+    writer().execute(new Runnable() {
+      @Override
+      public void run() {
+        State j = journaled;
+        if (s.position != j.position) {
+          appendPosition(s.position);
+        }
+        if (s.abStart != j.abStart || s.abEnd != j.abEnd ||
+            s.abLoopMode != j.abLoopMode || s.abInterval != j.abInterval) {
+          appendAB(s.abStart, s.abEnd, s.abLoopMode, s.abInterval);
+        }
+        if (s.posUnitLoopEnabled != j.posUnitLoopEnabled ||
+            s.posUnitLoopMode != j.posUnitLoopMode ||
+            s.posUnitLoopInterval != j.posUnitLoopInterval) {
+          appendPosUnitLoop(s.posUnitLoopEnabled, s.posUnitLoopMode, s.posUnitLoopInterval);
+        }
+        if (s.autoSkipMode != j.autoSkipMode) {
+          appendAutoSkipMode(s.autoSkipMode);
+        }
+        if (s.speed != j.speed) {
+          appendSpeed(s.speed);
+        }
+        compactIfNeeded();
+      }
+    });
+  }
+
+  private void journalIndex(final int index, final String mediaId) {
+    if (player == null || restoring) {
+      return;
+    }
+    writer().execute(new Runnable() {
+      @Override
+      public void run() {
+        appendIndex(index, mediaId);
+        compactIfNeeded();
+      }
+    });
+  }
+
+  /**
+   * Queue edits within this delay are saved by one {@link #saveQueue()}
+   */
+  public static final long SAVE_QUEUE_DELAY_MS = 1000;
+  private boolean saveQueuePending;
+  private final Runnable saveQueueRunnable = new Runnable() {
+    @Override
+    public void run() {
+      saveQueuePending = false;
+      saveQueue();
+    }
+  };
+
+  private void scheduleSaveQueue() {
+    if (player == null || restoring || saveQueuePending) {
+      return;
+    }
+    saveQueuePending = true;
+    player.handler.postDelayed(saveQueueRunnable, SAVE_QUEUE_DELAY_MS);
+  }
+
+  private void flushSaveQueue() {
+    if (saveQueuePending) {
+      player.handler.removeCallbacks(saveQueueRunnable);
+      saveQueueRunnable.run();
+    }
+  }
+
+  /**
+   * Write queue items and a full state snapshot (journal truncated).
+   */
+  public void saveQueue() {
+    if (player == null || restoring) {
+      return;
+    }
+    final State s = capture(persistQueueItems && !isPaged(player.getMediaQueue()));
+    writer().execute(new Runnable() {
+      @Override
+      public void run() {
+        if (s.items != null) {
+          writeQueue(s.items);
+        } else {
+          //not persisted (any more), restore must not bring back a stale queue
+          //noinspection ResultOfMethodCallIgnored
+          queueFile.delete();
+        }
+        compact(s);
+      }
+    });
+  }
+
+  /**
+   * Capturing every item would load every page of the source
+   */
+  private static boolean isPaged(IMediaQueue queue) {
+    return queue instanceof PagedMediaQueue && ((PagedMediaQueue) queue).getSource() != null;
+  }
+
+  /**
+   * Force compaction, write a full state snapshot and truncate journal.
+   */
+  public void compact() {
+    if (player == null || restoring) {
+      return;
+    }
+    final State s = capture(false);
+    writer().execute(new Runnable() {
+      @Override
+      public void run() {
+        compact(s);
+      }
+    });
+  }
+
+  /**
+   * last known position, player thread only (journaled is written by the writer thread)
+   */
+  private long lastPosition = C.POSITION_UNSET;
+
+  /**
+   * Capture on the player thread
+   */
+  protected State capture(boolean withItems) {
+    State s = new State();
+    IMediaQueue queue = player.getMediaQueue();
+    s.currentIndex = queue.getCurrentIndex();
+    s.currentMediaId = player.getCurrentMediaId();
+    s.autoSkipMode = queue.getAutoSkipMode();
+    if (player.isPlayable()) {
+      lastPosition = player.getCurrentPosition();
+    }
+    s.position = lastPosition;
+    s.speed = player.getPlaybackSpeed();
+    s.posUnitLoopEnabled = player.posUnitLoopEnabled;
+    s.posUnitLoopMode = player.posUnitLoopMode;
+    s.posUnitLoopInterval = player.posUnitLoopInterval;
+    s.abStart = player.abStartPosition;
+    s.abEnd = player.abEndPosition;
+    s.abLoopMode = player.abLoopMode;
+    s.abInterval = player.abInterval;
+    if (withItems) {
+      int size = queue.size();
+      s.items = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        IMediaItem item = queue.getMediaItem(i);
+        if (item != null) {
+          s.items.add(new StoredMediaItem(item));
+        }
+      }
+    }
+    return s;
+  }
+
+  // ============================@Write(writer thread)@============================
+  /**
+   * the state already written (snapshot + journal), only access on writer thread after init
+   */
+  private volatile State journaled = new State();
+  private int journalCount;
+  private DataOutputStream journalOut;
+  private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream(64);
+  private final DataOutputStream record = new DataOutputStream(recordBuffer);
+  private final CRC32 crc = new CRC32();
+
+  private void appendIndex(int index, String mediaId) {
+    try {
+      beginRecord(J_INDEX);
+      record.writeInt(index);
+      writeNullableUTF(record, mediaId);
+      endRecord();
+      journaled.currentIndex = index;
+      journaled.currentMediaId = mediaId;
+    } catch (IOException e) {
+      L.printStackTrace(e);
+    }
+  }
+
+  private void appendPosition(long position) {
+    try {
+      beginRecord(J_POSITION);
+      record.writeLong(position);
+      endRecord();
+      journaled.position = position;
+    } catch (IOException e) {
+      L.printStackTrace(e);
+    }
+  }
+
+  private void appendAB(long start, long end, int loopMode, int interval) {
+    try {
+      beginRecord(J_AB);
+      record.writeLong(start);
+      record.writeLong(end);
+      record.writeInt(loopMode);
+      record.writeInt(interval);
+      endRecord();
+      journaled.abStart = start;
+      journaled.abEnd = end;
+      journaled.abLoopMode = loopMode;
+      journaled.abInterval = interval;
+    } catch (IOException e) {
+      L.printStackTrace(e);
+    }
+  }
+
+  private void appendPosUnitLoop(boolean enabled, int loopMode, int interval) {
+    try {
+      beginRecord(J_POS_UNIT_LOOP);
+      record.writeBoolean(enabled);
+      record.writeInt(loopMode);
+      record.writeInt(interval);
+      endRecord();
+      journaled.posUnitLoopEnabled = enabled;
+      journaled.posUnitLoopMode = loopMode;
+      journaled.posUnitLoopInterval = interval;
+    } catch (IOException e) {
+      L.printStackTrace(e);
+    }
+  }
+
+  private void appendAutoSkipMode(int autoSkipMode) {
+    try {
+      beginRecord(J_AUTO_SKIP_MODE);
+      record.writeInt(autoSkipMode);
+      endRecord();
+      journaled.autoSkipMode = autoSkipMode;
+    } catch (IOException e) {
+      L.printStackTrace(e);
+    }
+  }
+
+  private void appendSpeed(float speed) {
+    try {
+      beginRecord(J_SPEED);
+      record.writeFloat(speed);
+      endRecord();
+      journaled.speed = speed;
+    } catch (IOException e) {
+      L.printStackTrace(e);
+    }
+  }
+
+  /**
+   * record: [type(1)][length(2)][payload][crc32(4)]
+   */
+  private void beginRecord(byte type) throws IOException {
+    recordBuffer.reset();
+    record.writeByte(type);
+    record.writeShort(0);//length placeholder
+  }
+
+  private void endRecord() throws IOException {
+    byte[] bytes = recordBuffer.toByteArray();
+    int length = bytes.length - 3;
+    bytes[1] = (byte) (length >>> 8);
+    bytes[2] = (byte) length;
+    crc.reset();
+    crc.update(bytes, 0, bytes.length);
+    if (journalOut == null) {
+      journalOut = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(journalFile, true)));
+    }
+    journalOut.write(bytes);
+    journalOut.writeInt((int) crc.getValue());
+    journalOut.flush();
+    journalCount++;
+  }
+
+  private void compactIfNeeded() {
+    if (journalCount >= compactThreshold) {
+      compact(journaled.copy());
+    }
+  }
+
+  private void compact(State s) {
+    FileOutputStream fos = null;
+    try {
+      fos = stateFile.startWrite();
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+      out.writeInt(MAGIC_STATE);
+      out.writeInt(VERSION);
+      writeState(out, s);
+      out.flush();
+      stateFile.finishWrite(fos);
+      fos = null;
+      // =========@truncate journal@=========
+      closeJournal();
+      //noinspection ResultOfMethodCallIgnored
+      journalFile.delete();
+      journalCount = 0;
+      State j = s.copy();
+      j.items = null;
+      journaled = j;
+    } catch (IOException e) {
+      L.printStackTrace(e);
+    } finally {
+      if (fos != null) {
+        stateFile.failWrite(fos);
+      }
+    }
+  }
+
+  private void writeQueue(List<StoredMediaItem> items) {
+    FileOutputStream fos = null;
+    try {
+      fos = queueFile.startWrite();
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+      out.writeInt(MAGIC_QUEUE);
+      out.writeInt(VERSION);
+      out.writeInt(items.size());
+      for (StoredMediaItem item : items) {
+        writeNullableUTF(out, item.mediaId);
+        writeNullableUTF(out, item.mediaUri);
+        writeNullableUTF(out, item.title);
+        writeNullableUTF(out, item.description);
+        writeNullableUTF(out, item.iconUri);
+      }
+      out.flush();
+      queueFile.finishWrite(fos);
+      fos = null;
+    } catch (IOException e) {
+      L.printStackTrace(e);
+    } finally {
+      if (fos != null) {
+        queueFile.failWrite(fos);
+      }
+    }
+  }
+
+  private void closeJournal() {
+    if (journalOut != null) {
+      try {
+        journalOut.close();
+      } catch (IOException e) {
+        L.printStackTrace(e);
+      }
+      journalOut = null;
+    }
+  }
+
+  /**
+   * Detach, finish pending writes and release
+   */
+  public void release() {
+    detach();
+    if (writer != null) {
+      writer.execute(new Runnable() {
+        @Override
+        public void run() {
+          closeJournal();
+        }
+      });
+      writer.shutdown();
+      writer = null;
+    }
+  }
+
+  // ============================@Restore@============================
+
+  /**
+   * Read state snapshot + replay journal, and queue items (if persisted). <p>Synchronous, small
+   * state file and journal, call it at cold start before first frame.<p/>
+   *
+   * @return the last saved state, never null (default state when nothing saved)
+   */
+  @NonNull
+  public State restore() {
+    State s = new State();
+    // =========@snapshot@=========
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(stateFile.openRead()));
+      if (in.readInt() == MAGIC_STATE && in.readInt() == VERSION) {
+        readState(in, s);
+      }
+    } catch (FileNotFoundException e) {
+      //not saved
+    } catch (IOException e) {
+      L.printStackTrace(e);
+    } finally {
+      closeQuietly(in);
+    }
+    // =========@journal@=========
+    int count = replayJournal(s);
+    // =========@queue@=========
+    s.items = readQueue();
+
+    State j = s.copy();
+    j.items = null;
+    journaled = j;
+    journalCount = count;
+    lastPosition = s.position;
+    return s;
+  }
+
+  /**
+   * Apply the restored state to player, prepare(not play) the last item and seek to the last
+   * position when start.
+   *
+   * @return has the last item prepared
+   */
+  public boolean restoreTo(@NonNull APlayer player, @NonNull State state) {
+    restoring = true;
+    try {
+      IMediaQueue queue = player.getMediaQueue();
+      if (state.items != null) {
+        queue.update(state.items);
+      }
+      if (!TextUtils.isEmpty(state.currentMediaId) &&
+          queue.seekIndexByMediaId(state.currentMediaId) >= 0) {
+        queue.setCurrentIndex(state.currentMediaId);
+      } else if (state.currentIndex >= 0) {
+        queue.setCurrentIndex(state.currentIndex);
+      }
+      queue.setAutoSkipMode(state.autoSkipMode);
+      player.setEnabledPositionUnitLoop(state.posUnitLoopEnabled,
+          state.posUnitLoopMode, state.posUnitLoopInterval);
+      if (state.abStart >= 0) {
+        player.setAB(state.abStart, state.abEnd, state.abLoopMode, state.abInterval);
+      }
+      IMediaItem item = queue.getCurrentMediaItem();
+      if (item != null && player.prepare(item)) {
+        if (state.speed > 0) {//0: engine not support speed
+          player.setPlaybackSpeed(state.speed);
+        }
+        if (state.position > 0) {
+          player.seekToPending(state.position);
+        }
+        return true;
+      }
+      return false;
+    } finally {
+      restoring = false;
+    }
+  }
+
+  private int replayJournal(State s) {
+    if (!journalFile.exists()) {
+      return 0;
+    }
+    int count = 0;
+    long validLength = 0;
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+      byte[] buffer = new byte[256];
+      while (true) {
+        // =========@[type(1)][length(2)][payload][crc32(4)]
+        int type = in.read();
+        if (type < 0) {
+          break;//end
+        }
+        int length = in.readUnsignedShort();
+        if (buffer.length < length + 3) {
+          buffer = new byte[length + 3];
+        }
+        buffer[0] = (byte) type;
+        buffer[1] = (byte) (length >>> 8);
+        buffer[2] = (byte) length;
+        in.readFully(buffer, 3, length);
+        int checksum = in.readInt();
+        crc.reset();
+        crc.update(buffer, 0, length + 3);
+        if ((int) crc.getValue() != checksum) {
+          break;//torn tail
+        }
+        DataInputStream p = new DataInputStream(
+            new ByteArrayInputStream(buffer, 3, length));
+        switch (type) {
+          case J_INDEX:
+            s.currentIndex = p.readInt();
+            s.currentMediaId = readNullableUTF(p);
+            break;
+          case J_POSITION:
+            s.position = p.readLong();
+            break;
+          case J_AB:
+            s.abStart = p.readLong();
+            s.abEnd = p.readLong();
+            s.abLoopMode = p.readInt();
+            s.abInterval = p.readInt();
+            break;
+          case J_POS_UNIT_LOOP:
+            s.posUnitLoopEnabled = p.readBoolean();
+            s.posUnitLoopMode = p.readInt();
+            s.posUnitLoopInterval = p.readInt();
+            break;
+          case J_AUTO_SKIP_MODE:
+            s.autoSkipMode = p.readInt();
+            break;
+          case J_SPEED:
+            s.speed = p.readFloat();
+            break;
+        }
+        count++;
+        validLength += length + 7;
+      }
+    } catch (EOFException e) {
+      //torn tail, ignore
+    } catch (IOException e) {
+      L.printStackTrace(e);
+    } finally {
+      closeQuietly(in);
+    }
+    truncateJournal(validLength);
+    return count;
+  }
+
+  /**
+   * Drop the torn/corrupt tail, so records appended after restore are readable
+   */
+  private void truncateJournal(long validLength) {
+    if (journalFile.length() <= validLength) {
+      return;
+    }
+    RandomAccessFile file = null;
+    try {
+      file = new RandomAccessFile(journalFile, "rw");
+      file.setLength(validLength);
+    } catch (IOException e) {
+      L.printStackTrace(e);
+    } finally {
+      closeQuietly(file);
+    }
+  }
+
+  private ArrayList<StoredMediaItem> readQueue() {
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(queueFile.openRead()));
+      if (in.readInt() != MAGIC_QUEUE || in.readInt() != VERSION) {
+        return null;
+      }
+      int size = in.readInt();
+      ArrayList<StoredMediaItem> items = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        items.add(new StoredMediaItem(readNullableUTF(in), readNullableUTF(in),
+            readNullableUTF(in), readNullableUTF(in), readNullableUTF(in)));
+      }
+      return items;
+    } catch (FileNotFoundException e) {
+      //not saved
+    } catch (IOException e) {
+      L.printStackTrace(e);
+    } finally {
+      closeQuietly(in);
+    }
+    return null;
+  }
+
+  // ============================@IO@============================
+  private static void writeState(DataOutputStream out, State s) throws IOException {
+    out.writeInt(s.currentIndex);
+    writeNullableUTF(out, s.currentMediaId);
+    out.writeLong(s.position);
+    out.writeInt(s.autoSkipMode);
+    out.writeFloat(s.speed);
+    out.writeBoolean(s.posUnitLoopEnabled);
+    out.writeInt(s.posUnitLoopMode);
+    out.writeInt(s.posUnitLoopInterval);
+    out.writeLong(s.abStart);
+    out.writeLong(s.abEnd);
+    out.writeInt(s.abLoopMode);
+    out.writeInt(s.abInterval);
+  }
+
+  private static void readState(DataInputStream in, State s) throws IOException {
+    s.currentIndex = in.readInt();
+    s.currentMediaId = readNullableUTF(in);
+    s.position = in.readLong();
+    s.autoSkipMode = in.readInt();
+    s.speed = in.readFloat();
+    s.posUnitLoopEnabled = in.readBoolean();
+    s.posUnitLoopMode = in.readInt();
+    s.posUnitLoopInterval = in.readInt();
+    s.abStart = in.readLong();
+    s.abEnd = in.readLong();
+    s.abLoopMode = in.readInt();
+    s.abInterval = in.readInt();
+  }
+
+  private static void writeNullableUTF(DataOutputStream out, String str) throws IOException {
+    out.writeBoolean(str != null);
+    if (str != null) {
+      out.writeUTF(str);
+    }
+  }
+
+  private static String readNullableUTF(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static void closeQuietly(Closeable in) {
+    if (in != null) {
+      try {
+        in.close();
+      } catch (IOException e) {
+        //ignore
+      }
+    }
+  }
+
+  // ============================@State@============================
+  public static class State {
+
+    /**
+     * null: queue items not persisted
+     */
+    public List<StoredMediaItem> items;
+    public int currentIndex = C.INDEX_UNSET;
+    public String currentMediaId;
+    public long position = C.POSITION_UNSET;
+    public int autoSkipMode = IMediaQueue.AUTO_SKIP_MODE_LIST_LOOP;
+    public float speed = 1f;
+    // =========@PositionUnit loop
+    public boolean posUnitLoopEnabled;
+    public int posUnitLoopMode;
+    public int posUnitLoopInterval;
+    // =========@A-B
+    public long abStart = C.POSITION_UNSET;
+    public long abEnd = C.POSITION_UNSET;
+    public int abLoopMode;
+    public int abInterval;
+
+    State copy() {
+      State s = new State();
+      s.items = items;
+      s.currentIndex = currentIndex;
+      s.currentMediaId = currentMediaId;
+      s.position = position;
+      s.autoSkipMode = autoSkipMode;
+      s.speed = speed;
+      s.posUnitLoopEnabled = posUnitLoopEnabled;
+      s.posUnitLoopMode = posUnitLoopMode;
+      s.posUnitLoopInterval = posUnitLoopInterval;
+      s.abStart = abStart;
+      s.abEnd = abEnd;
+      s.abLoopMode = abLoopMode;
+      s.abInterval = abInterval;
+      return s;
+    }
+  }
+
+  /**
+   * Persisted media item (extras not persisted)
+   */
+  public static class StoredMediaItem implements IMediaItem {
+
+    final String mediaId;
+    final String mediaUri;
+    final String title;
+    final String description;
+    final String iconUri;
+
+    StoredMediaItem(IMediaItem item) {
+      this(item.getMediaId(), string(item.getMediaUri()), string(item.getTitle()),
+          string(item.getDescription()), string(item.getIconUri()));
+    }
+
+    StoredMediaItem(String mediaId, String mediaUri, String title, String description,
+        String iconUri) {
+      this.mediaId = mediaId;
+      this.mediaUri = mediaUri;
+      this.title = title;
+      this.description = description;
+      this.iconUri = iconUri;
+    }
+
+    private static String string(Object o) {
+      return o != null ? o.toString() : null;
+    }
+
+    @Override
+    public String getMediaId() {
+      return mediaId;
+    }
+
+    @Override
+    public Uri getMediaUri() {
+      return mediaUri != null ? Uri.parse(mediaUri) : null;
+    }
+
+    @Override
+    public CharSequence getTitle() {
+      return title;
+    }
+
+    @Override
+    public CharSequence getDescription() {
+      return description;
+    }
+
+    @Override
+    public Uri getIconUri() {
+      return iconUri != null ? Uri.parse(iconUri) : null;
+    }
+
+    @Override
+    public Bundle getExtras() {
+      return null;
+    }
+  }
+}
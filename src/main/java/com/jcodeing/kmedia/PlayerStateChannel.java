@@ -0,0 +1,366 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia;
+
+import android.os.SystemClock;
+import com.jcodeing.kmedia.definition.IMediaQueue;
+import com.jcodeing.kmedia.utils.L;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Player state shared memory channel, for the UI in other process reading state without binder
+ * IPC. <p>A small memory mapped file (MAP_SHARED, same app uid) with a seqlock layout: the {@link
+ * Publisher} (player process) is the single writer, {@link Reader}s never block it and retry if a
+ * write was in progress.<p/>
+ * <pre>
+ * e.g.
+ * File file = new File(context.getFilesDir(), "k_player_state");
+ * // =========@player process
+ * PlayerStateChannel.Publisher publisher = new PlayerStateChannel.Publisher(file);
+ * publisher.attach(player);
+ * // =========@ui process
+ * PlayerStateChannel.Reader reader = new PlayerStateChannel.Reader(file);
+ * playerBinding.setStateChannel(reader);//state getters read it, binder only carry commands
+ * </pre>
+ */
+public final class PlayerStateChannel {
+
+  // ============================@Layout@============================
+  private static final int MAGIC = 0x4B505343;//KPSC
+  private static final int VERSION = 1;
+
+  private static final int OFFSET_MAGIC = 0;
+  private static final int OFFSET_VERSION = 4;
+  /**
+   * odd: write in progress
+   */
+  private static final int OFFSET_SEQ = 8;
+  private static final int OFFSET_POSITION = 16;
+  private static final int OFFSET_DURATION = 24;
+  /**
+   * {@link SystemClock#elapsedRealtime()} of position, same clock in all processes
+   */
+  private static final int OFFSET_POSITION_TIME = 32;
+  private static final int OFFSET_STATE = 40;
+  private static final int OFFSET_PLAYING = 44;
+  private static final int OFFSET_SPEED = 48;
+  private static final int OFFSET_QUEUE_INDEX = 52;
+  private static final int OFFSET_POS_UNIT_INDEX = 56;
+  static final int SIZE = 64;
+
+  /**
+   * Read retries before giving up (writer stalled/died in the middle of a write)
+   */
+  static final int MAX_READ_RETRIES = 64;
+
+  private PlayerStateChannel() {
+  }
+
+  /**
+   * Memory barrier. <p>No VarHandle/Unsafe fences on Android, a volatile read-modify-write orders
+   * the plain mapped buffer accesses around it.<p/>
+   */
+  private static volatile int fence;
+
+  static void fullFence() {
+    //noinspection NonAtomicOperationOnVolatileField
+    fence++;
+  }
+
+  static ByteBuffer map(File file) throws IOException {
+    File parent = file.getParentFile();
+    if (parent != null && !parent.exists() && !parent.mkdirs()) {
+      throw new IOException("mkdirs failure: " + parent);
+    }
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      if (raf.length() < SIZE) {
+        raf.setLength(SIZE);
+      }
+      //mapping keeps valid after channel closed
+      return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SIZE)
+          .order(ByteOrder.nativeOrder());
+    } finally {
+      raf.close();
+    }
+  }
+
+  // ============================@State@============================
+
+  /**
+   * One consistent read of the channel
+   */
+  public static final class State {
+
+    public long position;
+    public long duration;
+    public long positionTime;
+    public int playbackState = IPlayer.STATE_IDLE;
+    public boolean playing;
+    public float speed = 1f;
+    public int queueIndex = -1;
+    public int posUnitIndex = -1;
+
+    /**
+     * @return position extrapolated to now (playing), not exceed duration
+     */
+    public long getCurrentPosition() {
+      return extrapolate(SystemClock.elapsedRealtime());
+    }
+
+    long extrapolate(long now) {
+      if (!playing || positionTime <= 0) {
+        return position;
+      }
+      long p = position + (long) ((now - positionTime) * speed);
+      return duration > 0 && p > duration ? duration : p;
+    }
+  }
+
+  // ============================@Publisher@============================
+
+  /**
+   * Single writer, on the player thread. Publishes on state/progress changes (not per frame), the
+   * reader extrapolates position between.
+   */
+  public static class Publisher extends PlayerListener {
+
+    private final ByteBuffer buffer;
+    private IPlayer player;
+
+    public Publisher(File file) throws IOException {
+      this(map(file));
+    }
+
+    Publisher(ByteBuffer buffer) {
+      this.buffer = buffer;
+      int seq = buffer.getInt(OFFSET_SEQ);
+      if ((seq & 1) != 0) {
+        //previous writer died in the middle of a write
+        buffer.putInt(OFFSET_SEQ, seq + 1);
+      }
+      buffer.putInt(OFFSET_VERSION, VERSION);
+      buffer.putInt(OFFSET_MAGIC, MAGIC);
+    }
+
+    public void attach(IPlayer player) {
+      detach();
+      this.player = player;
+      if (player != null) {
+        player.addListener(this);
+        publish();
+      }
+    }
+
+    public void detach() {
+      if (player != null) {
+        player.removeListener(this);
+        player = null;
+      }
+    }
+
+    /**
+     * Publish the player current state
+     */
+    public void publish() {
+      IPlayer player = this.player;
+      if (player == null) {
+        return;
+      }
+      try {
+        IMediaQueue queue = player.getMediaQueue();
+        publish(player.getCurrentPosition(), player.getDuration(), player.getPlaybackState(),
+            player.isPlaying(), player.getPlaybackSpeed(),
+            queue != null ? queue.getCurrentIndex() : -1, player.getCurrentPositionUnitIndex());
+      } catch (Exception e) {
+        //IllegalState
+        L.printStackTrace(e);
+      }
+    }
+
+    void publish(long position, long duration, int state, boolean playing, float speed,
+        int queueIndex, int posUnitIndex) {
+      ByteBuffer b = buffer;
+      int seq = b.getInt(OFFSET_SEQ);
+      b.putInt(OFFSET_SEQ, seq + 1);//odd: writing
+      fullFence();
+      b.putLong(OFFSET_POSITION, position);
+      b.putLong(OFFSET_DURATION, duration);
+      b.putLong(OFFSET_POSITION_TIME, SystemClock.elapsedRealtime());
+      b.putInt(OFFSET_STATE, state);
+      b.putInt(OFFSET_PLAYING, playing ? 1 : 0);
+      b.putFloat(OFFSET_SPEED, speed);
+      b.putInt(OFFSET_QUEUE_INDEX, queueIndex);
+      b.putInt(OFFSET_POS_UNIT_INDEX, posUnitIndex);
+      fullFence();
+      b.putInt(OFFSET_SEQ, seq + 2);//even: stable
+      publishCount++;
+    }
+
+    private int publishCount;
+
+    public int getPublishCount() {
+      return publishCount;
+    }
+
+    // =========@Listener@=========
+    @Override
+    public void onPrepared() {
+      publish();
+    }
+
+    @Override
+    public void onSeekComplete() {
+      publish();
+    }
+
+    @Override
+    public void onStateChanged(int playbackState) {
+      publish();
+    }
+
+    @Override
+    public boolean onPlayProgress(long position, long duration) {
+      publish();
+      return super.onPlayProgress(position, duration);
+    }
+
+    @Override
+    public void onPositionUnitProgress(long position, int posUnitIndex, int posUnitState) {
+      publish();
+    }
+  }
+
+  // ============================@Reader@============================
+
+  /**
+   * Lock-free, never blocks the writer, any thread (one State per thread).
+   */
+  public static class Reader {
+
+    private final ByteBuffer buffer;
+    private final State state = new State();
+    private int retries;
+
+    public Reader(File file) throws IOException {
+      this(map(file));
+    }
+
+    Reader(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    /**
+     * @return a publisher has written the channel
+     */
+    public boolean isValid() {
+      return buffer.getInt(OFFSET_MAGIC) == MAGIC && buffer.getInt(OFFSET_VERSION) == VERSION;
+    }
+
+    /**
+     * Consistent read into out
+     *
+     * @return false: not valid, or writer kept writing (out unchanged)
+     */
+    public boolean read(State out) {
+      if (!isValid()) {
+        return false;
+      }
+      ByteBuffer b = buffer;
+      for (int i = 0; i < MAX_READ_RETRIES; i++) {
+        int seq = b.getInt(OFFSET_SEQ);
+        if ((seq & 1) != 0) {
+          retries++;
+          Thread.yield();
+          continue;
+        }
+        fullFence();
+        long position = b.getLong(OFFSET_POSITION);
+        long duration = b.getLong(OFFSET_DURATION);
+        long positionTime = b.getLong(OFFSET_POSITION_TIME);
+        int playbackState = b.getInt(OFFSET_STATE);
+        boolean playing = b.getInt(OFFSET_PLAYING) != 0;
+        float speed = b.getFloat(OFFSET_SPEED);
+        int queueIndex = b.getInt(OFFSET_QUEUE_INDEX);
+        int posUnitIndex = b.getInt(OFFSET_POS_UNIT_INDEX);
+        fullFence();
+        if (b.getInt(OFFSET_SEQ) != seq) {
+          retries++;
+          continue;//torn, again
+        }
+        out.position = position;
+        out.duration = duration;
+        out.positionTime = positionTime;
+        out.playbackState = playbackState;
+        out.playing = playing;
+        out.speed = speed;
+        out.queueIndex = queueIndex;
+        out.posUnitIndex = posUnitIndex;
+        return true;
+      }
+      return false;
+    }
+
+    /**
+     * @return latest state (reused object, keep last good read if failure), main thread
+     */
+    public State read() {
+      read(state);
+      return state;
+    }
+
+    /**
+     * @return torn/in-progress reads retried
+     */
+    public int getRetryCount() {
+      return retries;
+    }
+
+    // =========@IPlayer like@=========
+    public long getCurrentPosition() {
+      return read().getCurrentPosition();
+    }
+
+    public long getDuration() {
+      return read().duration;
+    }
+
+    public boolean isPlaying() {
+      return read().playing;
+    }
+
+    public int getPlaybackState() {
+      return read().playbackState;
+    }
+
+    public float getPlaybackSpeed() {
+      return read().speed;
+    }
+
+    public int getCurrentQueueIndex() {
+      return read().queueIndex;
+    }
+
+    public int getCurrentPositionUnitIndex() {
+      return read().posUnitIndex;
+    }
+  }
+}
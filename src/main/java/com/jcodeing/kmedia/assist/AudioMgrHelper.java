@@ -134,14 +134,13 @@ public class AudioMgrHelper {
   public int requestAudioFocus(OnAudioFocusChangeListener audioFocusChangeListener) {
     try {
       if (audioManager != null && audioFocusChangeListener != null) {
-        L.d(TAG,
-            "Request audio focus(" + audioFocusChangeListener.getClass().getName() + ")");
+        L.d(TAG, "Request audio focus({})", audioFocusChangeListener.getClass());
         int status = audioManager.requestAudioFocus(audioFocusChangeListener,
             AudioManager.STREAM_MUSIC, AudioManager.AUDIOFOCUS_GAIN);
         if (status == AudioManager.AUDIOFOCUS_REQUEST_GRANTED) {
-          L.d(TAG, "Request audio focus granted(" + status + ")");
+          L.d(TAG, "Request audio focus granted({})", status);
         } else {//AUDIOFOCUS_REQUEST_FAILED
-          L.d(TAG, "Request audio focus fail(" + status + ")");
+          L.d(TAG, "Request audio focus fail({})", status);
         }
         return status;
       }
@@ -154,13 +153,12 @@ public class AudioMgrHelper {
   public int abandonAudioFocus(OnAudioFocusChangeListener audioFocusChangeListener) {
     try {
       if (audioManager != null && audioFocusChangeListener != null) {
-        L.d(TAG,
-            "Abandon audio focus(" + audioFocusChangeListener.getClass().getName() + ")");
+        L.d(TAG, "Abandon audio focus({})", audioFocusChangeListener.getClass());
         int status = audioManager.abandonAudioFocus(audioFocusChangeListener);
         if (status == AudioManager.AUDIOFOCUS_REQUEST_GRANTED) {
-          L.d(TAG, "Abandon audio focus granted(" + status + ")");
+          L.d(TAG, "Abandon audio focus granted({})", status);
         } else {
-          L.d(TAG, "Abandon audio focus fail(" + status + ")");
+          L.d(TAG, "Abandon audio focus fail({})", status);
         }
       }
     } catch (Exception e) {
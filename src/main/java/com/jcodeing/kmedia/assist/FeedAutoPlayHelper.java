@@ -0,0 +1,523 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.assist;
+
+import android.graphics.Rect;
+import android.net.Uri;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import com.jcodeing.kmedia.IPlayer;
+import com.jcodeing.kmedia.PlayerListener;
+import com.jcodeing.kmedia.definition.IMediaItem;
+import com.jcodeing.kmedia.utils.L;
+import com.jcodeing.kmedia.video.APlayerView;
+import java.util.ArrayList;
+
+/**
+ * Feed Auto Play Helper. <p /> Many {@link APlayerView} in a scrolling list (RecyclerView...),
+ * share a small player pool: <ul> <li>most visible view(s) (visible ratio >= {@link
+ * #setActiveVisibleRatio(float)}) get a player and play <li>next item in scroll direction get a
+ * player and pre-buffer (prepare, no play) <li>others: player detached, stopped, back to pool
+ * <ul/> Players created <= maxActive + (preBuffer ? 1 : 0), whatever the feed length.
+ * <pre>
+ * e.g.
+ * feedHelper = new FeedAutoPlayHelper(new PlayerFactory() {
+ *   public IPlayer createPlayer() {
+ *     return new Player(context).init(new AndroidMediaPlayer());
+ *   }
+ * });
+ * feedHelper.attach(recyclerView);
+ * // =========@Adapter
+ * onBindViewHolder(holder, position) -> feedHelper.register(holder.playerView, uri);
+ * onViewRecycled(holder) -> feedHelper.unregister(holder.playerView);
+ * // =========@Activity
+ * onPause() -> feedHelper.onPause(); onDestroy() -> feedHelper.release();
+ * </pre>
+ */
+public class FeedAutoPlayHelper {
+
+  public interface PlayerFactory {
+
+    /**
+     * Pool full, no more invoke. (Main thread)
+     */
+    IPlayer createPlayer();
+  }
+
+  private final PlayerFactory playerFactory;
+  private final int maxActive;
+  private final boolean preBuffer;
+  private final int poolCapacity;
+
+  public FeedAutoPlayHelper(PlayerFactory playerFactory) {
+    this(playerFactory, 1, true);
+  }
+
+  /**
+   * @param maxActive 1~2 views play at the same time
+   * @param preBuffer whether the next item in scroll direction pre-buffer
+   */
+  public FeedAutoPlayHelper(PlayerFactory playerFactory, int maxActive, boolean preBuffer) {
+    this.playerFactory = playerFactory;
+    this.maxActive = Math.max(1, Math.min(2, maxActive));
+    this.preBuffer = preBuffer;
+    poolCapacity = this.maxActive + (preBuffer ? 1 : 0);
+  }
+
+  // ============================@Config@============================
+  private float activeVisibleRatio = 0.6f;
+
+  /**
+   * @param ratio 0~1 visible area / view area, to be active(play). default 0.6
+   */
+  public void setActiveVisibleRatio(float ratio) {
+    activeVisibleRatio = Math.max(0.01f, Math.min(1, ratio));
+  }
+
+  // ============================@Register@============================
+  private static final int STATE_IDLE = 0;
+  private static final int STATE_PRE_BUFFER = 1;
+  private static final int STATE_ACTIVE = 2;
+
+  private static final class Entry {
+
+    final APlayerView view;
+    Uri uri;
+    IPlayer player;
+    int state;
+    /**
+     * activated while its pre-buffer still preparing
+     */
+    boolean playWhenPrepared;
+    // =========@Measure
+    float visibleRatio;
+    int top;
+    int lastTop;
+    boolean attached;
+
+    Entry(APlayerView view) {
+      this.view = view;
+    }
+  }
+
+  private final ArrayList<Entry> entries = new ArrayList<>();
+
+  private Entry find(APlayerView view) {
+    for (int i = 0; i < entries.size(); i++) {
+      if (entries.get(i).view == view) {
+        return entries.get(i);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Bind/rebind (view holder reused) view with media. uri changed -> old player recycled.
+   */
+  public void register(APlayerView view, Uri uri) {
+    if (view == null) {
+      return;
+    }
+    Entry entry = find(view);
+    if (entry == null) {
+      entry = new Entry(view);
+      entry.lastTop = Integer.MIN_VALUE;
+      entries.add(entry);
+    } else if (uri == null ? entry.uri != null : !uri.equals(entry.uri)) {
+      recycle(entry);
+    }
+    entry.uri = uri;
+    requestUpdate();
+  }
+
+  public void register(APlayerView view, IMediaItem mediaItem) {
+    register(view, mediaItem != null ? mediaItem.getMediaUri() : null);
+  }
+
+  public void unregister(APlayerView view) {
+    Entry entry = find(view);
+    if (entry != null) {
+      recycle(entry);
+      entries.remove(entry);
+      requestUpdate();
+    }
+  }
+
+  // ============================@Scroll@============================
+  /**
+   * 1: forward(content move up/left, next item below), -1: backward
+   */
+  private int scrollDirection = 1;
+  private boolean scrollDirectionFromUser;
+
+  /**
+   * Optional, RecyclerView.OnScrollListener#onScrolled(dx, dy) -> onScrolled(dy). <p>Without,
+   * direction inferred from view positions.<p/>
+   */
+  public void onScrolled(int delta) {
+    if (delta != 0) {
+      scrollDirection = delta > 0 ? 1 : -1;
+      scrollDirectionFromUser = true;
+    }
+    update();
+  }
+
+  public int getScrollDirection() {
+    return scrollDirection;
+  }
+
+  // =========@Attach@=========
+  private View container;
+  private boolean updatePending;
+
+  private final ViewTreeObserver.OnScrollChangedListener scrollChangedListener =
+      new ViewTreeObserver.OnScrollChangedListener() {
+        @Override
+        public void onScrollChanged() {
+          requestUpdate();
+        }
+      };
+
+  private final ViewTreeObserver.OnGlobalLayoutListener globalLayoutListener =
+      new ViewTreeObserver.OnGlobalLayoutListener() {
+        @Override
+        public void onGlobalLayout() {
+          requestUpdate();
+        }
+      };
+
+  private final Runnable updateRunnable = new Runnable() {
+    @Override
+    public void run() {
+      updatePending = false;
+      update();
+    }
+  };
+
+  /**
+   * Auto {@link #update()} (coalesced, once per frame) on scroll/layout of container.
+   */
+  public void attach(View container) {
+    detach();
+    this.container = container;
+    if (container != null) {
+      ViewTreeObserver observer = container.getViewTreeObserver();
+      observer.addOnScrollChangedListener(scrollChangedListener);
+      observer.addOnGlobalLayoutListener(globalLayoutListener);
+    }
+  }
+
+  @SuppressWarnings("deprecation")
+  public void detach() {
+    if (container != null) {
+      ViewTreeObserver observer = container.getViewTreeObserver();
+      observer.removeOnScrollChangedListener(scrollChangedListener);
+      observer.removeGlobalOnLayoutListener(globalLayoutListener);
+      container.removeCallbacks(updateRunnable);
+      container = null;
+    }
+    updatePending = false;
+  }
+
+  private void requestUpdate() {
+    if (container == null) {
+      return;//manual update()
+    }
+    if (!updatePending) {
+      updatePending = true;
+      container.post(updateRunnable);
+    }
+  }
+
+  // ============================@Update@============================
+  private final Rect rect = new Rect();
+  private final int[] location = new int[2];
+  private final ArrayList<Entry> wanted = new ArrayList<>();
+  private boolean paused;
+
+  /**
+   * Measure visible ratio of registered views, then hand out players. (Main thread)
+   */
+  public void update() {
+    if (paused || entries.isEmpty()) {
+      return;
+    }
+    measure();
+    // =========@Active
+    wanted.clear();
+    for (int i = 0; i < entries.size(); i++) {
+      Entry entry = entries.get(i);
+      if (entry.uri != null && entry.visibleRatio >= activeVisibleRatio) {
+        insertByRank(entry);
+      }
+    }
+    while (wanted.size() > maxActive) {
+      wanted.remove(wanted.size() - 1);
+    }
+    // =========@PreBuffer
+    Entry next = preBuffer && !wanted.isEmpty() ? findNext(wanted.get(0)) : null;
+    // =========@Recycle(first, give back players)
+    for (int i = 0; i < entries.size(); i++) {
+      Entry entry = entries.get(i);
+      if (entry != next && !wanted.contains(entry)) {
+        recycle(entry);
+      }
+    }
+    // =========@Hand out
+    for (int i = 0; i < wanted.size(); i++) {
+      activate(wanted.get(i));
+    }
+    if (next != null) {
+      preBuffer(next);
+    }
+  }
+
+  private void measure() {
+    int directionSum = 0;
+    for (int i = 0; i < entries.size(); i++) {
+      Entry entry = entries.get(i);
+      View view = entry.view;
+      entry.attached = view.getWindowToken() != null;
+      entry.visibleRatio = 0;
+      if (!entry.attached) {
+        entry.lastTop = Integer.MIN_VALUE;
+        continue;
+      }
+      view.getLocationOnScreen(location);
+      entry.top = location[1];
+      if (entry.lastTop != Integer.MIN_VALUE) {
+        directionSum += entry.lastTop - entry.top;
+      }
+      entry.lastTop = entry.top;
+      long area = (long) view.getWidth() * view.getHeight();
+      if (area > 0 && view.isShown() && view.getGlobalVisibleRect(rect)) {
+        entry.visibleRatio = (float) ((long) rect.width() * rect.height()) / area;
+      }
+    }
+    if (!scrollDirectionFromUser && directionSum != 0) {
+      scrollDirection = directionSum > 0 ? 1 : -1;
+    }
+    scrollDirectionFromUser = false;
+  }
+
+  /**
+   * visible ratio desc, same ratio -> first in scroll direction
+   */
+  private void insertByRank(Entry entry) {
+    int i = 0;
+    for (; i < wanted.size(); i++) {
+      Entry other = wanted.get(i);
+      if (entry.visibleRatio > other.visibleRatio || (entry.visibleRatio == other.visibleRatio
+          && (entry.top - other.top) * scrollDirection < 0)) {
+        break;
+      }
+    }
+    wanted.add(i, entry);
+  }
+
+  /**
+   * @return attached item nearest to leader in scroll direction, not active
+   */
+  private Entry findNext(Entry leader) {
+    Entry next = null;
+    int best = Integer.MAX_VALUE;
+    for (int i = 0; i < entries.size(); i++) {
+      Entry entry = entries.get(i);
+      if (!entry.attached || entry.uri == null || wanted.contains(entry)) {
+        continue;
+      }
+      int distance = (entry.top - leader.top) * scrollDirection;
+      if (distance > 0 && distance < best) {
+        best = distance;
+        next = entry;
+      }
+    }
+    return next;
+  }
+
+  // ============================@Pool@============================
+  private final ArrayList<IPlayer> freePlayers = new ArrayList<>();
+  private int createdCount;
+
+  private IPlayer obtain() {
+    if (!freePlayers.isEmpty()) {
+      return freePlayers.remove(freePlayers.size() - 1);
+    }
+    if (createdCount < poolCapacity && playerFactory != null) {
+      IPlayer player = playerFactory.createPlayer();
+      if (player != null) {
+        createdCount++;
+        player.addListener(new PreparedListener(player));
+      }
+      return player;
+    }
+    return null;
+  }
+
+  private final class PreparedListener extends PlayerListener {
+
+    private final IPlayer player;
+
+    PreparedListener(IPlayer player) {
+      this.player = player;
+    }
+
+    @Override
+    public void onPrepared() {
+      for (int i = 0; i < entries.size(); i++) {
+        Entry entry = entries.get(i);
+        if (entry.player == player && entry.playWhenPrepared) {
+          entry.playWhenPrepared = false;
+          if (entry.state == STATE_ACTIVE && !paused) {
+            player.play();
+          }
+        }
+      }
+    }
+  }
+
+  private boolean bind(Entry entry) {
+    if (entry.player == null) {
+      entry.player = obtain();
+      if (entry.player == null) {
+        return false;
+      }
+      entry.state = STATE_IDLE;
+      entry.view.setPlayer(entry.player);
+    }
+    return true;
+  }
+
+  private void activate(Entry entry) {
+    if (entry.state == STATE_ACTIVE || !bind(entry)) {
+      return;
+    }
+    try {
+      if (entry.state == STATE_PRE_BUFFER) {
+        //same uri (changed -> recycled), play(uri) would reset a buffer still preparing
+        int playbackState = entry.player.getPlaybackState();
+        if (entry.player.isPlayable()) {
+          entry.player.play();
+        } else if (playbackState == IPlayer.STATE_GOT_SOURCE
+            || playbackState == IPlayer.STATE_BUFFERING) {
+          entry.playWhenPrepared = true;
+        } else {
+          entry.player.play(entry.uri);//pre-buffer failed
+        }
+      } else {
+        entry.player.play(entry.uri);
+      }
+      entry.state = STATE_ACTIVE;
+    } catch (Exception e) {
+      L.printStackTrace(e);
+    }
+  }
+
+  private void preBuffer(Entry entry) {
+    if (entry.state == STATE_ACTIVE) {
+      entry.player.pause();//scrolled back to next, keep buffer
+      entry.playWhenPrepared = false;
+      entry.state = STATE_PRE_BUFFER;
+      return;
+    }
+    if (entry.state == STATE_PRE_BUFFER || !bind(entry)) {
+      return;
+    }
+    try {
+      entry.player.prepare(entry.uri);
+      entry.state = STATE_PRE_BUFFER;
+    } catch (Exception e) {
+      L.printStackTrace(e);
+    }
+  }
+
+  /**
+   * Detach player from view(surface, listener, control group), stop, back to pool.
+   */
+  private void recycle(Entry entry) {
+    IPlayer player = entry.player;
+    if (player == null) {
+      return;
+    }
+    entry.player = null;
+    entry.state = STATE_IDLE;
+    entry.playWhenPrepared = false;
+    try {
+      entry.view.setPlayer(null);
+      player.stop();
+      player.reset();
+    } catch (Exception e) {
+      L.printStackTrace(e);
+    }
+    freePlayers.add(player);
+  }
+
+  /**
+   * @return players created (<= maxActive + preBuffer)
+   */
+  public int getCreatedPlayerCount() {
+    return createdCount;
+  }
+
+  /**
+   * @return player bound to view, null: idle
+   */
+  public IPlayer getPlayer(APlayerView view) {
+    Entry entry = find(view);
+    return entry != null ? entry.player : null;
+  }
+
+  // ============================@Lifecycle@============================
+
+  /**
+   * @see android.app.Activity#onResume()
+   */
+  public void onResume() {
+    paused = false;
+    update();
+  }
+
+  /**
+   * Active players pause, @see android.app.Activity#onPause()
+   */
+  public void onPause() {
+    paused = true;
+    for (int i = 0; i < entries.size(); i++) {
+      Entry entry = entries.get(i);
+      if (entry.state == STATE_ACTIVE) {
+        entry.player.pause();
+        entry.playWhenPrepared = false;
+        entry.state = STATE_PRE_BUFFER;//resume -> play again
+      }
+    }
+  }
+
+  /**
+   * All players shutdown, @see android.app.Activity#onDestroy()
+   */
+  public void release() {
+    detach();
+    for (int i = 0; i < entries.size(); i++) {
+      recycle(entries.get(i));
+    }
+    entries.clear();
+    for (IPlayer player : freePlayers) {
+      player.shutdown();
+    }
+    freePlayers.clear();
+    createdCount = 0;
+  }
+}
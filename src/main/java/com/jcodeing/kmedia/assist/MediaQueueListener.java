@@ -37,6 +37,26 @@ public class MediaQueueListener implements IMediaQueue.Listener {
     //Do nothing
   }
 
+  @Override
+  public void onItemsInserted(int from, int count) {
+    //Do nothing
+  }
+
+  @Override
+  public void onItemMoved(int from, int to) {
+    //Do nothing
+  }
+
+  /**
+   * Default, dispatch to {@link #onItemRemoved(int)} count times
+   */
+  @Override
+  public void onItemsRemoved(int from, int count) {
+    for (int i = 0; i < count; i++) {
+      onItemRemoved(from);
+    }
+  }
+
   @Override
   public void onCurrentQueueIndexUpdated(int index) {
     //Do nothing
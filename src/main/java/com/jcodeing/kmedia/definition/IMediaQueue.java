@@ -23,6 +23,10 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.List;
 
+/**
+ * WARNING: insert/move/remove(from, count) added after 1.0.10, custom queues implementing this
+ * interface directly must implement them, or extend {@link MediaQueue}.
+ */
 public interface IMediaQueue {
 
   /**
@@ -65,13 +69,51 @@ public interface IMediaQueue {
   int indexOf(IMediaItem item);
 
   /**
-   * Removes the mediaItem at the specified position in this queue.
+   * Removes the mediaItem at the specified position in this queue, with {@link
+   * Listener#onItemsRemoved(int, int)} (count 1).
    *
    * @param index the index of the mediaItem to be removed
    * @return the mediaItem previously at the specified position
    */
   IMediaItem remove(int index);
 
+  /**
+   * Removes count mediaItems from the specified position in this queue, with a single {@link
+   * Listener#onItemsRemoved(int, int)}. <p>Current index is kept on the current item, or the next
+   * item if current was removed.<p/>
+   *
+   * @param from the index of the first mediaItem to be removed
+   * @param count the number of mediaItems to be removed
+   * @return is remove success (all or nothing)
+   */
+  boolean remove(int from, int count);
+
+  /**
+   * Inserts the mediaItem at the specified position in this queue.
+   *
+   * @param index 0 <= index <= size()
+   * @return is insert success
+   * @see Listener#onItemsInserted(int, int)
+   */
+  boolean insert(int index, IMediaItem item);
+
+  /**
+   * Inserts all of the mediaItems at the specified position in this queue, with a single {@link
+   * Listener#onItemsInserted(int, int)}.
+   *
+   * @param index 0 <= index <= size()
+   * @return is insert success (all or nothing)
+   */
+  boolean insert(int index, List<? extends IMediaItem> items);
+
+  /**
+   * Moves the mediaItem from to.
+   *
+   * @return is move success
+   * @see Listener#onItemMoved(int, int)
+   */
+  boolean move(int from, int to);
+
   /**
    * Removes all of the {@link IMediaItem}s from this queue (optional operation). The queue will be
    * empty after this call returns.
@@ -113,7 +155,7 @@ public interface IMediaQueue {
   int seekIndexByMediaId(String mediaId);
 
   /**
-   * @return a random queue index
+   * @return a random queue index, non-repeating until every item was returned once
    */
   int getRandomIndex();
 
@@ -135,12 +177,14 @@ public interface IMediaQueue {
   boolean skipToIndexByIncrement(int increment);
 
   /**
-   * Skip to the next media item. <p>skipToIndexByIncrement(1)<p/>
+   * Skip to the next media item. <p>skipToIndexByIncrement(1)<p/> <p>{@link
+   * #AUTO_SKIP_MODE_RANDOM}: skipToRandom()<p/>
    */
   boolean skipToNext();
 
   /**
-   * Skip to the previous media item. <p>skipToIndexByIncrement(-1)<p/>
+   * Skip to the previous media item. <p>skipToIndexByIncrement(-1)<p/> <p>{@link
+   * #AUTO_SKIP_MODE_RANDOM}: back to the previous random pick<p/>
    */
   boolean skipToPrevious();
 
@@ -162,12 +206,38 @@ public interface IMediaQueue {
   boolean skipToAutoAssigned();
 
   // ============================@Listener
+
+  /**
+   * WARNING: onItemsInserted/onItemMoved/onItemsRemoved added after 1.0.10, direct implementers must
+   * implement them, or extend {@link com.jcodeing.kmedia.assist.MediaQueueListener} / {@link
+   * com.jcodeing.kmedia.assist.PlayerComponentListener} (forward onItemsRemoved to onItemRemoved).
+   */
   interface Listener {
 
     void onQueueUpdated(List<? extends IMediaItem> newQueue);
 
+    /**
+     * @deprecated queues only dispatch {@link #onItemsRemoved(int, int)}, the adapters forward it
+     * here
+     */
+    @Deprecated
     void onItemRemoved(int index);
 
+    /**
+     * [from, from + count) inserted
+     */
+    void onItemsInserted(int from, int count);
+
+    /**
+     * one item moved from to
+     */
+    void onItemMoved(int from, int to);
+
+    /**
+     * [from, from + count) removed
+     */
+    void onItemsRemoved(int from, int count);
+
     void onCurrentQueueIndexUpdated(int index);
 
     boolean onSkipQueueIndex(int index);
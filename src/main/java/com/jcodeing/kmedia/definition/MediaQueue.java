@@ -15,14 +15,18 @@
  */
 package com.jcodeing.kmedia.definition;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.text.TextUtils;
 import com.jcodeing.kmedia.IPlayer;
 import com.jcodeing.kmedia.assist.C;
 import com.jcodeing.kmedia.utils.Assert;
 import com.jcodeing.kmedia.utils.L;
+import java.util.Collections;
 import java.util.List;
-import java.util.Random;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MediaQueue implements IMediaQueue {
 
@@ -35,6 +39,10 @@ public class MediaQueue implements IMediaQueue {
 
   @Override
   public void destroy() {
+    if (diffExecutor != null) {
+      diffExecutor.shutdown();
+      diffExecutor = null;
+    }
     listeners.clear();
     listeners = null;
     player = null;
@@ -49,10 +57,132 @@ public class MediaQueue implements IMediaQueue {
       return;
     }
     queue = newQueue;
+    modCount++;
     currentIndex = 0;
+    if (shuffleOrder != null) {
+      shuffleOrder.reset(size());
+      shuffleOrder.setCurrent(currentIndex);
+    }
     onQueueUpdated(newQueue);
   }
 
+  /**
+   * queue structural modification count
+   */
+  protected int modCount;
+
+  /**
+   * Diff update, the current item keeps playing. <p>Apply the edit script(old->new queue) with
+   * ranged change events ({@link Listener#onItemsRemoved(int, int)}/{@link
+   * Listener#onItemsInserted(int, int)}), and re-anchor current index to the current item.<p/>
+   * <p>Too many ranges ({@link #MAX_RANGED_EVENTS}), notify {@link
+   * Listener#onQueueUpdated(List)} instead.<p/>
+   *
+   * @param diff {@link MediaQueueDiff#calculate(List, List)} of this queue and newQueue, stale diff
+   * (queue changed after calculated) will be recalculated
+   */
+  public void update(List<? extends IMediaItem> newQueue, MediaQueueDiff diff) {
+    if (queue == null || newQueue == null) {
+      update(newQueue);
+      return;
+    }
+    if (diff == null || diff.oldSize != queue.size() || diff.newSize != newQueue.size() ||
+        (diff.baseModCount >= 0 && diff.baseModCount != modCount)) {
+      diff = MediaQueueDiff.calculate(queue, newQueue);
+    }
+    IMediaItem currentItem = getCurrentMediaItem();
+    String currentMediaId = currentItem != null ? currentItem.getMediaId() : null;
+    // =========@apply@=========
+    queue = newQueue;
+    modCount++;
+    // =========@re-anchor current index@=========
+    int index = currentIndex >= 0 ? diff.mapPosition(currentIndex) : C.INDEX_UNSET;
+    if (index < 0 && currentMediaId != null) {
+      index = seekIndexByMediaId(currentMediaId);//moved
+    }
+    if (index < 0 && currentIndex >= 0 && size() > 0) {
+      index = Math.min(currentIndex, size() - 1);//removed
+    }
+    // =========@shuffle@=========
+    int opCount = diff.getOpCount();
+    if (shuffleOrder != null) {
+      for (int i = 0; i < opCount; i++) {
+        if (diff.getOp(i) == MediaQueueDiff.OP_REMOVE) {
+          shuffleOrder.remove(diff.getOpPosition(i), diff.getOpCountOf(i));
+        } else {
+          shuffleOrder.insert(diff.getOpPosition(i), diff.getOpCountOf(i));
+        }
+      }
+    }
+    // =========@current index first: listeners read it in the events@=========
+    IMediaItem newItem = getMediaItem(index);
+    boolean indexUpdated = index != currentIndex ||
+        (newItem != null && !TextUtils.equals(newItem.getMediaId(), currentMediaId));
+    if (indexUpdated) {
+      currentIndex = index;
+      if (shuffleOrder != null && index >= 0) {
+        shuffleOrder.setCurrent(index);
+      }
+    }
+    // =========@notify@=========
+    if (opCount > MAX_RANGED_EVENTS) {
+      onQueueUpdated(newQueue);
+    } else {
+      for (int i = 0; i < opCount; i++) {
+        if (diff.getOp(i) == MediaQueueDiff.OP_REMOVE) {
+          onItemsRemoved(diff.getOpPosition(i), diff.getOpCountOf(i));
+        } else {
+          onItemsInserted(diff.getOpPosition(i), diff.getOpCountOf(i));
+        }
+      }
+    }
+    if (indexUpdated) {
+      onCurrentQueueIndexUpdated(index);
+    }
+  }
+
+  /**
+   * Diff update, the diff is calculated off the current thread, applied atomically on the current
+   * thread(looper).
+   *
+   * @see #update(List, MediaQueueDiff)
+   */
+  public void updateAsync(final List<? extends IMediaItem> newQueue) {
+    if (queue == null || newQueue == null) {
+      update(newQueue);
+      return;
+    }
+    final String[] oldIds = MediaQueueDiff.mediaIds(queue);
+    final int baseModCount = modCount;
+    Looper looper = Looper.myLooper();
+    final Handler handler = new Handler(looper != null ? looper : Looper.getMainLooper());
+    if (diffExecutor == null) {
+      diffExecutor = Executors.newSingleThreadExecutor();
+    }
+    diffExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        final MediaQueueDiff diff =
+            MediaQueueDiff.calculate(oldIds, MediaQueueDiff.mediaIds(newQueue));
+        diff.baseModCount = baseModCount;
+        handler.post(new Runnable() {
+          @Override
+          public void run() {
+            if (listeners != null) {//not destroyed
+              update(newQueue, diff);
+            }
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * Max ranged change events of a diff update
+   */
+  public static final int MAX_RANGED_EVENTS = 32;
+  private ExecutorService diffExecutor;
+
   @Override
   public boolean isEmpty() {
     return queue == null || queue.isEmpty();
@@ -76,24 +206,163 @@ public class MediaQueue implements IMediaQueue {
 
   @Override
   public IMediaItem remove(int index) {
-    if (queue != null) {
-      IMediaItem removed = queue.remove(index);
-      if (removed != null) {
-        onItemRemoved(index);
-        return removed;
+    if (queue != null && Assert.checkIndex(index, queue.size())) {
+      IMediaItem removed;
+      try {
+        removed = queue.remove(index);
+      } catch (Exception e) {
+        //UnsupportedOperationException
+        L.printStackTrace(e);
+        return null;
+      }
+      if (shuffleOrder != null) {
+        shuffleOrder.remove(index);
+      }
+      modCount++;
+      boolean indexUpdated = reviseCurrentIndexForRemoved(index, 1);
+      onItemsRemoved(index, 1);
+      if (indexUpdated) {
+        onCurrentQueueIndexUpdated(currentIndex);
       }
+      return removed;
     }
     return null;
   }
 
+  @Override
+  public boolean remove(int from, int count) {
+    if (queue == null || count <= 0 || from < 0 || from + count > queue.size()) {
+      return false;
+    }
+    try {
+      queue.subList(from, from + count).clear();
+    } catch (Exception e) {
+      //UnsupportedOperationException
+      L.printStackTrace(e);
+      return false;
+    }
+    if (shuffleOrder != null) {
+      shuffleOrder.remove(from, count);
+    }
+    modCount++;
+    boolean indexUpdated = reviseCurrentIndexForRemoved(from, count);
+    onItemsRemoved(from, count);
+    if (indexUpdated) {
+      onCurrentQueueIndexUpdated(currentIndex);
+    }
+    return true;
+  }
+
+  @Override
+  public boolean insert(int index, IMediaItem item) {
+    return item != null && insert(index, Collections.singletonList(item));
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public boolean insert(int index, List<? extends IMediaItem> items) {
+    if (queue == null || items == null || items.isEmpty() || index < 0 || index > queue.size()) {
+      return false;
+    }
+    int count = items.size();
+    int sizeBefore = queue.size();
+    try {
+      ((List<IMediaItem>) queue).addAll(index, items);
+    } catch (Exception e) {
+      //UnsupportedOperationException
+      L.printStackTrace(e);
+      return false;
+    }
+    if (shuffleOrder != null) {
+      shuffleOrder.insert(index, count);
+    }
+    modCount++;
+    // =========@revise current index (before events, listeners read it)@=========
+    boolean indexUpdated = currentIndex >= index && currentIndex < sizeBefore;//empty queue: 0
+    if (indexUpdated) {
+      currentIndex += count;
+    }
+    onItemsInserted(index, count);
+    if (indexUpdated) {
+      onCurrentQueueIndexUpdated(currentIndex);
+    }
+    return true;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public boolean move(int from, int to) {
+    if (queue == null || !Assert.checkIndex(from, queue.size()) ||
+        !Assert.checkIndex(to, queue.size())) {
+      return false;
+    }
+    if (from == to) {
+      return true;
+    }
+    try {
+      List<IMediaItem> list = (List<IMediaItem>) queue;
+      list.add(to, list.remove(from));
+    } catch (Exception e) {
+      //UnsupportedOperationException
+      L.printStackTrace(e);
+      return false;
+    }
+    if (shuffleOrder != null) {
+      shuffleOrder.move(from, to);
+    }
+    modCount++;
+    // =========@revise current index (before events, listeners read it)@=========
+    int index = currentIndex;
+    if (index == from) {
+      index = to;
+    } else if (from < index && index <= to) {
+      index--;
+    } else if (to <= index && index < from) {
+      index++;
+    }
+    boolean indexUpdated = index != currentIndex;
+    currentIndex = index;
+    onItemMoved(from, to);
+    if (indexUpdated) {
+      onCurrentQueueIndexUpdated(index);
+    }
+    return true;
+  }
+
+  /**
+   * Keep current index on the current item, or the next item if current was removed.
+   *
+   * @return revised, notify {@link #onCurrentQueueIndexUpdated(int)} after the removed event
+   */
+  private boolean reviseCurrentIndexForRemoved(int from, int count) {
+    if (currentIndex < from) {
+      return false;
+    }
+    if (currentIndex >= from + count) {
+      currentIndex -= count;
+    } else {//current removed
+      currentIndex = from < size() ? from : size() - 1;//empty: -1(C.INDEX_UNSET)
+      if (shuffleOrder != null && currentIndex >= 0) {
+        shuffleOrder.setCurrent(currentIndex);
+      }
+    }
+    return true;
+  }
+
   @Override
   public void clear() {
     if (queue != null) {
       try {
         queue.clear();
+        modCount++;
       } catch (Exception e) {
         //UnsupportedOperationException
         L.printStackTrace(e);
+        return;
+      }
+      currentIndex = C.INDEX_UNSET;
+      if (shuffleOrder != null) {
+        shuffleOrder.reset(0);
       }
     }
   }
@@ -129,6 +398,9 @@ public class MediaQueue implements IMediaQueue {
   public boolean setCurrentIndex(int index) {
     if (queue != null && Assert.checkIndex(index, queue.size())) {
       currentIndex = index;
+      if (shuffleOrder != null) {
+        shuffleOrder.setCurrent(index);
+      }
       onCurrentQueueIndexUpdated(index);
       return true;
     }
@@ -144,7 +416,8 @@ public class MediaQueue implements IMediaQueue {
   public int seekIndexByMediaId(String mediaId) {
     if (size() > 0 && !TextUtils.isEmpty(mediaId)) {
       for (int i = 0; i < size(); i++) {
-        if (mediaId.equals(getMediaItem(i).getMediaId())) {
+        IMediaItem item = getMediaItem(i);
+        if (item != null && mediaId.equals(item.getMediaId())) {
           return i;
         }
       }
@@ -152,16 +425,59 @@ public class MediaQueue implements IMediaQueue {
     return -1;
   }
 
-  private Random mRandom;
+  // ============================@Shuffle
+  private ShuffleOrder shuffleOrder;
+  private long shuffleSeed = C.TIME_UNSET;
+
+  /**
+   * @return non-repeating shuffle order, create on first use. <p>The list is shared with the caller
+   * ({@link #update(List)}), changed outside of this queue -> size differs, reset (new round).<p/>
+   */
+  protected ShuffleOrder getShuffleOrder() {
+    if (shuffleOrder == null) {
+      shuffleOrder = shuffleSeed == C.TIME_UNSET ?
+          new ShuffleOrder(size()) : new ShuffleOrder(size(), shuffleSeed);
+      shuffleOrder.setCurrent(currentIndex);
+    } else if (shuffleOrder.size() != size()) {
+      shuffleOrder.reset(size());
+      if (Assert.checkIndex(currentIndex, size())) {
+        shuffleOrder.setCurrent(currentIndex);
+      }
+    }
+    return shuffleOrder;
+  }
+
+  /**
+   * Set the random seed, the same seed and queue get the same random order (reproducibility).
+   */
+  public void setShuffleSeed(long seed) {
+    shuffleSeed = seed;
+    if (shuffleOrder != null) {
+      shuffleOrder.setSeed(seed);
+      shuffleOrder.setCurrent(currentIndex);
+    }
+  }
 
+  /**
+   * Non-repeating, every item returned once before any repeats.
+   *
+   * @see ShuffleOrder#next()
+   */
   @Override
   public int getRandomIndex() {
-    if (mRandom == null) {
-      mRandom = new Random();
-      mRandom.setSeed(System.currentTimeMillis());
+    if (size() > 0) {
+      return getShuffleOrder().next();
     }
+    return -1;
+  }
+
+  /**
+   * @return previous random pick or -1 (no history)
+   * @see ShuffleOrder#previous()
+   */
+  protected int getPreviousRandomIndex() {
     if (size() > 0) {
-      return Math.abs(mRandom.nextInt() % queue.size());
+      return getShuffleOrder().previous();
     }
     return -1;
   }
@@ -199,17 +515,30 @@ public class MediaQueue implements IMediaQueue {
 
   @Override
   public boolean skipToNext() {
+    if (autoSkipMode == AUTO_SKIP_MODE_RANDOM) {
+      return skipToRandom();
+    }
     return skipToIndexByIncrement(1);
   }
 
   @Override
   public boolean skipToPrevious() {
+    if (autoSkipMode == AUTO_SKIP_MODE_RANDOM && size() > 1) {
+      //back to the previous random pick
+      int index = getPreviousRandomIndex();
+      if (index >= 0) {
+        return skipToIndex(index);
+      }
+    }
     return skipToIndexByIncrement(-1);
   }
 
   @Override
   public boolean skipToRandom() {
-    return skipToIndexByIncrement(getRandomIndex() - currentIndex);
+    if (size() > 1) {
+      return skipToIndex(getRandomIndex());
+    }
+    return false;
   }
 
   // ============================@Auto
@@ -336,10 +665,34 @@ public class MediaQueue implements IMediaQueue {
     }
   }
 
+  /**
+   * @deprecated removal is only dispatched as {@link Listener#onItemsRemoved(int, int)}
+   */
+  @Deprecated
   protected void onItemRemoved(int index) {
+    onItemsRemoved(index, 1);
+  }
+
+  protected void onItemsInserted(int from, int count) {
+    if (listeners != null) {
+      for (Listener listener : listeners) {
+        listener.onItemsInserted(from, count);
+      }
+    }
+  }
+
+  protected void onItemMoved(int from, int to) {
+    if (listeners != null) {
+      for (Listener listener : listeners) {
+        listener.onItemMoved(from, to);
+      }
+    }
+  }
+
+  protected void onItemsRemoved(int from, int count) {
     if (listeners != null) {
       for (Listener listener : listeners) {
-        listener.onItemRemoved(index);
+        listener.onItemsRemoved(from, count);
       }
     }
   }
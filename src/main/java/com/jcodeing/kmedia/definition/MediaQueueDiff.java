@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.definition;
+
+import java.util.List;
+
+/**
+ * Minimal edit script between two queues by {@link IMediaItem#getMediaId()}. <p>Common prefix and
+ * suffix are trimmed first, the middle is diffed with Myers O((N+M)D) algorithm on mediaId hashes.
+ * If the edit distance exceeds {@link #MAX_EDIT_DISTANCE}, the middle is replaced as a whole (still
+ * correct, not minimal).<p/> <p>Pure calculation, can run on any thread.<p/>
+ * <pre>
+ * ops (apply in order, positions in the list being edited):
+ * [OP_REMOVE, position, count] [OP_INSERT, position, count] ...
+ * </pre>
+ *
+ * @see MediaQueue#update(List, MediaQueueDiff)
+ */
+public final class MediaQueueDiff {
+
+  public static final int OP_REMOVE = 1;
+  public static final int OP_INSERT = 2;
+
+  public static final int MAX_EDIT_DISTANCE = 1000;
+
+  final int oldSize;
+  final int newSize;
+  /**
+   * triplets [op, position, count]
+   */
+  private int[] ops = new int[3 * 4];
+  private int opCount;
+
+  /**
+   * queue modification count when old ids were taken
+   */
+  int baseModCount = -1;
+
+  private MediaQueueDiff(int oldSize, int newSize) {
+    this.oldSize = oldSize;
+    this.newSize = newSize;
+  }
+
+  public int getOpCount() {
+    return opCount;
+  }
+
+  public int getOp(int i) {
+    return ops[i * 3];
+  }
+
+  public int getOpPosition(int i) {
+    return ops[i * 3 + 1];
+  }
+
+  public int getOpCountOf(int i) {
+    return ops[i * 3 + 2];
+  }
+
+  /**
+   * @return no changes
+   */
+  public boolean isEmpty() {
+    return opCount == 0;
+  }
+
+  /**
+   * @return old position -> new position, or -1 (removed)
+   */
+  public int mapPosition(int oldPosition) {
+    int position = oldPosition;
+    for (int i = 0; i < opCount && position >= 0; i++) {
+      int op = ops[i * 3];
+      int pos = ops[i * 3 + 1];
+      int count = ops[i * 3 + 2];
+      if (op == OP_REMOVE) {
+        if (position >= pos + count) {
+          position -= count;
+        } else if (position >= pos) {
+          position = -1;
+        }
+      } else if (position >= pos) {
+        position += count;
+      }
+    }
+    return position;
+  }
+
+  private void add(int op, int position, int count) {
+    if (count <= 0) {
+      return;
+    }
+    //merge with last same op at continuous position
+    if (opCount > 0) {
+      int last = (opCount - 1) * 3;
+      if (ops[last] == op && op == OP_INSERT && ops[last + 1] + ops[last + 2] == position) {
+        ops[last + 2] += count;
+        return;
+      }
+      if (ops[last] == op && op == OP_REMOVE && ops[last + 1] == position) {
+        ops[last + 2] += count;
+        return;
+      }
+    }
+    if (ops.length < (opCount + 1) * 3) {
+      int[] newOps = new int[ops.length * 2];
+      System.arraycopy(ops, 0, newOps, 0, opCount * 3);
+      ops = newOps;
+    }
+    ops[opCount * 3] = op;
+    ops[opCount * 3 + 1] = position;
+    ops[opCount * 3 + 2] = count;
+    opCount++;
+  }
+
+  // ============================@Calculate@============================
+
+  /**
+   * @return mediaIds of the items (take it on the queue thread, then diff on any thread)
+   */
+  public static String[] mediaIds(List<? extends IMediaItem> items) {
+    int size = items != null ? items.size() : 0;
+    String[] ids = new String[size];
+    for (int i = 0; i < size; i++) {
+      IMediaItem item = items.get(i);
+      ids[i] = item != null ? item.getMediaId() : null;
+    }
+    return ids;
+  }
+
+  public static MediaQueueDiff calculate(List<? extends IMediaItem> oldItems,
+      List<? extends IMediaItem> newItems) {
+    return calculate(mediaIds(oldItems), mediaIds(newItems));
+  }
+
+  public static MediaQueueDiff calculate(String[] oldIds, String[] newIds) {
+    int n = oldIds.length;
+    int m = newIds.length;
+    MediaQueueDiff diff = new MediaQueueDiff(n, m);
+    // =========@trim common prefix/suffix@=========
+    int start = 0;
+    while (start < n && start < m && same(oldIds[start], newIds[start])) {
+      start++;
+    }
+    int oldEnd = n;
+    int newEnd = m;
+    while (oldEnd > start && newEnd > start && same(oldIds[oldEnd - 1], newIds[newEnd - 1])) {
+      oldEnd--;
+      newEnd--;
+    }
+    int oldLen = oldEnd - start;
+    int newLen = newEnd - start;
+    if (oldLen == 0 || newLen == 0) {
+      diff.add(OP_REMOVE, start, oldLen);
+      diff.add(OP_INSERT, start, newLen);
+      return diff;
+    }
+    // =========@myers@=========
+    int[] a = new int[oldLen];
+    int[] b = new int[newLen];
+    for (int i = 0; i < oldLen; i++) {
+      a[i] = hash(oldIds[start + i]);
+    }
+    for (int i = 0; i < newLen; i++) {
+      b[i] = hash(newIds[start + i]);
+    }
+    int[][] trace = myers(a, b, oldIds, newIds, start);
+    if (trace == null) {
+      //too different, replace the middle
+      diff.add(OP_REMOVE, start, oldLen);
+      diff.add(OP_INSERT, start, newLen);
+    } else {
+      backtrack(diff, trace, a, b, oldIds, newIds, start);
+    }
+    return diff;
+  }
+
+  private static boolean same(String a, String b) {
+    return a == null ? b == null : a.equals(b);
+  }
+
+  private static int hash(String s) {
+    return s != null ? s.hashCode() : 0;
+  }
+
+  private static boolean equal(int[] a, int[] b, int x, int y, String[] oldIds,
+      String[] newIds, int start) {
+    return a[x] == b[y] && same(oldIds[start + x], newIds[start + y]);
+  }
+
+  /**
+   * @return V arrays of each d (trace), or null (d > MAX_EDIT_DISTANCE)
+   */
+  private static int[][] myers(int[] a, int[] b, String[] oldIds, String[] newIds, int start) {
+    int n = a.length;
+    int m = b.length;
+    int max = Math.min(n + m, MAX_EDIT_DISTANCE);
+    int offset = max + 1;
+    int[] v = new int[2 * max + 3];
+    int[][] trace = new int[max + 1][];
+    for (int d = 0; d <= max; d++) {
+      for (int k = -d; k <= d; k += 2) {
+        int x;
+        if (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])) {
+          x = v[offset + k + 1];//down (insert)
+        } else {
+          x = v[offset + k - 1] + 1;//right (remove)
+        }
+        int y = x - k;
+        while (x < n && y < m && equal(a, b, x, y, oldIds, newIds, start)) {
+          x++;
+          y++;
+        }
+        v[offset + k] = x;
+        if (x >= n && y >= m) {
+          trace[d] = snapshot(v, offset, d);
+          int[][] result = new int[d + 1][];
+          System.arraycopy(trace, 0, result, 0, d + 1);
+          return result;
+        }
+      }
+      trace[d] = snapshot(v, offset, d);
+    }
+    return null;
+  }
+
+  /**
+   * keep v[-d..d] of this d
+   */
+  private static int[] snapshot(int[] v, int offset, int d) {
+    int[] s = new int[2 * d + 1];
+    System.arraycopy(v, offset - d, s, 0, 2 * d + 1);
+    return s;
+  }
+
+  private static int traceX(int[][] trace, int d, int k) {
+    return trace[d][k + d];
+  }
+
+  private static void backtrack(MediaQueueDiff diff, int[][] trace, int[] a, int[] b,
+      String[] oldIds, String[] newIds, int start) {
+    int x = a.length;
+    int y = b.length;
+    // collect edits from end to start, then add in forward order
+    int[] edits = new int[trace.length * 2];//[op, oldX or newY]
+    int editCount = 0;
+    for (int d = trace.length - 1; d > 0; d--) {
+      int k = x - y;
+      int prevK;
+      if (k == -d || (k != d && traceX(trace, d - 1, k - 1) < traceX(trace, d - 1, k + 1))) {
+        prevK = k + 1;//down (insert)
+      } else {
+        prevK = k - 1;//right (remove)
+      }
+      int prevX = traceX(trace, d - 1, prevK);
+      int prevY = prevX - prevK;
+      while (x > prevX && y > prevY) {//snake
+        x--;
+        y--;
+      }
+      if (prevK == k + 1) {
+        edits[editCount * 2] = OP_INSERT;
+        edits[editCount * 2 + 1] = prevY;//new[prevY] inserted
+      } else {
+        edits[editCount * 2] = OP_REMOVE;
+        edits[editCount * 2 + 1] = prevX;//old[prevX] removed
+      }
+      editCount++;
+      x = prevX;
+      y = prevY;
+    }
+    // =========@forward@=========
+    // position in the editing list = start + (new index already matched)
+    int removed = 0;
+    int inserted = 0;
+    for (int i = editCount - 1; i >= 0; i--) {
+      int op = edits[i * 2];
+      int index = edits[i * 2 + 1];
+      if (op == OP_REMOVE) {
+        //old[index] -> editing position: index - removed + inserted
+        diff.add(OP_REMOVE, start + index - removed + inserted, 1);
+        removed++;
+      } else {
+        //new[index] -> editing position: index
+        diff.add(OP_INSERT, start + index, 1);
+        inserted++;
+      }
+    }
+  }
+}
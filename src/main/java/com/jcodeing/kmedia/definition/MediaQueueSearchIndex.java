@@ -0,0 +1,500 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.definition;
+
+import com.jcodeing.kmedia.assist.MediaQueueListener;
+import com.jcodeing.kmedia.utils.L;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Prefix search index over queue items title/description. <p>Text is normalized (lower case,
+ * accents stripped) and split into tokens, tokens are kept in a sorted array and matched by binary
+ * search, so a keystroke search not scan/toString the whole queue.<p/> <ul> <li>Full build runs in
+ * background when the queue updated <li>Insert/remove/move are applied incrementally (small sorted
+ * delta + slot->index map), compacted by a background rebuild when the delta grows<ul/>
+ * <pre>
+ * e.g.
+ * MediaQueueSearchIndex index = new MediaQueueSearchIndex();
+ * index.attach(player.getMediaQueue());
+ * int[] indices = index.search("bea yel");// "The Beatles - Yellow Submarine"
+ * </pre>
+ * Mutation callbacks are expected on the queue thread, search can be called on any thread.
+ */
+public class MediaQueueSearchIndex extends MediaQueueListener {
+
+  /**
+   * delta entries count trigger a background rebuild
+   */
+  public static final int MAX_DELTA_ENTRIES = 1024;
+  /**
+   * failed builds in a row retried, then empty until the next modification or {@link #rebuild()}
+   */
+  public static final int MAX_BUILD_RETRIES = 2;
+
+  private static final int[] EMPTY_RESULT = new int[0];
+
+  private IMediaQueue queue;
+
+  public void attach(IMediaQueue queue) {
+    detach();
+    if (queue != null) {
+      this.queue = queue;
+      queue.addListener(this);
+      rebuild();
+    }
+  }
+
+  public void detach() {
+    if (queue != null) {
+      queue.removeListener(this);
+      queue = null;
+    }
+    synchronized (this) {
+      generation++;
+      clear();
+      building = false;
+      stale = false;
+      buildFailures = 0;
+      notifyAll();
+    }
+  }
+
+  public void release() {
+    detach();
+    if (buildExecutor != null) {
+      buildExecutor.shutdownNow();
+      buildExecutor = null;
+    }
+  }
+
+  // ============================@Search@============================
+
+  /**
+   * @param query one or more prefixes, all of them must match (AND)
+   * @return matched queue indices in ascending order
+   */
+  public int[] search(String query) {
+    return search(query, Integer.MAX_VALUE);
+  }
+
+  /**
+   * @param limit max result count
+   * @return while building (see {@link #isReady()}) empty, never falls back to scan the queue
+   */
+  public int[] search(String query, int limit) {
+    return search(query, limit, 0);
+  }
+
+  /**
+   * @param waitMs while building, wait for the build at most waitMs (not on the main thread)
+   * @return still building after waitMs: empty
+   */
+  public int[] search(String query, int limit, long waitMs) {
+    String[] prefixes = tokenize(query);
+    if (prefixes.length == 0 || limit <= 0) {
+      return EMPTY_RESULT;
+    }
+    synchronized (this) {
+      if (building && waitMs > 0) {
+        awaitBuilt(waitMs);
+      }
+      return building ? EMPTY_RESULT : searchIndexed(prefixes, limit);
+    }
+  }
+
+  /**
+   * @return false: building in background (search returns empty)
+   */
+  public synchronized boolean isReady() {
+    return !building;
+  }
+
+  /**
+   * Must hold this lock
+   */
+  private void awaitBuilt(long waitMs) {
+    long deadline = System.currentTimeMillis() + waitMs;
+    long remaining = waitMs;
+    try {
+      while (building && remaining > 0) {
+        wait(remaining);
+        remaining = deadline - System.currentTimeMillis();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private int[] searchIndexed(String[] prefixes, int limit) {
+    BitSet result = null;
+    for (String prefix : prefixes) {
+      BitSet slots = new BitSet(slotCount);
+      collect(tokens, tokenSlots, tokenCount, prefix, slots);
+      collect(deltaTokens, deltaSlots, deltaCount, prefix, slots);
+      if (result == null) {
+        result = slots;
+      } else {
+        result.and(slots);
+      }
+      if (result.isEmpty()) {
+        return EMPTY_RESULT;
+      }
+    }
+    int[] indices = new int[result.cardinality()];
+    int count = 0;
+    for (int slot = result.nextSetBit(0); slot >= 0; slot = result.nextSetBit(slot + 1)) {
+      int index = slotIndex[slot];
+      if (index >= 0) {
+        indices[count++] = index;
+      }
+    }
+    Arrays.sort(indices, 0, count);
+    return Arrays.copyOf(indices, Math.min(count, limit));
+  }
+
+  /**
+   * set the slots of tokens start with prefix
+   */
+  private static void collect(String[] tokens, int[] slots, int count, String prefix,
+      BitSet out) {
+    int i = lowerBound(tokens, count, prefix);
+    while (i < count && tokens[i].startsWith(prefix)) {
+      out.set(slots[i]);
+      i++;
+    }
+  }
+
+  private static int lowerBound(String[] tokens, int count, String key) {
+    int low = 0;
+    int high = count;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (tokens[mid].compareTo(key) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  // ============================@Index@============================
+  /**
+   * sorted tokens and their slot (built)
+   */
+  private String[] tokens = new String[0];
+  private int[] tokenSlots = new int[0];
+  private int tokenCount;
+  /**
+   * sorted tokens and their slot (incremental, since last build)
+   */
+  private String[] deltaTokens = new String[16];
+  private int[] deltaSlots = new int[16];
+  private int deltaCount;
+  /**
+   * slot -> queue index, -1: removed
+   */
+  private int[] slotIndex = new int[0];
+  private int slotCount;
+  private int deadSlotCount;
+
+  private void clear() {
+    tokens = new String[0];
+    tokenSlots = new int[0];
+    tokenCount = 0;
+    deltaCount = 0;
+    slotIndex = new int[0];
+    slotCount = 0;
+    deadSlotCount = 0;
+  }
+
+  private void addDelta(String token, int slot) {
+    if (deltaCount == deltaTokens.length) {
+      deltaTokens = Arrays.copyOf(deltaTokens, deltaCount * 2);
+      deltaSlots = Arrays.copyOf(deltaSlots, deltaCount * 2);
+    }
+    int i = lowerBound(deltaTokens, deltaCount, token);
+    System.arraycopy(deltaTokens, i, deltaTokens, i + 1, deltaCount - i);
+    System.arraycopy(deltaSlots, i, deltaSlots, i + 1, deltaCount - i);
+    deltaTokens[i] = token;
+    deltaSlots[i] = slot;
+    deltaCount++;
+  }
+
+  private int newSlot(int index) {
+    if (slotCount == slotIndex.length) {
+      slotIndex = Arrays.copyOf(slotIndex, Math.max(16, slotCount * 2));
+    }
+    slotIndex[slotCount] = index;
+    return slotCount++;
+  }
+
+  private boolean needCompact() {
+    return deltaCount > MAX_DELTA_ENTRIES || deadSlotCount > (slotCount >> 1) + 64;
+  }
+
+  // ============================@Queue Listener@============================
+  @Override
+  public void onQueueUpdated(List<? extends IMediaItem> newQueue) {
+    rebuild();
+  }
+
+  @Override
+  public void onItemsInserted(int from, int count) {
+    IMediaQueue queue = this.queue;
+    if (queue == null) {
+      return;
+    }
+    synchronized (this) {
+      if (building || stale) {
+        rebuild();//building snapshot stale
+        return;
+      }
+      for (int s = 0; s < slotCount; s++) {
+        if (slotIndex[s] >= from) {
+          slotIndex[s] += count;
+        }
+      }
+      for (int i = from; i < from + count; i++) {
+        int slot = newSlot(i);
+        for (String token : tokenize(queue.getMediaItem(i))) {
+          addDelta(token, slot);
+        }
+      }
+      if (needCompact()) {
+        rebuild();
+      }
+    }
+  }
+
+  @Override
+  public void onItemsRemoved(int from, int count) {
+    synchronized (this) {
+      if (building || stale) {
+        rebuild();
+        return;
+      }
+      int end = from + count;
+      for (int s = 0; s < slotCount; s++) {
+        int index = slotIndex[s];
+        if (index >= end) {
+          slotIndex[s] = index - count;
+        } else if (index >= from) {
+          slotIndex[s] = -1;
+          deadSlotCount++;
+        }
+      }
+      if (needCompact()) {
+        rebuild();
+      }
+    }
+  }
+
+  @Override
+  public void onItemMoved(int from, int to) {
+    synchronized (this) {
+      if (building || stale) {
+        rebuild();
+        return;
+      }
+      for (int s = 0; s < slotCount; s++) {
+        int index = slotIndex[s];
+        if (index == from) {
+          slotIndex[s] = to;
+        } else if (from < index && index <= to) {
+          slotIndex[s] = index - 1;
+        } else if (to <= index && index < from) {
+          slotIndex[s] = index + 1;
+        }
+      }
+    }
+  }
+
+  // ============================@Build@============================
+  private ExecutorService buildExecutor;
+  private boolean building;
+  /**
+   * bumped per rebuild, a finished build only published if still the latest
+   */
+  private int generation;
+  private int buildFailures;
+  /**
+   * last build failed, index empty, any modification rebuilds
+   */
+  private boolean stale;
+
+  /**
+   * Rebuild the whole index in background from the attached queue.
+   */
+  public synchronized void rebuild() {
+    final IMediaQueue queue = this.queue;
+    if (queue == null) {
+      return;
+    }
+    final int buildGeneration = ++generation;
+    building = true;
+    if (buildExecutor == null) {
+      buildExecutor = Executors.newSingleThreadExecutor();
+    }
+    buildExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        synchronized (MediaQueueSearchIndex.this) {
+          if (buildGeneration != generation) {
+            return;//superseded
+          }
+        }
+        try {
+          build(queue, buildGeneration);
+        } catch (Exception e) {
+          //queue modified while reading, source/getTitle() failed... not always followed by an event
+          L.printStackTrace(e);
+          buildFailed(buildGeneration);
+        }
+      }
+    });
+  }
+
+  private synchronized void buildFailed(int buildGeneration) {
+    if (buildGeneration != generation) {
+      return;//superseded, the newer build publishes
+    }
+    building = false;
+    notifyAll();//no waiting out the timeout
+    if (++buildFailures <= MAX_BUILD_RETRIES) {
+      rebuild();
+    } else {
+      clear();
+      stale = true;
+    }
+  }
+
+  private void build(IMediaQueue queue, int buildGeneration) {
+    int size = queue.size();
+    ArrayList<Entry> entries = new ArrayList<>(size * 4);
+    for (int i = 0; i < size; i++) {
+      for (String token : tokenize(queue.getMediaItem(i))) {
+        entries.add(new Entry(token, i));
+      }
+    }
+    Entry[] sorted = entries.toArray(new Entry[entries.size()]);
+    Arrays.sort(sorted, ENTRY_COMPARATOR);
+    String[] newTokens = new String[sorted.length];
+    int[] newTokenSlots = new int[sorted.length];
+    for (int i = 0; i < sorted.length; i++) {
+      newTokens[i] = sorted[i].token;
+      newTokenSlots[i] = sorted[i].slot;
+    }
+    int[] newSlotIndex = new int[size];
+    for (int i = 0; i < size; i++) {
+      newSlotIndex[i] = i;
+    }
+    synchronized (this) {
+      if (buildGeneration != generation) {
+        return;//superseded
+      }
+      tokens = newTokens;
+      tokenSlots = newTokenSlots;
+      tokenCount = newTokens.length;
+      deltaCount = 0;
+      slotIndex = newSlotIndex;
+      slotCount = size;
+      deadSlotCount = 0;
+      building = false;
+      stale = false;
+      buildFailures = 0;
+      notifyAll();
+    }
+    L.d(TAG, "build finished: items={}, tokens={}", size, newTokens.length);
+  }
+
+  private static final class Entry {
+
+    final String token;
+    final int slot;
+
+    Entry(String token, int slot) {
+      this.token = token;
+      this.slot = slot;
+    }
+  }
+
+  private static final Comparator<Entry> ENTRY_COMPARATOR = new Comparator<Entry>() {
+    @Override
+    public int compare(Entry a, Entry b) {
+      return a.token.compareTo(b.token);
+    }
+  };
+
+  // ============================@Normalize@============================
+  private static final String[] NO_TOKENS = new String[0];
+
+  /**
+   * @return distinct normalized tokens of title and description
+   */
+  static String[] tokenize(IMediaItem item) {
+    if (item == null) {
+      return NO_TOKENS;
+    }
+    CharSequence title = item.getTitle();
+    CharSequence description = item.getDescription();
+    if (description == null || description.length() == 0) {
+      return tokenize(title);
+    }
+    if (title == null || title.length() == 0) {
+      return tokenize(description);
+    }
+    return tokenize(title + " " + description);
+  }
+
+  /**
+   * lower case, accents stripped, split on non letter/digit
+   */
+  static String[] tokenize(CharSequence text) {
+    if (text == null || text.length() == 0) {
+      return NO_TOKENS;
+    }
+    String normalized = Normalizer.normalize(text, Normalizer.Form.NFD);
+    ArrayList<String> tokens = new ArrayList<>();
+    StringBuilder token = new StringBuilder();
+    for (int i = 0, length = normalized.length(); i <= length; i++) {
+      char c = i < length ? normalized.charAt(i) : ' ';
+      if (Character.getType(c) == Character.NON_SPACING_MARK) {
+        continue;//accent
+      }
+      if (Character.isLetterOrDigit(c)) {
+        token.append(Character.toLowerCase(c));
+      } else if (token.length() > 0) {
+        String t = token.toString();
+        if (!tokens.contains(t)) {
+          tokens.add(t);
+        }
+        token.setLength(0);
+      }
+    }
+    return tokens.toArray(new String[tokens.size()]);
+  }
+
+  // ============================@Assist@============================
+  protected String TAG = L.makeTag("MediaQueueSearchIndex");
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.definition;
+
+import android.text.TextUtils;
+import com.jcodeing.kmedia.utils.L;
+import java.util.AbstractList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Paged media queue, items are materialized lazily from a {@link Source} in fixed-size pages.
+ * <p>{@link #size()} and {@link #getMediaItem(int)} not force full loading, only a LRU of pages
+ * is kept in memory, and pages around the current index are prefetched in background.<p/>
+ * <pre>
+ * e.g.
+ * PagedMediaQueue queue = new PagedMediaQueue();
+ * player.setMediaQueue(queue);
+ * queue.update(cursorSource);
+ * </pre>
+ */
+public class PagedMediaQueue extends MediaQueue {
+
+  /**
+   * Items source (cursor, file, index ...)
+   */
+  public interface Source {
+
+    /**
+     * @return total item count, called once per {@link #update(Source)}
+     */
+    int size();
+
+    /**
+     * Load items [offset, offset + count), maybe called on background thread.
+     *
+     * @return loaded items (size <= count)
+     */
+    List<? extends IMediaItem> load(int offset, int count);
+
+    /**
+     * @return true: {@link #indexOf(String)} supported, its -1 means not present. false: not
+     * supported, seek by scanning (loads every page)
+     */
+    boolean supportsIndexOf();
+
+    /**
+     * Only called when {@link #supportsIndexOf()}
+     *
+     * @param mediaId {@link IMediaItem#getMediaId()}
+     * @return mediaId->index, or -1 (not present)
+     */
+    int indexOf(String mediaId);
+  }
+
+  public static final int DEFAULT_PAGE_SIZE = 100;
+  public static final int DEFAULT_MAX_PAGES = 8;
+
+  private int pageSize = DEFAULT_PAGE_SIZE;
+  private int maxPages = DEFAULT_MAX_PAGES;
+  /**
+   * prefetch pages count before/after the current page
+   */
+  private int prefetchPages = 1;
+
+  public PagedMediaQueue() {
+  }
+
+  /**
+   * @param pageSize items per page
+   * @param maxPages materialized pages LRU capacity
+   */
+  public PagedMediaQueue(int pageSize, int maxPages) {
+    this.pageSize = pageSize > 0 ? pageSize : DEFAULT_PAGE_SIZE;
+    this.maxPages = maxPages > 2 ? maxPages : 3;
+  }
+
+  public void setPrefetchPages(int prefetchPages) {
+    this.prefetchPages = prefetchPages < 0 ? 0 : prefetchPages;
+  }
+
+  // ============================@Queue@============================
+  private PagedList pagedList;
+
+  public void update(Source source) {
+    if (pagedList != null && pagedList.source == source) {
+      return;
+    }
+    pagedList = source != null ? new PagedList(source, pageSize, maxPages) : null;
+    update(pagedList);
+    prefetch(getCurrentIndex());
+  }
+
+  @Override
+  public void update(List<? extends IMediaItem> newQueue) {
+    if (newQueue != pagedList) {
+      pagedList = null;
+    }
+    super.update(newQueue);
+  }
+
+  /**
+   * Paged source: diffing walks every index (loads every page), replaced by {@link
+   * #update(List)} instead
+   */
+  @Override
+  public void update(List<? extends IMediaItem> newQueue, MediaQueueDiff diff) {
+    if (pagedList != null) {
+      update(newQueue);
+      return;
+    }
+    super.update(newQueue, diff);
+  }
+
+  /**
+   * Paged source: replaced by {@link #update(List)}, see {@link #update(List, MediaQueueDiff)}
+   */
+  @Override
+  public void updateAsync(List<? extends IMediaItem> newQueue) {
+    if (pagedList != null) {
+      update(newQueue);
+      return;
+    }
+    super.updateAsync(newQueue);
+  }
+
+  @Override
+  public void destroy() {
+    if (prefetchExecutor != null) {
+      prefetchExecutor.shutdownNow();
+      prefetchExecutor = null;
+    }
+    pagedList = null;
+    super.destroy();
+  }
+
+  /**
+   * Not support remove from source, do nothing
+   *
+   * @return null
+   */
+  @Override
+  public IMediaItem remove(int index) {
+    if (pagedList != null) {
+      L.d(TAG, "remove({}) not support, source is read only.", index);
+      return null;
+    }
+    return super.remove(index);
+  }
+
+  @Override
+  public int indexOf(IMediaItem item) {
+    if (pagedList != null && item != null) {
+      int index = seekIndexByMediaId(item.getMediaId());
+      return index >= 0 && item.equals(getMediaItem(index)) ? index : -1;
+    }
+    return super.indexOf(item);
+  }
+
+  @Override
+  public int seekIndexByMediaId(String mediaId) {
+    if (pagedList != null && pagedList.source.supportsIndexOf()) {
+      return TextUtils.isEmpty(mediaId) ? -1 : pagedList.source.indexOf(mediaId);
+    }
+    return super.seekIndexByMediaId(mediaId);
+  }
+
+  /**
+   * @return current source, null: not paged (plain list or empty)
+   */
+  public Source getSource() {
+    return pagedList != null ? pagedList.source : null;
+  }
+
+  /**
+   * @return materialized pages count
+   */
+  public int getLoadedPageCount() {
+    return pagedList != null ? pagedList.loadedPageCount() : 0;
+  }
+
+  // ============================@Prefetch@============================
+  private ExecutorService prefetchExecutor;
+
+  @Override
+  protected void onCurrentQueueIndexUpdated(int index) {
+    prefetch(index);
+    super.onCurrentQueueIndexUpdated(index);
+  }
+
+  protected void prefetch(int index) {
+    final PagedList list = pagedList;
+    if (list == null || index < 0 || prefetchPages <= 0) {
+      return;
+    }
+    if (prefetchExecutor == null) {
+      prefetchExecutor = Executors.newSingleThreadExecutor();
+    }
+    final int page = index / pageSize;
+    for (int i = -prefetchPages; i <= prefetchPages; i++) {
+      final int p = page + i;
+      if (p < 0 || p > list.lastPage() || list.isPageLoaded(p)) {
+        continue;
+      }
+      prefetchExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            list.loadPage(p);
+          } catch (Exception e) {
+            L.printStackTrace(e);
+          }
+        }
+      });
+    }
+  }
+
+  // ============================@PagedList@============================
+
+  /**
+   * Read only list, get(index) load the page of index if not materialized, null if the source
+   * loaded a short page
+   */
+  private static class PagedList extends AbstractList<IMediaItem> {
+
+    final Source source;
+    final int size;
+    final int pageSize;
+    private final LinkedHashMap<Integer, IMediaItem[]> pages;
+
+    PagedList(Source source, int pageSize, final int maxPages) {
+      this.source = source;
+      this.size = source.size();
+      this.pageSize = pageSize;
+      //access order LRU
+      pages = new LinkedHashMap<Integer, IMediaItem[]>(maxPages + 1, 1f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, IMediaItem[]> eldest) {
+          return size() > maxPages;
+        }
+      };
+    }
+
+    @Override
+    public IMediaItem get(int index) {
+      if (index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+      }
+      IMediaItem[] page = loadPage(index / pageSize);
+      int offset = index % pageSize;
+      return offset < page.length ? page[offset] : null;
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    int lastPage() {
+      return size > 0 ? (size - 1) / pageSize : -1;
+    }
+
+    boolean isPageLoaded(int page) {
+      synchronized (pages) {
+        return pages.containsKey(page);
+      }
+    }
+
+    int loadedPageCount() {
+      synchronized (pages) {
+        return pages.size();
+      }
+    }
+
+    IMediaItem[] loadPage(int page) {
+      IMediaItem[] items;
+      synchronized (pages) {
+        items = pages.get(page);
+      }
+      if (items != null) {
+        return items;
+      }
+      // =========@load(not hold lock)@=========
+      int offset = page * pageSize;
+      int count = Math.min(pageSize, size - offset);
+      List<? extends IMediaItem> loaded = source.load(offset, count);
+      items = new IMediaItem[loaded != null ? Math.min(loaded.size(), count) : 0];
+      for (int i = 0; i < items.length; i++) {
+        items[i] = loaded.get(i);
+      }
+      synchronized (pages) {
+        IMediaItem[] exist = pages.get(page);
+        if (exist != null) {
+          return exist;//loaded by other thread
+        }
+        pages.put(page, items);
+      }
+      return items;
+    }
+  }
+
+  // ============================@Assist@============================
+  protected String TAG = L.makeTag("PagedMediaQueue");
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.definition;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Immutable (persistent) list of {@link IMediaItem}, safe to share between threads. <p>A randomized
+ * binary search tree ordered by index, every modification returns a new list sharing all untouched
+ * nodes with the old one (path copying), O(log n) get/set/insert/remove/move, never copy the whole
+ * list.<p/>
+ *
+ * @see SnapshotMediaQueue
+ */
+public final class PersistentMediaList extends AbstractList<IMediaItem> {
+
+  public static final PersistentMediaList EMPTY = new PersistentMediaList(null);
+
+  private static final Random random = new Random();
+
+  private final Node root;
+
+  private PersistentMediaList(Node root) {
+    this.root = root;
+  }
+
+  public static PersistentMediaList of(List<? extends IMediaItem> items) {
+    if (items == null || items.isEmpty()) {
+      return EMPTY;
+    }
+    if (items instanceof PersistentMediaList) {
+      return (PersistentMediaList) items;
+    }
+    return new PersistentMediaList(build(items, 0, items.size()));
+  }
+
+  // ============================@Read@============================
+  @Override
+  public int size() {
+    return size(root);
+  }
+
+  @Override
+  public IMediaItem get(int index) {
+    checkIndex(index, size());
+    Node node = root;
+    while (true) {
+      int leftSize = size(node.left);
+      if (index < leftSize) {
+        node = node.left;
+      } else if (index == leftSize) {
+        return node.item;
+      } else {
+        index -= leftSize + 1;
+        node = node.right;
+      }
+    }
+  }
+
+  /**
+   * In-order, O(n) for full iteration
+   */
+  @Override
+  public Iterator<IMediaItem> iterator() {
+    return new Iterator<IMediaItem>() {
+      private final ArrayDeque<Node> stack = new ArrayDeque<>();
+      private Node next = root;
+
+      @Override
+      public boolean hasNext() {
+        return next != null || !stack.isEmpty();
+      }
+
+      @Override
+      public IMediaItem next() {
+        while (next != null) {
+          stack.push(next);
+          next = next.left;
+        }
+        if (stack.isEmpty()) {
+          throw new NoSuchElementException();
+        }
+        Node node = stack.pop();
+        next = node.right;
+        return node.item;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  @Override
+  public int indexOf(Object o) {
+    int index = 0;
+    for (IMediaItem item : this) {
+      if (o == null ? item == null : o.equals(item)) {
+        return index;
+      }
+      index++;
+    }
+    return -1;
+  }
+
+  /**
+   * @return the index of first item with the mediaId, or -1
+   */
+  public int indexOfMediaId(String mediaId) {
+    if (mediaId == null) {
+      return -1;
+    }
+    int index = 0;
+    for (IMediaItem item : this) {
+      if (item != null && mediaId.equals(item.getMediaId())) {
+        return index;
+      }
+      index++;
+    }
+    return -1;
+  }
+
+  // ============================@Write(new list)@============================
+  public PersistentMediaList with(int index, IMediaItem item) {
+    checkIndex(index, size());
+    return new PersistentMediaList(set(root, index, item));
+  }
+
+  public PersistentMediaList plus(int index, IMediaItem item) {
+    checkIndex(index, size() + 1);
+    Node[] lr = split(root, index);
+    return new PersistentMediaList(merge(merge(lr[0], new Node(item, null, null)), lr[1]));
+  }
+
+  public PersistentMediaList plusAll(int index, List<? extends IMediaItem> items) {
+    checkIndex(index, size() + 1);
+    if (items == null || items.isEmpty()) {
+      return this;
+    }
+    Node[] lr = split(root, index);
+    Node middle = items instanceof PersistentMediaList ?
+        ((PersistentMediaList) items).root : build(items, 0, items.size());
+    return new PersistentMediaList(merge(merge(lr[0], middle), lr[1]));
+  }
+
+  public PersistentMediaList minus(int index) {
+    return minus(index, 1);
+  }
+
+  /**
+   * @return removed [from, from + count)
+   */
+  public PersistentMediaList minus(int from, int count) {
+    if (count <= 0) {
+      return this;
+    }
+    checkIndex(from, size());
+    checkIndex(from + count - 1, size());
+    Node[] lr = split(root, from);
+    Node[] mr = split(lr[1], count);
+    return new PersistentMediaList(merge(lr[0], mr[1]));
+  }
+
+  public PersistentMediaList move(int from, int to) {
+    if (from == to) {
+      return this;
+    }
+    IMediaItem item = get(from);
+    checkIndex(to, size());
+    return minus(from).plus(to, item);
+  }
+
+  // ============================@Tree@============================
+  private static final class Node {
+
+    final IMediaItem item;
+    final Node left;
+    final Node right;
+    final int size;
+
+    Node(IMediaItem item, Node left, Node right) {
+      this.item = item;
+      this.left = left;
+      this.right = right;
+      this.size = size(left) + size(right) + 1;
+    }
+  }
+
+  private static int size(Node node) {
+    return node != null ? node.size : 0;
+  }
+
+  /**
+   * balanced tree of items[from, to)
+   */
+  private static Node build(List<? extends IMediaItem> items, int from, int to) {
+    if (from >= to) {
+      return null;
+    }
+    int mid = (from + to) >>> 1;
+    return new Node(items.get(mid), build(items, from, mid), build(items, mid + 1, to));
+  }
+
+  private static Node set(Node node, int index, IMediaItem item) {
+    int leftSize = size(node.left);
+    if (index < leftSize) {
+      return new Node(node.item, set(node.left, index, item), node.right);
+    } else if (index == leftSize) {
+      return new Node(item, node.left, node.right);
+    } else {
+      return new Node(node.item, node.left, set(node.right, index - leftSize - 1, item));
+    }
+  }
+
+  /**
+   * @return [0, index) [index, size)
+   */
+  private static Node[] split(Node node, int index) {
+    if (node == null) {
+      return new Node[2];
+    }
+    int leftSize = size(node.left);
+    if (index <= leftSize) {
+      Node[] lr = split(node.left, index);
+      return new Node[]{lr[0], new Node(node.item, lr[1], node.right)};
+    } else {
+      Node[] lr = split(node.right, index - leftSize - 1);
+      return new Node[]{new Node(node.item, node.left, lr[0]), lr[1]};
+    }
+  }
+
+  /**
+   * randomized merge, root from left with probability |l| / (|l| + |r|)
+   */
+  private static Node merge(Node l, Node r) {
+    if (l == null) {
+      return r;
+    }
+    if (r == null) {
+      return l;
+    }
+    if (random.nextInt(l.size + r.size) < l.size) {
+      return new Node(l.item, l.left, merge(l.right, r));
+    } else {
+      return new Node(r.item, merge(l, r.left), r.right);
+    }
+  }
+
+  private static void checkIndex(int index, int size) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+  }
+}
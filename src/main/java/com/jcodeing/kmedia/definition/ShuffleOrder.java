@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.definition;
+
+import com.jcodeing.kmedia.assist.C;
+import java.util.Random;
+
+/**
+ * Non-repeating shuffle order of queue indexes. <p>A lazy Fisher-Yates permutation, each {@link
+ * #next()} draws one index from the not yet played part, so every item is played once per round.
+ * Played indexes are kept as history, {@link #previous()} walks back the random picks.<p/>
+ * <pre>
+ * order: [ drawn(history...current) | not drawn ]
+ *          0 ........ cursor ...... drawn ..... size
+ * </pre>
+ *
+ * @see MediaQueue#getRandomIndex()
+ */
+public class ShuffleOrder {
+
+  /**
+   * order[position] = queue index
+   */
+  private int[] order;
+  /**
+   * positions[queue index] = position (order inverse)
+   */
+  private int[] positions;
+  private int size;
+  /**
+   * [0, drawn) already drawn in this round
+   */
+  private int drawn;
+  /**
+   * position of the current index in order, or {@link C#INDEX_UNSET}
+   */
+  private int cursor = C.INDEX_UNSET;
+
+  private final Random random;
+
+  public ShuffleOrder(int size) {
+    this(size, System.currentTimeMillis());
+  }
+
+  /**
+   * @param seed same seed same order (reproducibility)
+   */
+  public ShuffleOrder(int size, long seed) {
+    random = new Random(seed);
+    reset(size);
+  }
+
+  public void setSeed(long seed) {
+    random.setSeed(seed);
+    reset(size);
+  }
+
+  /**
+   * Start a new permutation (queue updated)
+   */
+  public void reset(int size) {
+    if (size < 0) {
+      size = 0;
+    }
+    if (order == null || order.length < size) {
+      order = new int[size];
+      positions = new int[size];
+    }
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+      positions[i] = i;
+    }
+    this.size = size;
+    drawn = 0;
+    cursor = C.INDEX_UNSET;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return current queue index or {@link C#INDEX_UNSET}
+   */
+  public int current() {
+    return cursor >= 0 ? order[cursor] : C.INDEX_UNSET;
+  }
+
+  // ============================@Move@============================
+
+  /**
+   * @return next random queue index (O(1)), or {@link C#INDEX_UNSET} (empty)
+   */
+  public int next() {
+    if (size <= 0) {
+      return C.INDEX_UNSET;
+    }
+    // =========@history forward@=========
+    if (cursor + 1 < drawn) {
+      return order[++cursor];
+    }
+    // =========@round finish@=========
+    if (drawn >= size) {
+      int last = current();
+      drawn = 0;
+      if (last >= 0 && size > 1) {
+        //not repeat the last played at new round begin
+        swap(positions[last], size - 1);
+        return draw(size - 1);
+      }
+    }
+    return draw(size);
+  }
+
+  /**
+   * @return previous random pick (O(1)), or {@link C#INDEX_UNSET} (no history)
+   */
+  public int previous() {
+    if (cursor > 0) {
+      return order[--cursor];
+    }
+    return C.INDEX_UNSET;
+  }
+
+  /**
+   * The queue index changed from outside(e.g. user selected), mark it to be current. <p>In
+   * history, move cursor to it. Not drawn, draw it now.<p/>
+   */
+  public void setCurrent(int index) {
+    if (index < 0 || index >= size) {
+      return;
+    }
+    if (cursor >= 0 && order[cursor] == index) {
+      return;
+    }
+    int position = positions[index];
+    if (position < drawn) {
+      cursor = position;
+    } else {
+      swap(position, drawn);
+      cursor = drawn++;
+    }
+  }
+
+  private int draw(int limit) {
+    int position = drawn + random.nextInt(limit - drawn);
+    swap(position, drawn);
+    cursor = drawn++;
+    return order[cursor];
+  }
+
+  private void swap(int i, int j) {
+    if (i == j) {
+      return;
+    }
+    int vi = order[i];
+    int vj = order[j];
+    order[i] = vj;
+    order[j] = vi;
+    positions[vj] = i;
+    positions[vi] = j;
+  }
+
+  // ============================@Patch@============================
+
+  /**
+   * The queue inserted a item at index, patch the order (not reshuffle). <p>New item goes to the
+   * not drawn part.<p/>
+   */
+  public void insert(int index) {
+    insert(index, 1);
+  }
+
+  /**
+   * The queue inserted count items from index, patch the order (not reshuffle).
+   */
+  public void insert(int index, int count) {
+    if (count <= 0 || index < 0 || index > size) {
+      return;
+    }
+    int newSize = size + count;
+    if (order.length < newSize) {
+      int capacity = Math.max(newSize, order.length + (order.length >> 1));
+      int[] newOrder = new int[capacity];
+      System.arraycopy(order, 0, newOrder, 0, size);
+      order = newOrder;
+      positions = new int[capacity];
+    }
+    for (int i = 0; i < size; i++) {
+      if (order[i] >= index) {
+        order[i] += count;
+      }
+    }
+    for (int i = 0; i < count; i++) {
+      order[size + i] = index + i;
+    }
+    size = newSize;
+    rebuildPositions();
+  }
+
+  /**
+   * The queue removed the item at index, patch the order (not reshuffle).
+   */
+  public void remove(int index) {
+    remove(index, 1);
+  }
+
+  /**
+   * The queue removed count items from index, patch the order (not reshuffle). <p>If current was
+   * removed, cursor back to previous pick, so {@link #next()} continue the order.<p/>
+   */
+  public void remove(int index, int count) {
+    if (count <= 0 || index < 0 || index + count > size) {
+      return;
+    }
+    int end = index + count;
+    int write = 0;
+    int newDrawn = 0;
+    int newCursor = C.INDEX_UNSET;
+    for (int read = 0; read < size; read++) {
+      int value = order[read];
+      if (value >= index && value < end) {
+        if (read == cursor) {
+          newCursor = write - 1;//back to previous pick
+        }
+        continue;
+      }
+      if (read == cursor) {
+        newCursor = write;
+      }
+      order[write] = value >= end ? value - count : value;
+      if (read < drawn) {
+        newDrawn++;
+      }
+      write++;
+    }
+    size = write;
+    drawn = newDrawn;
+    cursor = newCursor < 0 ? C.INDEX_UNSET : newCursor;
+    rebuildPositions();
+  }
+
+  /**
+   * The queue moved a item from to, patch the order (not reshuffle).
+   */
+  public void move(int from, int to) {
+    if (from == to || from < 0 || from >= size || to < 0 || to >= size) {
+      return;
+    }
+    for (int i = 0; i < size; i++) {
+      int value = order[i];
+      if (value == from) {
+        order[i] = to;
+      } else if (from < to && value > from && value <= to) {
+        order[i] = value - 1;
+      } else if (from > to && value >= to && value < from) {
+        order[i] = value + 1;
+      }
+    }
+    rebuildPositions();
+  }
+
+  private void rebuildPositions() {
+    for (int i = 0; i < size; i++) {
+      positions[order[i]] = i;
+    }
+  }
+}
@@ -0,0 +1,597 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.definition;
+
+import android.text.TextUtils;
+import com.jcodeing.kmedia.IPlayer;
+import com.jcodeing.kmedia.assist.C;
+import com.jcodeing.kmedia.utils.Assert;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Thread safe media queue. <p>The whole state (items, currentIndex, modes) is one immutable {@link
+ * Snapshot} published atomically. Readers on any thread are lock-free and always see a consistent
+ * (items, currentIndex) pair, writers create a new snapshot and publish with CAS. Items are a
+ * {@link PersistentMediaList}, mutations share structure, never copy the whole list.<p/>
+ * <pre>
+ * e.g.
+ * player.setMediaQueue(new SnapshotMediaQueue());
+ * // =========@any thread
+ * SnapshotMediaQueue.Snapshot s = queue.snapshot();
+ * for (int i = 0; i < s.size(); i++) { s.get(i)... }
+ * </pre>
+ * Listeners are notified on the writer thread, after the snapshot was published.
+ */
+public class SnapshotMediaQueue implements IMediaQueue {
+
+  protected IPlayer player;
+
+  @Override
+  public void init(IPlayer player) {
+    this.player = player;
+  }
+
+  @Override
+  public void destroy() {
+    listeners.clear();
+    player = null;
+  }
+
+  // ============================@Snapshot@============================
+  public static final class Snapshot {
+
+    public final PersistentMediaList items;
+    public final int currentIndex;
+    public final int autoSkipMode;
+    public final int itemLoopMode;
+
+    Snapshot(PersistentMediaList items, int currentIndex, int autoSkipMode, int itemLoopMode) {
+      this.items = items;
+      this.currentIndex = currentIndex;
+      this.autoSkipMode = autoSkipMode;
+      this.itemLoopMode = itemLoopMode;
+    }
+
+    public int size() {
+      return items.size();
+    }
+
+    public IMediaItem get(int index) {
+      return Assert.checkIndex(index, items.size()) ? items.get(index) : null;
+    }
+
+    public IMediaItem getCurrentMediaItem() {
+      return get(currentIndex);
+    }
+
+    Snapshot withItems(PersistentMediaList items, int currentIndex) {
+      return new Snapshot(items, currentIndex, autoSkipMode, itemLoopMode);
+    }
+
+    Snapshot withCurrentIndex(int currentIndex) {
+      return new Snapshot(items, currentIndex, autoSkipMode, itemLoopMode);
+    }
+  }
+
+  private final AtomicReference<Snapshot> ref = new AtomicReference<>(
+      new Snapshot(PersistentMediaList.EMPTY, C.INDEX_UNSET, AUTO_SKIP_MODE_LIST_LOOP, 0));
+
+  /**
+   * @return current immutable snapshot, read it as many times as need, always consistent
+   */
+  public Snapshot snapshot() {
+    return ref.get();
+  }
+
+  // ============================@Queue@============================
+
+  /**
+   * Items are copied into a {@link PersistentMediaList} (later changes of newQueue not
+   * reflected)
+   */
+  @Override
+  public void update(List<? extends IMediaItem> newQueue) {
+    PersistentMediaList items = PersistentMediaList.of(newQueue);
+    Snapshot s;
+    do {
+      s = ref.get();
+      if (s.items == items) {
+        return;
+      }
+    } while (!ref.compareAndSet(s, s.withItems(items, items.isEmpty() ? C.INDEX_UNSET : 0)));
+    onQueueUpdated(items);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return ref.get().items.isEmpty();
+  }
+
+  @Override
+  public int size() {
+    return ref.get().items.size();
+  }
+
+  @Override
+  public int indexOf(IMediaItem item) {
+    return ref.get().items.indexOf(item);
+  }
+
+  @Override
+  public IMediaItem remove(int index) {
+    Snapshot s;
+    IMediaItem removed;
+    do {
+      s = ref.get();
+      if (!Assert.checkIndex(index, s.items.size())) {
+        return null;
+      }
+      removed = s.items.get(index);
+    } while (!ref.compareAndSet(s, removed(s, index, 1)));
+    onItemsRemoved(index, 1);
+    onCurrentIndexRevised(s);
+    return removed;
+  }
+
+  @Override
+  public boolean remove(int from, int count) {
+    Snapshot s;
+    do {
+      s = ref.get();
+      if (count <= 0 || from < 0 || from + count > s.items.size()) {
+        return false;
+      }
+    } while (!ref.compareAndSet(s, removed(s, from, count)));
+    onItemsRemoved(from, count);
+    onCurrentIndexRevised(s);
+    return true;
+  }
+
+  /**
+   * Keep current index on the current item, or the next item if current was removed.
+   */
+  private static Snapshot removed(Snapshot s, int from, int count) {
+    PersistentMediaList items = s.items.minus(from, count);
+    int index = s.currentIndex;
+    if (index >= from + count) {
+      index -= count;
+    } else if (index >= from) {
+      index = from < items.size() ? from : items.size() - 1;
+    }
+    return s.withItems(items, index);
+  }
+
+  @Override
+  public boolean insert(int index, IMediaItem item) {
+    Snapshot s;
+    do {
+      s = ref.get();
+      if (item == null || index < 0 || index > s.items.size()) {
+        return false;
+      }
+    } while (!ref.compareAndSet(s, s.withItems(s.items.plus(index, item),
+        s.currentIndex >= index ? s.currentIndex + 1 : s.currentIndex)));
+    onItemsInserted(index, 1);
+    onCurrentIndexRevised(s);
+    return true;
+  }
+
+  @Override
+  public boolean insert(int index, List<? extends IMediaItem> items) {
+    if (items == null || items.isEmpty()) {
+      return false;
+    }
+    //build once, retry CAS with the same built items
+    PersistentMediaList inserted = PersistentMediaList.of(items);
+    int count = inserted.size();
+    Snapshot s;
+    do {
+      s = ref.get();
+      if (index < 0 || index > s.items.size()) {
+        return false;
+      }
+    } while (!ref.compareAndSet(s, s.withItems(s.items.plusAll(index, inserted),
+        s.currentIndex >= index ? s.currentIndex + count : s.currentIndex)));
+    onItemsInserted(index, count);
+    onCurrentIndexRevised(s);
+    return true;
+  }
+
+  @Override
+  public boolean move(int from, int to) {
+    Snapshot s;
+    Snapshot n;
+    do {
+      s = ref.get();
+      int size = s.items.size();
+      if (!Assert.checkIndex(from, size) || !Assert.checkIndex(to, size)) {
+        return false;
+      }
+      if (from == to) {
+        return true;
+      }
+      int index = s.currentIndex;
+      if (index == from) {
+        index = to;
+      } else if (from < index && index <= to) {
+        index--;
+      } else if (to <= index && index < from) {
+        index++;
+      }
+      n = s.withItems(s.items.move(from, to), index);
+    } while (!ref.compareAndSet(s, n));
+    onItemMoved(from, to);
+    onCurrentIndexRevised(s);
+    return true;
+  }
+
+  @Override
+  public void clear() {
+    Snapshot s;
+    do {
+      s = ref.get();
+      if (s.items.isEmpty()) {
+        return;
+      }
+    } while (!ref.compareAndSet(s, s.withItems(PersistentMediaList.EMPTY, C.INDEX_UNSET)));
+    onItemsRemoved(0, s.items.size());
+    onCurrentIndexRevised(s);
+  }
+
+  /**
+   * notify if the published current index differs from the old snapshot
+   */
+  private void onCurrentIndexRevised(Snapshot old) {
+    Snapshot s = ref.get();
+    if (s.currentIndex != old.currentIndex || s.getCurrentMediaItem() != old.getCurrentMediaItem()) {
+      onCurrentQueueIndexUpdated(s.currentIndex);
+    }
+  }
+
+  // ============================@MediaItem
+  @Override
+  public IMediaItem getMediaItem(int index) {
+    return ref.get().get(index);
+  }
+
+  @Override
+  public IMediaItem getMediaItem(String mediaId) {
+    Snapshot s = ref.get();
+    return s.get(TextUtils.isEmpty(mediaId) ? -1 : s.items.indexOfMediaId(mediaId));
+  }
+
+  @Override
+  public IMediaItem getCurrentMediaItem() {
+    return ref.get().getCurrentMediaItem();
+  }
+
+  // ============================@Index
+  @Override
+  public int getCurrentIndex() {
+    return ref.get().currentIndex;
+  }
+
+  @Override
+  public boolean setCurrentIndex(int index) {
+    Snapshot s;
+    do {
+      s = ref.get();
+      if (!Assert.checkIndex(index, s.items.size())) {
+        return false;
+      }
+    } while (!ref.compareAndSet(s, s.withCurrentIndex(index)));
+    onCurrentQueueIndexUpdated(index);
+    return true;
+  }
+
+  @Override
+  public boolean setCurrentIndex(String mediaId) {
+    return setCurrentIndex(seekIndexByMediaId(mediaId));
+  }
+
+  @Override
+  public int seekIndexByMediaId(String mediaId) {
+    if (TextUtils.isEmpty(mediaId)) {
+      return -1;
+    }
+    return ref.get().items.indexOfMediaId(mediaId);
+  }
+
+  // ============================@Shuffle
+  private final Object shuffleLock = new Object();
+  private ShuffleOrder shuffleOrder;
+  /**
+   * the items shuffleOrder was made for
+   */
+  private PersistentMediaList shuffleItems;
+
+  /**
+   * Non-repeating, every item returned once before any repeats.
+   *
+   * @see ShuffleOrder#next()
+   */
+  @Override
+  public int getRandomIndex() {
+    Snapshot s = ref.get();
+    if (s.items.isEmpty()) {
+      return -1;
+    }
+    synchronized (shuffleLock) {
+      return shuffleOrderOf(s).next();
+    }
+  }
+
+  protected int getPreviousRandomIndex() {
+    Snapshot s = ref.get();
+    if (s.items.isEmpty()) {
+      return -1;
+    }
+    synchronized (shuffleLock) {
+      return shuffleOrderOf(s).previous();
+    }
+  }
+
+  /**
+   * Must hold shuffleLock. Items changed, patch the order with the diff of the snapshots (the
+   * round goes on, drawn items not repeated). Diffed lazily, mutations between picks coalesce.
+   */
+  private ShuffleOrder shuffleOrderOf(Snapshot s) {
+    if (shuffleOrder == null) {
+      shuffleOrder = new ShuffleOrder(s.items.size());
+      shuffleItems = s.items;
+    } else if (shuffleItems != s.items) {
+      MediaQueueDiff diff = MediaQueueDiff.calculate(shuffleItems, s.items);
+      for (int i = 0; i < diff.getOpCount(); i++) {
+        if (diff.getOp(i) == MediaQueueDiff.OP_REMOVE) {
+          shuffleOrder.remove(diff.getOpPosition(i), diff.getOpCountOf(i));
+        } else {
+          shuffleOrder.insert(diff.getOpPosition(i), diff.getOpCountOf(i));
+        }
+      }
+      shuffleItems = s.items;
+    }
+    shuffleOrder.setCurrent(s.currentIndex);
+    return shuffleOrder;
+  }
+
+  // ============================@Skip@============================
+  @Override
+  public boolean skipToIndex(int index) {
+    if (setCurrentIndex(index)) {
+      if (!onSkipQueueIndex(index)) {
+        //If there is no one handled, with so me handle
+        if (player != null) {
+          player.play(getMediaItem(index));
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public boolean skipToIndexByIncrement(int increment) {
+    Snapshot s = ref.get();
+    int size = s.items.size();
+    if (size > 1) {
+      int index = s.currentIndex + increment;
+      //cycle queue index
+      if (index < 0) {
+        index = size - 1;
+      } else {
+        index %= size;//0<=index<size()
+      }
+      return skipToIndex(index);
+    }
+    return false;
+  }
+
+  @Override
+  public boolean skipToNext() {
+    if (getAutoSkipMode() == AUTO_SKIP_MODE_RANDOM) {
+      return skipToRandom();
+    }
+    return skipToIndexByIncrement(1);
+  }
+
+  @Override
+  public boolean skipToPrevious() {
+    if (getAutoSkipMode() == AUTO_SKIP_MODE_RANDOM && size() > 1) {
+      //back to the previous random pick
+      int index = getPreviousRandomIndex();
+      if (index >= 0) {
+        return skipToIndex(index);
+      }
+    }
+    return skipToIndexByIncrement(-1);
+  }
+
+  @Override
+  public boolean skipToRandom() {
+    if (size() > 1) {
+      return skipToIndex(getRandomIndex());
+    }
+    return false;
+  }
+
+  // ============================@Auto
+  @Override
+  public int getAutoSkipMode() {
+    return ref.get().autoSkipMode;
+  }
+
+  @Override
+  public void setAutoSkipMode(int autoSkipMode) {
+    Snapshot s;
+    do {
+      s = ref.get();
+    } while (!ref.compareAndSet(s,
+        new Snapshot(s.items, s.currentIndex, autoSkipMode, s.itemLoopMode)));
+  }
+
+  @Override
+  public boolean skipToAutoAssigned() {
+    Snapshot s = ref.get();
+    if (s.items.isEmpty()) {
+      return false;
+    }
+    switch (s.autoSkipMode) {
+      case AUTO_SKIP_MODE_LIST_LOOP:
+      case AUTO_SKIP_MODE_RANDOM:
+        //Correct itemLoopMode
+        //Don't allow item infinity loop
+        if (s.itemLoopMode < 0) {//-8
+          setItemLoopMode(0);
+          itemLoopedCount = 0;
+        }
+        if (itemLoopProcessing() == 1) {
+          return true;//processing
+        } else {
+          if (s.autoSkipMode == AUTO_SKIP_MODE_LIST_LOOP) {
+            return skipToIndexByIncrement(1);
+          } else {
+            return skipToRandom();
+          }
+        }
+      case AUTO_SKIP_MODE_SINGLE:
+        return itemLoopProcessing() == 1;
+      case AUTO_SKIP_MODE_SINGLE_LOOP:
+        setItemLoopMode(-8);
+        itemLoopProcessing();
+        return true;//infinity loop
+      case AUTO_SKIP_MODE_SINGLE_ONCE:
+        return false;//not skip and processing
+    }
+    return false;
+  }
+
+  // ============================@Item@============================
+  /**
+   * only access on the player thread (onCompletion)
+   */
+  private int itemLoopedCount = 0;
+
+  @Override
+  public void setItemLoop(int loopMode) {
+    //Support use C.PARAM_RESET constant reset values.
+    if (loopMode == C.PARAM_RESET) {
+      loopMode = 0;
+    }
+    //Support use C.PARAM_ORIGINAL constant keeping the original values
+    //...loop after the end of values not reset, so don't have to set up again
+    if (loopMode != C.PARAM_ORIGINAL) {
+      setItemLoopMode(loopMode);
+    }
+    //reset tag
+    itemLoopedCount = 0;
+  }
+
+  private void setItemLoopMode(int itemLoopMode) {
+    Snapshot s;
+    do {
+      s = ref.get();
+    } while (!ref.compareAndSet(s,
+        new Snapshot(s.items, s.currentIndex, s.autoSkipMode, itemLoopMode)));
+  }
+
+  protected int itemLoopProcessing() {
+    Snapshot s = ref.get();
+    // =========@Processing@=========
+    if (s.itemLoopMode == -8) {
+      // =========@infinity loop[-8]@=========
+      if (player != null) {
+        player.play(s.getCurrentMediaItem());
+      }
+      return 1;//enable(processing)
+    } else if (s.itemLoopMode > 0) {
+      // =========@specified loop[>0]@=========
+      if (itemLoopedCount < s.itemLoopMode) {
+        if (player != null) {
+          player.play(s.getCurrentMediaItem());
+        }
+        itemLoopedCount++;
+        return 1;//enable(processing)
+      } else {
+        // =========@specified loop finish@=========
+        // reset tag(itemLoopedCount = 0)
+        itemLoopedCount = 0;
+        return 2;//enable(loop finish)
+      }
+    } else {
+      // =========@not loop[<=0]@=========
+      return 0;
+    }
+  }
+
+  // ============================@Listener@============================
+  private final CopyOnWriteArraySet<Listener> listeners = new CopyOnWriteArraySet<>();
+
+  @Override
+  public void addListener(Listener listener) {
+    if (listener != null) {
+      listeners.add(listener);
+    }
+  }
+
+  @Override
+  public void removeListener(Listener listener) {
+    if (listener != null) {
+      listeners.remove(listener);
+    }
+  }
+
+  protected void onQueueUpdated(List<? extends IMediaItem> newQueue) {
+    for (Listener listener : listeners) {
+      listener.onQueueUpdated(newQueue);
+    }
+  }
+
+  protected void onItemsInserted(int from, int count) {
+    for (Listener listener : listeners) {
+      listener.onItemsInserted(from, count);
+    }
+  }
+
+  protected void onItemMoved(int from, int to) {
+    for (Listener listener : listeners) {
+      listener.onItemMoved(from, to);
+    }
+  }
+
+  protected void onItemsRemoved(int from, int count) {
+    for (Listener listener : listeners) {
+      listener.onItemsRemoved(from, count);
+    }
+  }
+
+  protected void onCurrentQueueIndexUpdated(int index) {
+    for (Listener listener : listeners) {
+      listener.onCurrentQueueIndexUpdated(index);
+    }
+  }
+
+  protected boolean onSkipQueueIndex(int index) {
+    boolean was_handled = false;
+    for (Listener listener : listeners) {
+      if (listener.onSkipQueueIndex(index)) {
+        was_handled = true;
+      }
+    }
+    return was_handled;
+  }
+}
@@ -17,11 +17,21 @@ package com.jcodeing.kmedia.service;
 
 import android.app.Service;
 import android.content.Intent;
+import android.net.Uri;
 import android.os.Binder;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.SystemClock;
+import com.jcodeing.kmedia.APlayer;
 import com.jcodeing.kmedia.IPlayer;
 import com.jcodeing.kmedia.PlayerListener;
+import com.jcodeing.kmedia.definition.IMediaItem;
+import com.jcodeing.kmedia.utils.L;
 import com.jcodeing.kmedia.worker.ANotifier;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 public class PlayerService extends Service {
 
@@ -50,6 +60,10 @@ public class PlayerService extends Service {
     public PlayerService getService() {
       return PlayerService.this;
     }
+
+    public Session getSession(String name) {
+      return PlayerService.this.getSession(name);
+    }
   }
 
   @Override
@@ -67,9 +81,323 @@ public class PlayerService extends Service {
     return mPlayer;
   }
 
+  /**
+   * The previous player (if any) is removed from the main session, not shut down.
+   */
   protected void setPlayer(IPlayer player) {
+    Session main = sessions.get(SESSION_MAIN);
+    if (main != null && main.player != player) {
+      closeSession(SESSION_MAIN);//while still mPlayer: removed only
+    }
     mPlayer = player;
     player.addListener(componentListener);
+    openSession(SESSION_MAIN, PRIORITY_MAIN, player);
+  }
+
+  // ============================@Session@============================
+  public static final String SESSION_MAIN = "main";
+  // =========@Priority@=========
+  public static final int PRIORITY_PREVIEW = 0;
+  public static final int PRIORITY_BACKGROUND = 1;
+  public static final int PRIORITY_MAIN = 2;
+
+  /**
+   * Named player hosted by this service. <p>Active sessions hold a decoder (from prepare until
+   * stopped/preempted), counted by the budget {@link #setMaxActiveSessions(int)}. The budget is
+   * checked before an {@link APlayer} touches its engine ({@link APlayer.PrepareGate}), a session
+   * losing it is not prepared (prepare(..) returns false).<p/>
+   */
+  public static final class Session {
+
+    public final String name;
+    public final int priority;
+    public final IPlayer player;
+    long lastActiveTime;
+    final PlayerListener stateListener;
+    /**
+     * tracked explicitly, engines (e.g. AndroidMediaPlayer) not back to STATE_IDLE on stop/reset
+     */
+    boolean holdsDecoder;
+    // =========@Preempted@=========
+    boolean preempted;
+    String preemptedMediaId;
+    long preemptedPosition;
+
+    Session(String name, int priority, IPlayer player, PlayerListener stateListener) {
+      this.name = name;
+      this.priority = priority;
+      this.player = player;
+      this.stateListener = stateListener;
+      lastActiveTime = SystemClock.elapsedRealtime();
+    }
+
+    public boolean isActive() {
+      return holdsDecoder;
+    }
+
+    /**
+     * @return stopped by a higher priority session, see {@link #getPreemptedPosition()}
+     */
+    public boolean isPreempted() {
+      return preempted;
+    }
+
+    public String getPreemptedMediaId() {
+      return preemptedMediaId;
+    }
+
+    /**
+     * @return position when preempted, for resume
+     */
+    public long getPreemptedPosition() {
+      return preemptedPosition;
+    }
+  }
+
+  public interface SessionListener {
+
+    /**
+     * Session reset to free a decoder for a higher priority session
+     */
+    void onSessionPreempted(Session session);
+
+    /**
+     * Idle session shut down and removed
+     */
+    void onSessionTornDown(Session session);
+  }
+
+  public static final int DEFAULT_MAX_ACTIVE_SESSIONS = 3;
+  public static final long DEFAULT_SESSION_IDLE_TIMEOUT = 60 * 1000;//ms
+
+  private final LinkedHashMap<String, Session> sessions = new LinkedHashMap<>();
+  private final CopyOnWriteArraySet<SessionListener> sessionListeners =
+      new CopyOnWriteArraySet<>();
+  private int maxActiveSessions = DEFAULT_MAX_ACTIVE_SESSIONS;
+  private long sessionIdleTimeout = DEFAULT_SESSION_IDLE_TIMEOUT;
+  private Handler sessionHandler;
+
+  /**
+   * Host a player as named session (same name replaced, old one shut down).
+   *
+   * @param priority {@link #PRIORITY_PREVIEW}, {@link #PRIORITY_BACKGROUND}, {@link
+   * #PRIORITY_MAIN}..., lower priority yields decoder to higher one
+   */
+  public Session openSession(String name, int priority, IPlayer player) {
+    Session old = sessions.get(name);
+    if (old != null) {
+      if (old.player == player) {
+        return old;
+      }
+      closeSession(name);
+    }
+    final Session[] holder = new Session[1];
+    final boolean gated = player instanceof APlayer;
+    PlayerListener stateListener = new PlayerListener() {
+      @Override
+      public void onStateChanged(int playbackState) {
+        super.onStateChanged(playbackState);
+        Session session = holder[0];
+        session.lastActiveTime = SystemClock.elapsedRealtime();
+        if (playbackState == IPlayer.STATE_GOT_SOURCE) {
+          session.holdsDecoder = true;
+          if (!gated) {
+            //mid prepare, too late to refuse: only others yield
+            session.preempted = false;
+            enforceBudget(session, false);
+          }
+        } else if (playbackState == IPlayer.STATE_IDLE) {
+          session.holdsDecoder = false;
+        }
+      }
+
+      @Override
+      public void onNotificationRequired(int order) {
+        super.onNotificationRequired(order);
+        if (order == 0) {//stop
+          holder[0].holdsDecoder = false;
+        }
+      }
+    };
+    Session session = holder[0] = new Session(name, priority, player, stateListener);
+    sessions.put(name, session);
+    player.addListener(stateListener);
+    if (gated) {
+      ((APlayer) player).setPrepareGate(new APlayer.PrepareGate() {
+        @Override
+        public boolean onPrepare(APlayer player, Uri uri) {
+          //before the engine is touched, a losing requester not prepared at all
+          Session session = holder[0];
+          session.lastActiveTime = SystemClock.elapsedRealtime();
+          session.preempted = false;
+          session.holdsDecoder = true;
+          return enforceBudget(session, true);
+        }
+      });
+    }
+    scheduleIdleCheck();
+    return session;
+  }
+
+  public Session getSession(String name) {
+    return sessions.get(name);
+  }
+
+  public List<Session> getSessions() {
+    return new ArrayList<>(sessions.values());
+  }
+
+  /**
+   * Remove and shut down the session player (main session only removed)
+   */
+  public void closeSession(String name) {
+    Session session = sessions.remove(name);
+    if (session != null) {
+      session.player.removeListener(session.stateListener);
+      if (session.player instanceof APlayer) {
+        ((APlayer) session.player).setPrepareGate(null);
+      }
+      if (session.player != mPlayer) {
+        session.player.shutdown();
+      }
+    }
+  }
+
+  /**
+   * @param maxActiveSessions max concurrent decoders/prepared engines
+   */
+  public void setMaxActiveSessions(int maxActiveSessions) {
+    this.maxActiveSessions = maxActiveSessions > 0 ? maxActiveSessions : 1;
+  }
+
+  /**
+   * @param sessionIdleTimeout not playing longer than it, session torn down (main excepted), <=0
+   * never
+   */
+  public void setSessionIdleTimeout(long sessionIdleTimeout) {
+    this.sessionIdleTimeout = sessionIdleTimeout;
+    scheduleIdleCheck();
+  }
+
+  public void addSessionListener(SessionListener listener) {
+    if (listener != null) {
+      sessionListeners.add(listener);
+    }
+  }
+
+  public void removeSessionListener(SessionListener listener) {
+    sessionListeners.remove(listener);
+  }
+
+  // =========@Budget@=========
+
+  /**
+   * Over budget, preempt the lowest priority active session (least recently active first). The
+   * requesting session wins ties, but yields to any higher priority one.
+   *
+   * @param canYield false: the requester is never the one preempted
+   * @return false: the requester preempted (yielded)
+   */
+  private boolean enforceBudget(Session requester, boolean canYield) {
+    while (true) {
+      int active = 0;
+      Session victim = null;
+      for (Session session : sessions.values()) {
+        if (session.isActive()) {
+          active++;
+          if (session == requester && !canYield) {
+            continue;
+          }
+          if (victim == null || preemptFirst(session, victim, requester)) {
+            victim = session;
+          }
+        }
+      }
+      if (active <= maxActiveSessions || victim == null) {
+        return true;
+      }
+      preempt(victim);
+      if (victim == requester) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * @return a should be preempted before b: lower priority, not the requester, less recently active
+   */
+  private static boolean preemptFirst(Session a, Session b, Session requester) {
+    if (a.priority != b.priority) {
+      return a.priority < b.priority;
+    }
+    if (a == requester || b == requester) {
+      return b == requester;
+    }
+    return a.lastActiveTime < b.lastActiveTime;
+  }
+
+  private void preempt(Session session) {
+    IPlayer player = session.player;
+    IMediaItem item = player.getMediaQueue() != null ?
+        player.getMediaQueue().getCurrentMediaItem() : null;
+    session.preemptedMediaId = item != null ? item.getMediaId() : null;
+    session.preemptedPosition = player.getCurrentPosition();
+    session.preempted = true;
+    L.d(TAG, "preempt session {}(priority {})", session.name, session.priority);
+    player.stop();
+    player.reset();
+    session.holdsDecoder = false;
+    for (SessionListener listener : sessionListeners) {
+      listener.onSessionPreempted(session);
+    }
+  }
+
+  // =========@Idle Teardown@=========
+  private final Runnable idleCheck = new Runnable() {
+    @Override
+    public void run() {
+      checkIdleSessions();
+      scheduleIdleCheck();
+    }
+  };
+
+  private void scheduleIdleCheck() {
+    if (sessionHandler == null) {
+      sessionHandler = new Handler();
+    }
+    sessionHandler.removeCallbacks(idleCheck);
+    if (sessionIdleTimeout > 0 && sessions.size() > 1) {
+      sessionHandler.postDelayed(idleCheck, sessionIdleTimeout / 2);
+    }
+  }
+
+  private void checkIdleSessions() {
+    long now = SystemClock.elapsedRealtime();
+    for (Session session : getSessions()) {
+      if (session.player == mPlayer) {
+        continue;//main resident
+      }
+      if (session.player.isPlaying()) {
+        session.lastActiveTime = now;
+      } else if (now - session.lastActiveTime > sessionIdleTimeout) {
+        L.d(TAG, "tear down idle session {}", session.name);
+        closeSession(session.name);
+        for (SessionListener listener : sessionListeners) {
+          listener.onSessionTornDown(session);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void onDestroy() {
+    if (sessionHandler != null) {
+      sessionHandler.removeCallbacks(idleCheck);
+    }
+    for (Session session : getSessions()) {
+      closeSession(session.name);
+    }
+    super.onDestroy();
   }
 
   // ============================@Notifier@============================
@@ -117,4 +445,7 @@ public class PlayerService extends Service {
       }
     }
   }
-}
\ No newline at end of file
+
+  // ============================@Assist@============================
+  protected String TAG = L.makeTag("PlayerService");
+}
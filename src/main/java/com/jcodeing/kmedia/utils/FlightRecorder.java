@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.utils;
+
+import android.os.Bundle;
+import android.os.SystemClock;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Flight recorder~ fixed-size in-memory ring of player events. <p>Each record is primitives only
+ * (time, type, arg1, arg2) in parallel arrays, recording allocates nothing, cheap enough to keep on
+ * in release builds (when {@link L} is off). Dump on demand or on error.<p/>
+ * <pre>
+ * e.g.
+ * FlightRecorder.getDefault().setDumpOnError(new File(context.getFilesDir(), "k_flight"));
+ * // =========@bug report
+ * bundle.putBundle("flight", FlightRecorder.getDefault().toBundle());
+ * </pre>
+ */
+public final class FlightRecorder {
+
+  // ============================@Type@============================
+  // =========@Listener event@=========
+  public static final int EVENT_PREPARED = 1;
+  public static final int EVENT_BUFFERING_UPDATE = 2;//percent
+  public static final int EVENT_SEEK_COMPLETE = 3;
+  public static final int EVENT_COMPLETION = 4;
+  public static final int EVENT_INFO = 5;//what, extra
+  public static final int EVENT_ERROR = 6;//what, extra
+  public static final int EVENT_VIDEO_SIZE_CHANGED = 7;//width, height
+  public static final int EVENT_STATE_CHANGED = 8;//state
+  public static final int EVENT_PLAY_PROGRESS = 9;//position, duration
+  public static final int EVENT_POS_UNIT_PROGRESS = 10;//position, index << 32 | state
+  public static final int EVENT_AB_PROGRESS = 11;//position, state
+  public static final int EVENT_NOTIFICATION_REQUIRED = 12;//order
+  public static final int EVENT_AUDIO_FOCUS_CHANGE = 13;//focusChange
+  public static final int EVENT_INTENT = 14;
+  // =========@Command@=========
+  public static final int CMD_PREPARE = 21;//autoPlay
+  public static final int CMD_START = 22;
+  public static final int CMD_PAUSE = 23;
+  public static final int CMD_SEEK_TO = 24;//ms, processingLevel
+  public static final int CMD_STOP = 25;
+  public static final int CMD_RESET = 26;
+  public static final int CMD_RELEASE = 27;
+  // =========@Other@=========
+  public static final int METHOD_AGENT = 31;//what, arg1
+  public static final int MARK = 99;//custom
+
+  private static final String[] TYPE_NAMES = new String[100];
+
+  static {
+    String[] names = {"", "PREPARED", "BUFFERING_UPDATE", "SEEK_COMPLETE", "COMPLETION", "INFO",
+        "ERROR", "VIDEO_SIZE_CHANGED", "STATE_CHANGED", "PLAY_PROGRESS", "POS_UNIT_PROGRESS",
+        "AB_PROGRESS", "NOTIFICATION_REQUIRED", "AUDIO_FOCUS_CHANGE", "INTENT"};
+    System.arraycopy(names, 0, TYPE_NAMES, 0, names.length);
+    String[] commands = {"PREPARE", "START", "PAUSE", "SEEK_TO", "STOP", "RESET", "RELEASE"};
+    System.arraycopy(commands, 0, TYPE_NAMES, CMD_PREPARE, commands.length);
+    TYPE_NAMES[METHOD_AGENT] = "METHOD_AGENT";
+    TYPE_NAMES[MARK] = "MARK";
+  }
+
+  public static String typeName(int type) {
+    String name = type >= 0 && type < TYPE_NAMES.length ? TYPE_NAMES[type] : null;
+    return name != null ? name : String.valueOf(type);
+  }
+
+  // ============================@Instance@============================
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  private static FlightRecorder defaultRecorder;
+
+  /**
+   * @return shared recorder, used by players by default
+   */
+  public static synchronized FlightRecorder getDefault() {
+    if (defaultRecorder == null) {
+      defaultRecorder = new FlightRecorder(DEFAULT_CAPACITY);
+    }
+    return defaultRecorder;
+  }
+
+  private final int mask;
+  private final long[] times;
+  private final int[] types;
+  private final long[] args1;
+  private final long[] args2;
+  /**
+   * total records written, next slot = count & mask
+   */
+  private long count;
+  private volatile boolean enabled = true;
+
+  /**
+   * @param capacity records kept, rounded up to power of 2
+   */
+  public FlightRecorder(int capacity) {
+    int size = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+    mask = size - 1;
+    times = new long[size];
+    types = new int[size];
+    args1 = new long[size];
+    args2 = new long[size];
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public int capacity() {
+    return mask + 1;
+  }
+
+  // ============================@Record@============================
+  public void record(int type) {
+    record(type, 0, 0);
+  }
+
+  public void record(int type, long arg1) {
+    record(type, arg1, 0);
+  }
+
+  public void record(int type, long arg1, long arg2) {
+    if (!enabled) {
+      return;
+    }
+    long time = SystemClock.elapsedRealtime();
+    synchronized (this) {
+      int i = (int) (count++ & mask);
+      times[i] = time;
+      types[i] = type;
+      args1[i] = arg1;
+      args2[i] = arg2;
+    }
+    if (type == EVENT_ERROR && dumpOnErrorFile != null) {
+      dumpAsync(dumpOnErrorFile);
+    }
+  }
+
+  /**
+   * @return records count in buffer
+   */
+  public synchronized int size() {
+    return (int) Math.min(count, mask + 1);
+  }
+
+  public synchronized void clear() {
+    count = 0;
+  }
+
+  // ============================@Dump@============================
+  private volatile File dumpOnErrorFile;
+
+  /**
+   * @param file dump (binary) when {@link #EVENT_ERROR} recorded, null disable
+   */
+  public void setDumpOnError(File file) {
+    dumpOnErrorFile = file;
+  }
+
+  /**
+   * Copy of the records, oldest first
+   */
+  private static final class Snapshot {
+
+    long[] times;
+    int[] types;
+    long[] args1;
+    long[] args2;
+    long total;
+  }
+
+  private synchronized Snapshot snapshot() {
+    int size = (int) Math.min(count, mask + 1);
+    Snapshot s = new Snapshot();
+    s.times = new long[size];
+    s.types = new int[size];
+    s.args1 = new long[size];
+    s.args2 = new long[size];
+    s.total = count;
+    long start = count - size;
+    for (int k = 0; k < size; k++) {
+      int i = (int) ((start + k) & mask);
+      s.times[k] = times[i];
+      s.types[k] = types[i];
+      s.args1[k] = args1[i];
+      s.args2[k] = args2[i];
+    }
+    return s;
+  }
+
+  /**
+   * @return "time"(long[]), "type"(int[]), "arg1"(long[]), "arg2"(long[]), "total"(long), oldest
+   * first
+   */
+  public Bundle toBundle() {
+    Snapshot s = snapshot();
+    Bundle bundle = new Bundle();
+    bundle.putLongArray("time", s.times);
+    bundle.putIntArray("type", s.types);
+    bundle.putLongArray("arg1", s.args1);
+    bundle.putLongArray("arg2", s.args2);
+    bundle.putLong("total", s.total);
+    return bundle;
+  }
+
+  private static final int FILE_MAGIC = 0x4B464C54;//KFLT
+  private static final int FILE_VERSION = 1;
+
+  /**
+   * Binary: [magic int][version int][total long][size int] [time long][type int][arg1 long][arg2
+   * long]...
+   */
+  public void dump(File file) throws IOException {
+    Snapshot s = snapshot();
+    DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      out.writeInt(FILE_MAGIC);
+      out.writeInt(FILE_VERSION);
+      out.writeLong(s.total);
+      out.writeInt(s.types.length);
+      for (int k = 0; k < s.types.length; k++) {
+        out.writeLong(s.times[k]);
+        out.writeInt(s.types[k]);
+        out.writeLong(s.args1[k]);
+        out.writeLong(s.args2[k]);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Human readable, one record per line
+   */
+  public void dump(Writer writer) {
+    Snapshot s = snapshot();
+    PrintWriter pw = new PrintWriter(writer);
+    pw.println("FlightRecorder total=" + s.total + " size=" + s.types.length);
+    for (int k = 0; k < s.types.length; k++) {
+      pw.print(s.times[k]);
+      pw.print(' ');
+      pw.print(typeName(s.types[k]));
+      pw.print(' ');
+      pw.print(s.args1[k]);
+      pw.print(' ');
+      pw.println(s.args2[k]);
+    }
+    pw.flush();
+  }
+
+  private ExecutorService dumpExecutor;
+  private final AtomicBoolean dumpPending = new AtomicBoolean();
+
+  /**
+   * Dumps run one at a time (never two writers on the same file), a burst of errors coalesces
+   * into the dump still pending.
+   */
+  private void dumpAsync(final File file) {
+    if (!dumpPending.compareAndSet(false, true)) {
+      return;//pending dump not snapshotted yet, will include this record
+    }
+    synchronized (this) {
+      if (dumpExecutor == null) {
+        dumpExecutor = Executors.newSingleThreadExecutor();
+      }
+    }
+    dumpExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        dumpPending.set(false);
+        try {
+          dump(file);
+        } catch (IOException e) {
+          L.printStackTrace(e);
+        }
+      }
+    });
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.utils;
+
+/**
+ * Fixed memory log-linear histogram of non-negative values (e.g. ms). <p>[0, 16) one bucket per
+ * value, above that every power of 2 is split into 16 linear buckets, so the relative error is <=
+ * 1/16. Values over {@link #MAX_VALUE} are clamped. Record allocates nothing.<p/>
+ */
+public final class Histogram {
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;//16
+  public static final long MAX_VALUE = Integer.MAX_VALUE;
+  private static final int BUCKETS = bucketIndex(MAX_VALUE) + 1;
+
+  private final long[] counts = new long[BUCKETS];
+  private long count;
+  private long sum;
+  private long min = Long.MAX_VALUE;
+  private long max;
+
+  static int bucketIndex(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int magnitude = 63 - Long.numberOfLeadingZeros(value);//>= SUB_BUCKET_BITS
+    int shift = magnitude - SUB_BUCKET_BITS;
+    int sub = (int) (value >> shift) - SUB_BUCKETS;//0..15
+    return SUB_BUCKETS + shift * SUB_BUCKETS + sub;
+  }
+
+  static long bucketLowerBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+    int sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+    return (long) (SUB_BUCKETS + sub) << shift;
+  }
+
+  static long bucketUpperBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+    return bucketLowerBound(index) + (1L << shift) - 1;
+  }
+
+  // ============================@Record@============================
+  public synchronized void record(long value) {
+    if (value < 0) {
+      value = 0;
+    } else if (value > MAX_VALUE) {
+      value = MAX_VALUE;
+    }
+    counts[bucketIndex(value)]++;
+    count++;
+    sum += value;
+    if (value < min) {
+      min = value;
+    }
+    if (value > max) {
+      max = value;
+    }
+  }
+
+  public synchronized void reset() {
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = 0;
+    }
+    count = 0;
+    sum = 0;
+    min = Long.MAX_VALUE;
+    max = 0;
+  }
+
+  public synchronized Histogram copy() {
+    Histogram h = new Histogram();
+    System.arraycopy(counts, 0, h.counts, 0, counts.length);
+    h.count = count;
+    h.sum = sum;
+    h.min = min;
+    h.max = max;
+    return h;
+  }
+
+  // ============================@Read@============================
+  public synchronized long getCount() {
+    return count;
+  }
+
+  public synchronized long getSum() {
+    return sum;
+  }
+
+  public synchronized long getMin() {
+    return count > 0 ? min : 0;
+  }
+
+  public synchronized long getMax() {
+    return max;
+  }
+
+  public synchronized double getMean() {
+    return count > 0 ? (double) sum / count : 0;
+  }
+
+  /**
+   * @param percentile 0~100
+   * @return upper bound of the bucket holding the percentile (not over max), 0 if empty
+   */
+  public synchronized long getPercentile(double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(Math.max(0, Math.min(100, percentile)) / 100d * count);
+    if (rank < 1) {
+      rank = 1;
+    }
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(bucketUpperBound(i), max);
+      }
+    }
+    return max;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "count=" + count + " min=" + getMin() + " p50=" + getPercentile(50) + " p90=" +
+        getPercentile(90) + " p99=" + getPercentile(99) + " max=" + max;
+  }
+}
@@ -98,6 +98,73 @@ public class L {
     }
   }
 
+  // ============================@Parameterized LOG@============================
+  // "{}" in format replaced by args in order. Not ENABLE: nothing formatted, no allocation
+  // (primitive overloads, no boxing/varargs at call site). e.g. L.v(TAG, "Pos({}) Index({})", p, i)
+
+  public static void v(String tag, String format, long arg) {
+    if (ENABLE) {
+      Log.v(tag, format(format, arg));
+    }
+  }
+
+  public static void v(String tag, String format, long arg1, long arg2) {
+    if (ENABLE) {
+      Log.v(tag, format(format, arg1, arg2));
+    }
+  }
+
+  public static void d(String tag, String format, long arg) {
+    if (ENABLE) {
+      Log.d(tag, format(format, arg));
+    }
+  }
+
+  public static void d(String tag, String format, long arg1, long arg2) {
+    if (ENABLE) {
+      Log.d(tag, format(format, arg1, arg2));
+    }
+  }
+
+  public static void d(String tag, String format, Object arg) {
+    if (ENABLE) {
+      Log.d(tag, format(format, arg));
+    }
+  }
+
+  public static void d(String tag, String format, Object arg1, long arg2) {
+    if (ENABLE) {
+      Log.d(tag, format(format, arg1, arg2));
+    }
+  }
+
+  public static void dd(String tag, String format, long arg) {
+    if (ENABLE) {
+      printStackTrace(Log.DEBUG, tag, format(format, arg), 0,
+          DEFAULT_PRINT_STACK_TRACE_METHOD_COUNT);
+    }
+  }
+
+  /**
+   * @return format with "{}" replaced by args in order (extra "{}" kept)
+   */
+  public static String format(String format, Object... args) {
+    if (format == null) {
+      return null;
+    }
+    StringBuilder sb = new StringBuilder(format.length() + 16 * args.length);
+    int from = 0;
+    for (Object arg : args) {
+      int i = format.indexOf("{}", from);
+      if (i < 0) {
+        break;
+      }
+      sb.append(format, from, i).append(arg);
+      from = i + 2;
+    }
+    return sb.append(format, from, format.length()).toString();
+  }
+
   // ============================@Println@============================
   public static void println(int priority, String tag, String space, Object... messages) {
     if (messages == null || messages.length <= 0) {
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.utils;
+
+import java.text.DecimalFormatSymbols;
+
+/**
+ * Allocation free "mm:ss"/"h:mm:ss" formatter, same output as {@link
+ * TimeProgress#stringForTime(long)}. <p>Writes digits into its own char[], and remembers the last
+ * formatted second, so a progress tick in the same second costs nothing. Not thread safe, one per
+ * view/thread.<p/>
+ * <pre>
+ * e.g.
+ * if (formatter.update(position)) {
+ *   textView.setText(formatter.chars(), 0, formatter.length());
+ * }
+ * </pre>
+ */
+public final class TimeFormatter {
+
+  /**
+   * Long.MAX_VALUE ms in hours (16 digits) + ":mm:ss"
+   */
+  public static final int MAX_LENGTH = 22;
+
+  private final char[] chars = new char[MAX_LENGTH];
+  private final char zeroDigit;
+  private int length;
+  private long lastSeconds = -1;
+
+  public TimeFormatter() {
+    zeroDigit = DecimalFormatSymbols.getInstance().getZeroDigit();
+  }
+
+  /**
+   * @return true: text changed (another second), false: same as last, chars untouched
+   */
+  public boolean update(long timeMs) {
+    long totalSeconds = totalSeconds(timeMs);
+    if (totalSeconds == lastSeconds) {
+      return false;
+    }
+    lastSeconds = totalSeconds;
+    length = formatSeconds(totalSeconds, chars, 0, zeroDigit);
+    return true;
+  }
+
+  /**
+   * Forget the last second, next {@link #update(long)} returns true
+   */
+  public void reset() {
+    lastSeconds = -1;
+  }
+
+  /**
+   * @return shared buffer, valid [0, {@link #length()}) until next {@link #update(long)}
+   */
+  public char[] chars() {
+    return chars;
+  }
+
+  public int length() {
+    return length;
+  }
+
+  public char zeroDigit() {
+    return zeroDigit;
+  }
+
+  @Override
+  public String toString() {
+    return new String(chars, 0, length);
+  }
+
+  // ============================@Static@============================
+  private static long totalSeconds(long timeMs) {
+    return timeMs < 0 ? 0 : timeMs / 1000 + (timeMs % 1000 >= 500 ? 1 : 0);//round, no overflow
+  }
+
+  /**
+   * @param dest at least {@link #MAX_LENGTH} from offset
+   * @param zeroDigit '0', or locale {@link DecimalFormatSymbols#getZeroDigit()}
+   * @return chars written
+   */
+  public static int format(long timeMs, char[] dest, int offset, char zeroDigit) {
+    return formatSeconds(totalSeconds(timeMs), dest, offset, zeroDigit);
+  }
+
+  private static int formatSeconds(long totalSeconds, char[] dest, int offset, char zeroDigit) {
+    long seconds = totalSeconds % 60;
+    long minutes = (totalSeconds / 60) % 60;
+    long hours = totalSeconds / 3600;
+    int i = offset;
+    if (hours > 0) {
+      // =========@h:mm:ss@=========
+      int digits = 1;
+      for (long h = hours; h >= 10; h /= 10) {
+        digits++;
+      }
+      for (int k = digits - 1; k >= 0; k--) {
+        dest[i + k] = (char) (zeroDigit + hours % 10);
+        hours /= 10;
+      }
+      i += digits;
+      dest[i++] = ':';
+    }
+    // =========@mm:ss@=========
+    dest[i++] = (char) (zeroDigit + minutes / 10);
+    dest[i++] = (char) (zeroDigit + minutes % 10);
+    dest[i++] = ':';
+    dest[i++] = (char) (zeroDigit + seconds / 10);
+    dest[i++] = (char) (zeroDigit + seconds % 10);
+    return i - offset;
+  }
+}
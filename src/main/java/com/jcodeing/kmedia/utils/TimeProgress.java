@@ -16,32 +16,19 @@
 package com.jcodeing.kmedia.utils;
 
 import android.text.TextUtils;
-import java.util.Formatter;
-import java.util.Locale;
+import java.text.DecimalFormatSymbols;
 
 public class TimeProgress {
 
-  private static StringBuilder formatBuilder;
-  private static Formatter formatter;
-
+  /**
+   * @return "mm:ss", or "h:mm:ss" over an hour (locale digits)
+   * @see TimeFormatter reuse one per view, not allocate per tick
+   */
   public static String stringForTime(long timeMs) {
-    if (formatBuilder == null) {
-      formatBuilder = new StringBuilder();
-    }
-    if (formatter == null) {
-      formatter = new Formatter(formatBuilder, Locale.getDefault());
-    }
-    if (timeMs < 0) {
-      timeMs = 0;
-    }
-
-    long totalSeconds = (timeMs + 500) / 1000;
-    long seconds = totalSeconds % 60;
-    long minutes = (totalSeconds / 60) % 60;
-    long hours = totalSeconds / 3600;
-    formatBuilder.setLength(0);
-    return hours > 0 ? formatter.format("%d:%02d:%02d", hours, minutes, seconds).toString()
-        : formatter.format("%02d:%02d", minutes, seconds).toString();
+    char[] chars = new char[TimeFormatter.MAX_LENGTH];
+    int length = TimeFormatter.format(timeMs, chars, 0,
+        DecimalFormatSymbols.getInstance().getZeroDigit());
+    return new String(chars, 0, length);
   }
 
   /**
@@ -19,12 +19,14 @@ import android.content.Context;
 import android.content.res.TypedArray;
 import android.os.SystemClock;
 import android.support.annotation.DrawableRes;
+import android.text.TextPaint;
 import android.util.AttributeSet;
 import android.util.SparseArray;
 import android.view.GestureDetector;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewGroup;
 import android.view.ViewParent;
 import android.widget.FrameLayout;
 import android.widget.ProgressBar;
@@ -39,8 +41,10 @@ import com.jcodeing.kmedia.assist.GestureDetectorHelper;
 import com.jcodeing.kmedia.assist.GestureListenerExtend;
 import com.jcodeing.kmedia.utils.Assert;
 import com.jcodeing.kmedia.utils.L;
+import com.jcodeing.kmedia.utils.TimeFormatter;
 import com.jcodeing.kmedia.utils.TimeProgress;
 import com.jcodeing.kmedia.view.ProgressAny;
+import com.jcodeing.kmedia.view.SmoothProgressRenderer;
 
 public abstract class AControlGroupView extends FrameLayout {
 
@@ -123,6 +127,10 @@ public abstract class AControlGroupView extends FrameLayout {
     isAttachedToWindow = false;
     // =========@Do something
     removeCallbacks(hideAction);
+    if (smoothProgressRenderer != null) {
+      smoothProgressRenderer.stop();
+    }
+    dispatchScrubEnd();
   }
 
   @Override
@@ -219,6 +227,7 @@ public abstract class AControlGroupView extends FrameLayout {
           adjustsPendingPosition = C.POSITION_UNSET;//reset
           adjustsDuration = C.POSITION_UNSET;//reset
           dragging = false;
+          dispatchScrubEnd();
         }
       }
       return true;
@@ -324,6 +333,7 @@ public abstract class AControlGroupView extends FrameLayout {
         }
 
         updateProgressView(position, C.PARAM.FORCE, C.POSITION_UNSET, C.PARAM.UNSET);
+        dispatchScrub(position);
 
         if (!isShowTips) {
           return;
@@ -391,6 +401,11 @@ public abstract class AControlGroupView extends FrameLayout {
   // ============================@SmartView
   protected TextView positionTv;
   protected TextView durationTv;
+  /**
+   * Per view, positionTv/durationTv text without allocation
+   */
+  protected final TimeFormatter positionFormatter = new TimeFormatter();
+  protected final TimeFormatter durationFormatter = new TimeFormatter();
   protected ProgressBar progressBar;
   protected ProgressAny progressAny;
   protected View playView;
@@ -410,15 +425,19 @@ public abstract class AControlGroupView extends FrameLayout {
     durationTv = (TextView) view.findSmartView(R.id.k_duration_tv);
     progressBar = (ProgressBar) view.findSmartView(R.id.k_progress_bar);
     progressAny = (ProgressAny) view.findSmartView(R.id.k_progress_any);
+    resetRenderCache();
+    if (smoothProgressRenderer != null) {
+      smoothProgressRenderer.setTargets(progressBar, progressAny);
+    }
     // =========@Set
     if (progressBar != null) {
-      progressBar.setMax(PROGRESS_BAR_MAX);
+      progressBar.setMax(progressMax);
       if (progressBar instanceof SeekBar) {
         ((SeekBar) progressBar).setOnSeekBarChangeListener(componentListener);
       }
     }
     if (progressAny != null) {
-      progressAny.setMax(PROGRESS_BAR_MAX);
+      progressAny.setMax(progressMax);
       progressAny.setOnChangeListener(componentListener);
     }
     // =========@Button@=========
@@ -505,6 +524,7 @@ public abstract class AControlGroupView extends FrameLayout {
       controlLayerView = getControlLayerView(key);
       if (controlLayerView != null) {
         if (key == controlLayerId) {
+          controlLayerView.ensureInflated();//lazy layer, first switch
           controlLayerView.setVisibility(VISIBLE);
           controlLayerView.onResume();
           initSmartViewByControlLayer(controlLayerView);
@@ -522,6 +542,19 @@ public abstract class AControlGroupView extends FrameLayout {
   }
 
 
+  /**
+   * Lazy control layers (app:lazy_inflate) not yet shown, inflate on a background thread now.
+   * e.g. after first frame, so later switch (port <-> land) don't inflate on main thread.
+   */
+  public void preInflateControlLayers() {
+    for (int i = 0; i < controlLayers.size(); i++) {
+      AControlLayerView controlLayerView = controlLayers.valueAt(i);
+      if (controlLayerView != null && !controlLayerView.isInflated()) {
+        controlLayerView.preInflateAsync();
+      }
+    }
+  }
+
   public AControlLayerView getControlLayerView(int controlLayerId) {
     AControlLayerView controlLayerView = controlLayers.get(controlLayerId);
     if (controlLayerView == null) {
@@ -775,7 +808,44 @@ public abstract class AControlGroupView extends FrameLayout {
 
   // ============================@Progress
   protected static int PROGRESS_BAR_MAX = 100;
+  /**
+   * progressBar/progressAny max, {@link SmoothProgressRenderer#PROGRESS_MAX} with smooth progress
+   */
+  protected int progressMax = PROGRESS_BAR_MAX;
   protected boolean dragging;
+  protected SmoothProgressRenderer smoothProgressRenderer;
+
+  /**
+   * @param smooth true: progress bar interpolated every frame between player samples (no faster
+   * player polling needed), false: moves on each sample
+   */
+  public void setSmoothProgress(boolean smooth) {
+    if (smooth == (smoothProgressRenderer != null)) {
+      return;
+    }
+    if (smooth) {
+      smoothProgressRenderer = new SmoothProgressRenderer(this) {
+        @Override
+        protected boolean shouldRender() {
+          return !dragging && isVisibleByPlayController() && isAttachedToWindow;
+        }
+      };
+      smoothProgressRenderer.setTargets(progressBar, progressAny);
+      progressMax = SmoothProgressRenderer.PROGRESS_MAX;
+    } else {
+      smoothProgressRenderer.stop();
+      smoothProgressRenderer = null;
+      progressMax = PROGRESS_BAR_MAX;
+    }
+    if (progressBar != null) {
+      progressBar.setMax(progressMax);
+    }
+    if (progressAny != null) {
+      progressAny.setMax(progressMax);
+    }
+    resetRenderCache();
+    updateProgressView(-1, -1);
+  }
 
   protected void updateProgressView(long position, long duration) {
     updateProgressView(position, null, duration, null);
@@ -790,15 +860,16 @@ public abstract class AControlGroupView extends FrameLayout {
     if (!isVisibleByPlayController() || !isAttachedToWindow) {
       return;
     }
-    if (durationCP != C.PARAM.UNSET && durationTv != null) {
-      if (duration < 0) {
-        if (player != null) {
-          duration = (duration = player.getDuration()) < 0 ? 0 : duration;
-        } else {
-          duration = 0;
-        }
+    //once per update, shared by duration text and progress value
+    if (duration < 0) {
+      if (player != null) {
+        duration = (duration = player.getDuration()) < 0 ? 0 : duration;
+      } else {
+        duration = 0;
       }
-      durationTv.setText(TimeProgress.stringForTime(duration));
+    }
+    if (durationCP != C.PARAM.UNSET && durationTv != null) {
+      setTimeText(durationTv, durationFormatter, duration);
     }
 
     if (positionCP != C.PARAM.UNSET && (!dragging || positionCP == C.PARAM.FORCE)) {
@@ -810,26 +881,166 @@ public abstract class AControlGroupView extends FrameLayout {
         }
       }
       if (positionTv != null) {
-        positionTv.setText(TimeProgress.stringForTime(position));
+        setTimeText(positionTv, positionFormatter, position);
       }
-      int p = progressValue(position);
-      if (progressBar != null) {
-        progressBar.setProgress(p);
+      if (smoothProgressRenderer != null) {
+        boolean playing = !dragging && player != null && player.isPlaying();
+        smoothProgressRenderer.update(position, duration, playing,
+            player != null ? player.getPlaybackSpeed() : 1);
+        return;
       }
-      if (progressAny != null) {
-        progressAny.setProgress(p);
+      int p = TimeProgress.progressValue(position, duration, progressMax);
+      if (p != renderedProgress) {
+        renderedProgress = p;
+        if (progressBar != null) {
+          progressBar.setProgress(p);
+        }
+        if (progressAny != null) {
+          progressAny.setProgress(p);
+        }
       }
     }
   }
 
+  // =========@Render cache@=========
+  // Only touch views whose shown value changed.
+  /**
+   * last progress value set to progressBar/progressAny, -1: unknown (e.g. user dragged)
+   */
+  protected int renderedProgress = -1;
+  /**
+   * positionTv/durationTv width pinned to the widest text of the same length (wrap_content only),
+   * so a new second is a redraw, not a relayout
+   */
+  protected boolean pinTimeTextWidth = true;
+
+  public void setPinTimeTextWidth(boolean pin) {
+    pinTimeTextWidth = pin;
+  }
+
+  /**
+   * Forget rendered values, next update sets all views
+   */
+  protected void resetRenderCache() {
+    renderedProgress = -1;
+    positionFormatter.reset();
+    durationFormatter.reset();
+  }
+
+  /**
+   * setText(char[], int, int) only when the shown second changed
+   */
+  protected void setTimeText(TextView tv, TimeFormatter formatter, long timeMs) {
+    if (formatter.update(timeMs)) {
+      if (tv.getText().length() != formatter.length()) {
+        pinTimeTextWidth(tv, formatter);//e.g. first time, over an hour
+      }
+      tv.setText(formatter.chars(), 0, formatter.length());
+    }
+  }
+
+  private final char[] measureChars = new char[1];
+
+  /**
+   * TextView skips requestLayout on setText when min width == max width
+   */
+  protected void pinTimeTextWidth(TextView tv, TimeFormatter formatter) {
+    ViewGroup.LayoutParams lp = tv.getLayoutParams();
+    if (!pinTimeTextWidth || lp == null || lp.width != ViewGroup.LayoutParams.WRAP_CONTENT) {
+      return;
+    }
+    TextPaint paint = tv.getPaint();
+    float widestDigit = 0;
+    char zero = formatter.zeroDigit();
+    for (char c = zero; c <= zero + 9; c++) {
+      measureChars[0] = c;
+      widestDigit = Math.max(widestDigit, paint.measureText(measureChars, 0, 1));
+    }
+    char[] chars = formatter.chars();
+    float width = 0;
+    for (int i = 0; i < formatter.length(); i++) {
+      if (Character.isDigit(chars[i])) {
+        width += widestDigit;
+      } else {
+        width += paint.measureText(chars, i, 1);
+      }
+    }
+    tv.setWidth((int) Math.ceil(width) + tv.getCompoundPaddingLeft() +
+        tv.getCompoundPaddingRight());
+  }
+
   protected int progressValue(long position) {
     long duration = player == null ? 0 : player.getDuration();
-    return TimeProgress.progressValue(position, duration, PROGRESS_BAR_MAX);
+    return TimeProgress.progressValue(position, duration, progressMax);
   }
 
   protected long positionValue(int progress) {
     long duration = player == null ? 0 : player.getDuration();
-    return TimeProgress.positionValue(progress, duration, PROGRESS_BAR_MAX);
+    return TimeProgress.positionValue(progress, duration, progressMax);
+  }
+
+  // ============================@Scrub Preview
+  protected ScrubPreview scrubPreview;
+  private boolean scrubbing;
+
+  /**
+   * Preview (e.g. thumbnail popup {@link ScrubPreviewPopup}) while user scrub by seek bar/progress
+   * any or crosswise gesture. null: none
+   */
+  public void setScrubPreview(ScrubPreview scrubPreview) {
+    if (this.scrubPreview != null) {
+      dispatchScrubEnd();
+    }
+    this.scrubPreview = scrubPreview;
+  }
+
+  public ScrubPreview getScrubPreview() {
+    return scrubPreview;
+  }
+
+  /**
+   * @return anchor of scrub preview, progress bar/progress any, null: none
+   */
+  public View getProgressView() {
+    if (progressBar != null) {
+      return progressBar;
+    }
+    return progressAny instanceof View ? (View) progressAny : null;
+  }
+
+  protected void dispatchScrub(long position) {
+    if (scrubPreview == null) {
+      return;
+    }
+    if (!scrubbing) {
+      scrubbing = true;
+      scrubPreview.onScrubStart(this);
+    }
+    scrubPreview.onScrub(position, player == null ? 0 : player.getDuration());
+  }
+
+  protected void dispatchScrubEnd() {
+    if (scrubbing) {
+      scrubbing = false;
+      if (scrubPreview != null) {
+        scrubPreview.onScrubEnd();
+      }
+    }
+  }
+
+  public interface ScrubPreview {
+
+    /**
+     * First scrub position of a drag/gesture
+     */
+    void onScrubStart(AControlGroupView controlGroup);
+
+    /**
+     * @param position pending position (not seek yet)
+     */
+    void onScrub(long position, long duration);
+
+    void onScrubEnd();
   }
 
   // ============================@Buffer
@@ -855,14 +1066,23 @@ public abstract class AControlGroupView extends FrameLayout {
     if (order == 1) {
       player.start();
     } else if (order == 0) {
+      capturePoster();
       player.pause();
     } else if (!player.isPlaying()) {
       player.start();
     } else {
+      capturePoster();
       player.pause();
     }
   }
 
+  private void capturePoster() {
+    APlayerView playerView = getPlayerView();
+    if (playerView != null) {
+      playerView.capturePoster();
+    }
+  }
+
   // ============================@Seek
   protected SeekDispatcher seekDispatcher;
 
@@ -958,14 +1178,21 @@ public abstract class AControlGroupView extends FrameLayout {
     public void onStartTrackingTouch(SeekBar seekBar) {
       removeCallbacks(hideAction);
       dragging = true;
+      if (smoothProgressRenderer != null) {
+        smoothProgressRenderer.stop();
+      }
     }
 
     @Override
     public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
       if (fromUser) {
+        renderedProgress = -1;//changed by user
         long position = positionValue(progress);
         if (positionTv != null) {
-          positionTv.setText(TimeProgress.stringForTime(position));
+          setTimeText(positionTv, positionFormatter, position);
+        }
+        if (dragging) {
+          dispatchScrub(position);
         }
         if (player != null && !dragging) {
           seekTo(position);
@@ -976,6 +1203,7 @@ public abstract class AControlGroupView extends FrameLayout {
     @Override
     public void onStopTrackingTouch(SeekBar seekBar) {
       dragging = false;
+      dispatchScrubEnd();
       if (player != null) {
         seekTo(positionValue(seekBar.getProgress()));
       }
@@ -987,14 +1215,21 @@ public abstract class AControlGroupView extends FrameLayout {
     public void onStartTrackingTouch(ProgressAny progressAny) {
       removeCallbacks(hideAction);
       dragging = true;
+      if (smoothProgressRenderer != null) {
+        smoothProgressRenderer.stop();
+      }
     }
 
     @Override
     public void onProgressChanged(ProgressAny progressAny, int progress, boolean fromUser) {
       if (fromUser) {
+        renderedProgress = -1;//changed by user
         long position = positionValue(progress);
         if (positionTv != null) {
-          positionTv.setText(TimeProgress.stringForTime(position));
+          setTimeText(positionTv, positionFormatter, position);
+        }
+        if (dragging) {
+          dispatchScrub(position);
         }
         if (player != null && !dragging) {
           seekTo(position);
@@ -1005,6 +1240,7 @@ public abstract class AControlGroupView extends FrameLayout {
     @Override
     public void onStopTrackingTouch(ProgressAny progressAny) {
       dragging = false;
+      dispatchScrubEnd();
       if (player != null) {
         seekTo(positionValue(progressAny.getProgress()));
       }
@@ -77,6 +77,29 @@ public abstract class AControlLayerView extends LocalFrameLayout {
     //Do something
   }
 
+  // ============================@Inflate@============================
+
+  /**
+   * @return false: content deferred (lazy), until {@link #ensureInflated()}
+   */
+  public boolean isInflated() {
+    return true;
+  }
+
+  /**
+   * Inflate deferred content now (main thread). ControlGroupView call this before first show.
+   */
+  public void ensureInflated() {
+    //Do something
+  }
+
+  /**
+   * Optional, inflate deferred content on a background thread ahead of first show.
+   */
+  public void preInflateAsync() {
+    //Do something
+  }
+
   // ============================@View@============================
 
   /**
@@ -151,6 +174,7 @@ public abstract class AControlLayerView extends LocalFrameLayout {
     if (findSmartViewListener != null) {
       return findSmartViewListener.onFindSmartView(id);
     }
+    ensureInflated();
     return findViewById(id);
   }
 
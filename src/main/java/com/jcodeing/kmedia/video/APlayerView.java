@@ -311,6 +311,14 @@ public abstract class APlayerView<PV extends APlayerView> extends FrameLayout {
     setOrientationHelper(null, 0);//release
   }
 
+  /**
+   * Capture current video frame as poster of the item (shown on its next play until first frame
+   * rendered), called when paused/stopped. Default do nothing.
+   */
+  public void capturePoster() {
+    //Do nothing
+  }
+
   // ============================@Lifecycle
   private AutoPlayPauseHelper autoPlayPauseHelper;
 
@@ -341,6 +349,7 @@ public abstract class APlayerView<PV extends APlayerView> extends FrameLayout {
    * @see Activity#onPause()
    */
   public void onPause() {
+    capturePoster();
     getAutoPlayPauseHelper().onPause();
   }
 
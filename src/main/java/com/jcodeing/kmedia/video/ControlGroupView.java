@@ -221,11 +221,12 @@ public class ControlGroupView extends AControlGroupView {
     @Override
     public void onBufferingUpdate(int percent) {
       super.onBufferingUpdate(percent);
+      int secondaryProgress = percent * progressMax / 100;
       if (progressBar != null) {
-        progressBar.setSecondaryProgress(percent);
+        progressBar.setSecondaryProgress(secondaryProgress);
       }
       if (progressAny != null) {
-        progressAny.setSecondaryProgress(percent);
+        progressAny.setSecondaryProgress(secondaryProgress);
       }
     }
 
@@ -17,6 +17,8 @@ package com.jcodeing.kmedia.video;
 
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.DrawableRes;
 import android.support.annotation.IdRes;
 import android.text.TextUtils;
@@ -24,10 +26,14 @@ import android.util.AttributeSet;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.FrameLayout;
 import android.widget.ImageButton;
 import android.widget.TextView;
 import com.jcodeing.kmedia.R;
 import com.jcodeing.kmedia.assist.AnimationHelper;
+import com.jcodeing.kmedia.utils.L;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Control layer view . below simple use for layout.
@@ -48,6 +54,7 @@ import com.jcodeing.kmedia.assist.AnimationHelper;
  * app:use_part_tips="true"
  * -------------------------
  * app:control_layer_layout_id="..."
+ * app:lazy_inflate="false"
  * app:...
  *
  * Simple template
@@ -138,6 +145,7 @@ public class ControlLayerView extends AControlLayerView {
   // =========@Other@=========
   protected boolean usePartBuffer;
   protected boolean usePartTips;
+  protected boolean lazyInflate;
 
 
   @Override
@@ -155,6 +163,7 @@ public class ControlLayerView extends AControlLayerView {
     // =====@Other
     usePartBuffer = true;
     usePartTips = true;
+    lazyInflate = false;
 
     // =========@Form User
     if (super.initAttrs(a)) {
@@ -185,6 +194,8 @@ public class ControlLayerView extends AControlLayerView {
           R.styleable.AControlLayerView_use_part_buffer, usePartBuffer);
       usePartTips = a.getBoolean(
           R.styleable.AControlLayerView_use_part_tips, usePartTips);
+      lazyInflate = a.getBoolean(
+          R.styleable.AControlLayerView_lazy_inflate, lazyInflate);
       return true;
     } else {
       return false;
@@ -202,7 +213,101 @@ public class ControlLayerView extends AControlLayerView {
 
   @Override
   protected void initView() {
-    inflate(controlLayerLayoutId);
+    if (!lazyInflate) {
+      inflate(controlLayerLayoutId);
+      inflated = true;
+    }
+  }
+
+  // ============================@Lazy Inflate@============================
+  private boolean inflated;
+  private boolean finishInflated;
+  private boolean preInflating;
+
+  @Override
+  public boolean isInflated() {
+    return inflated;
+  }
+
+  /**
+   * app:lazy_inflate="true" -> control layer layout inflate here, (first switch/findPart) <p>Layout
+   * children add below the xml children, same order as constructor inflate.<p/>
+   */
+  @Override
+  public void ensureInflated() {
+    if (inflated) {
+      return;
+    }
+    FrameLayout container = new FrameLayout(getContext());
+    LayoutInflater.from(getContext()).inflate(controlLayerLayoutId, container, true);
+    adoptInflated(container);
+  }
+
+  /**
+   * Pre-inflate of all layers, one at a time, off the UI thread
+   */
+  private static ExecutorService inflateExecutor;
+
+  private static synchronized ExecutorService inflateExecutor() {
+    if (inflateExecutor == null) {
+      inflateExecutor = Executors.newSingleThreadExecutor();
+    }
+    return inflateExecutor;
+  }
+
+  /**
+   * Lazy layer, inflate control layer layout on a background thread, adopt on main thread (if still
+   * not inflated). failure -> {@link #ensureInflated()} later inflate on main thread. <p>Views built
+   * off thread: the built-in part layouts only use FrameLayout, LinearLayout, View, TextView,
+   * ImageButton, ProgressBar and SeekBar, safe without a Looper. A custom control layer layout must
+   * not create a Handler or post() in its views constructors/onFinishInflate (before N, a post()
+   * not attached queues on the inflating thread and is lost).<p/>
+   */
+  @Override
+  public void preInflateAsync() {
+    if (inflated || preInflating) {
+      return;
+    }
+    preInflating = true;
+    final Context context = getContext();
+    final int layoutId = controlLayerLayoutId;
+    final Handler mainHandler = new Handler(Looper.getMainLooper());
+    inflateExecutor().execute(new Runnable() {
+      @Override
+      public void run() {
+        FrameLayout container = null;
+        try {
+          container = new FrameLayout(context);
+          LayoutInflater.from(context).inflate(layoutId, container, true);
+        } catch (Exception e) {
+          L.printStackTrace(e);
+          container = null;
+        }
+        final FrameLayout result = container;
+        mainHandler.post(new Runnable() {
+          @Override
+          public void run() {
+            preInflating = false;
+            if (result != null && !inflated && layoutId == controlLayerLayoutId) {
+              adoptInflated(result);
+            }
+          }
+        });
+      }
+    });
+  }
+
+  private void adoptInflated(ViewGroup container) {
+    int index = 0;
+    while (container.getChildCount() > 0) {
+      View child = container.getChildAt(0);
+      container.removeViewAt(0);
+      addView(child, index++);
+    }
+    inflated = true;
+    if (finishInflated) {
+      initParts();
+    }//else -> onFinishInflate
   }
 
   @Override
@@ -218,6 +323,17 @@ public class ControlLayerView extends AControlLayerView {
   @Override
   protected void onFinishInflate() {
     super.onFinishInflate();
+    finishInflated = true;
+    if (inflated) {
+      initParts();
+    }
+  }
+
+  /**
+   * Wire top/bottom/left/right/middle, buffer, tips parts. invoke once control layer layout and xml
+   * children both ready.
+   */
+  protected void initParts() {
     // =========@Top@=========
     if (controlLayerLayoutId == getDefaultLayoutId()) {
       //default control layer layout(handle by attrs)
@@ -382,6 +498,7 @@ public class ControlLayerView extends AControlLayerView {
    * @param id part/childView Id
    */
   public View findPart(@IdRes int id) {
+    ensureInflated();
     return findViewById(id);
   }
 
@@ -424,7 +541,7 @@ public class ControlLayerView extends AControlLayerView {
    * @param oldPartId part/childView Id
    */
   public void replacePart(@IdRes int oldPartId, View newPartView) {
-    View originView = findViewById(oldPartId);
+    View originView = findPart(oldPartId);
     if (originView != null) {
       newPartView.setLayoutParams(originView.getLayoutParams());
       ViewGroup parent = ((ViewGroup) originView.getParent());
@@ -456,7 +573,7 @@ public class ControlLayerView extends AControlLayerView {
     } else if (id == R.id.part_middle_container || id == R.id.k_ctrl_layer_part_middle) {
       middleView = null;
     }
-    View v = findViewById(id);
+    View v = findPart(id);
     if (v != null) {
       ViewGroup parent = (ViewGroup) v.getParent();
       if (parent != null) {
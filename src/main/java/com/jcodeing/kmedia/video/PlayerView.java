@@ -15,8 +15,13 @@
  */
 package com.jcodeing.kmedia.video;
 
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.net.Uri;
 import android.os.Build.VERSION;
 import android.os.Build.VERSION_CODES;
 import android.util.AttributeSet;
@@ -25,10 +30,16 @@ import android.view.SurfaceView;
 import android.view.TextureView;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ImageView;
+import com.jcodeing.kmedia.IMediaPlayer;
 import com.jcodeing.kmedia.IPlayer;
 import com.jcodeing.kmedia.PlayerListener;
 import com.jcodeing.kmedia.R;
+import com.jcodeing.kmedia.assist.C;
+import com.jcodeing.kmedia.definition.IMediaItem;
 import com.jcodeing.kmedia.video.AspectRatioView.ResizeMode;
+import com.jcodeing.kmedia.worker.ArtworkLoader;
+import com.jcodeing.kmedia.worker.PosterFrameCache;
 
 /**
  * Player View. below simple use for layout.
@@ -223,6 +234,215 @@ public final class PlayerView extends APlayerView<PlayerView> {
     return shutterView;
   }
 
+  // =========@Artwork@=========
+  private boolean useArtwork = true;
+  private ArtworkLoader.Request artworkRequest;
+  private boolean artworkShown;
+
+  /**
+   * @param useArtwork true: shutter view is an ImageView, show current item artwork on it
+   */
+  public void setUseArtwork(boolean useArtwork) {
+    this.useArtwork = useArtwork;
+    if (!useArtwork) {
+      cancelArtwork();
+    }
+  }
+
+  /**
+   * Load current item artwork (off main thread) into the ImageView shutter
+   */
+  protected void updateArtwork() {
+    cancelArtwork();
+    if (!useArtwork || !(shutterView instanceof ImageView) || player == null) {
+      return;
+    }
+    final ImageView artworkView = (ImageView) shutterView;
+    if (artworkShown) {
+      artworkView.setImageDrawable(null);
+      artworkShown = false;
+    }
+    IMediaItem item = player.getMediaQueue().getCurrentMediaItem();
+    Uri iconUri = item != null ? item.getIconUri() : null;
+    if (iconUri == null) {
+      return;
+    }
+    int width = getWidth() > 0 ? getWidth() : getResources().getDisplayMetrics().widthPixels;
+    int height = getHeight() > 0 ? getHeight() : width;
+    artworkRequest = ArtworkLoader.get(getContext()).load(iconUri, width, height,
+        new ArtworkLoader.Callback() {
+          @Override
+          public void onArtworkLoaded(Uri uri, Bitmap bitmap) {
+            if (bitmap != null) {
+              artworkView.setImageBitmap(bitmap);
+              artworkShown = true;
+            }
+          }
+        });
+  }
+
+  private void cancelArtwork() {
+    if (artworkRequest != null) {
+      artworkRequest.cancel();
+      artworkRequest = null;
+    }
+  }
+
+  // ============================@Poster@============================
+  private static final long POSTER_FADE_MS = 150;
+  private boolean usePosterFrame;
+  private ImageView posterView;
+  private Bitmap posterBitmap;
+  /**
+   * current item first frame rendered, poster of it can be captured
+   */
+  private boolean videoRendered;
+  private String renderedMediaId;
+  private long lastPosition = C.POSITION_UNSET;
+  /**
+   * played to the end, the frame shown is the last one: a poster of it never matches a replay
+   * (from 0) and must not replace the poster of the last pause
+   */
+  private boolean playedToEnd;
+
+  /**
+   * @param usePosterFrame true: (TextureView only) capture the frame when paused/stopped,
+   * show it over the surface on next play of the item until its first frame rendered. Default
+   * false
+   * @see PosterFrameCache
+   */
+  public void setUsePosterFrame(boolean usePosterFrame) {
+    this.usePosterFrame = usePosterFrame;
+    if (!usePosterFrame) {
+      hidePoster(false);
+    }
+  }
+
+  /**
+   * Capture current frame of the rendered item into {@link PosterFrameCache}
+   */
+  @Override
+  public void capturePoster() {
+    if (player != null && renderedMediaId != null
+        && renderedMediaId.equals(player.getCurrentMediaId())) {
+      lastPosition = player.getCurrentPosition();
+    }
+    capturePoster(renderedMediaId, lastPosition);
+  }
+
+  private void capturePoster(String mediaId, long position) {
+    if (!usePosterFrame || !videoRendered || playedToEnd || mediaId == null
+        || VERSION.SDK_INT < VERSION_CODES.ICE_CREAM_SANDWICH
+        || !(surfaceView instanceof TextureView)) {
+      return;
+    }
+    PosterFrameCache.get(getContext()).capture((TextureView) surfaceView, mediaId, position);
+  }
+
+  /**
+   * New source: show poster of its mediaId (if any) until first frame rendered
+   */
+  protected void updatePoster() {
+    //previous item switched (e.g. skip) without pause/stop, capture it first
+    if (player != null && renderedMediaId != null
+        && !renderedMediaId.equals(player.getCurrentMediaId())) {
+      capturePoster(renderedMediaId, lastPosition);
+    }
+    videoRendered = false;
+    renderedMediaId = null;
+    lastPosition = C.POSITION_UNSET;
+    playedToEnd = false;
+    hidePoster(false);
+    final String mediaId = player != null ? player.getCurrentMediaId() : null;
+    if (!usePosterFrame || mediaId == null || aspectRatioView == null
+        || !(surfaceView instanceof TextureView)) {
+      return;
+    }
+    //starts at pending seek or 0: a poster from elsewhere would flash the wrong frame
+    long start = player.getSeekToPending();
+    PosterFrameCache.get(getContext()).load(mediaId, start != C.POSITION_UNSET ? start : 0,
+        new PosterFrameCache.Callback() {
+          @Override
+          public void onPosterLoaded(String id, PosterFrameCache.Poster poster) {
+            if (poster != null && !videoRendered && player != null
+                && id.equals(player.getCurrentMediaId())) {
+              showPoster(poster.bitmap);
+            }
+          }
+        });
+  }
+
+  private void showPoster(Bitmap bitmap) {
+    hidePoster(false);
+    if (posterView == null) {
+      posterView = new ImageView(getContext());
+      posterView.setScaleType(ImageView.ScaleType.FIT_XY);//same aspect as surface
+      aspectRatioView.addView(posterView, aspectRatioView.indexOfChild(surfaceView) + 1,
+          new ViewGroup.LayoutParams(
+              ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+    }
+    PosterFrameCache.get(getContext()).pin(bitmap);
+    posterBitmap = bitmap;
+    posterView.setImageBitmap(bitmap);
+    if (VERSION.SDK_INT >= VERSION_CODES.HONEYCOMB_MR1) {
+      cancelPosterFade();
+    }
+    posterView.setVisibility(VISIBLE);
+  }
+
+  /**
+   * @param fade true: fade out (API 12+)
+   */
+  private void hidePoster(boolean fade) {
+    if (posterView == null || posterBitmap == null) {
+      return;
+    }
+    if (fade && VERSION.SDK_INT >= VERSION_CODES.HONEYCOMB_MR1) {
+      fadePoster();
+    } else {
+      if (VERSION.SDK_INT >= VERSION_CODES.HONEYCOMB_MR1) {
+        cancelPosterFade();
+      }
+      releasePoster();
+    }
+  }
+
+  private void releasePoster() {
+    posterView.setVisibility(GONE);
+    posterView.setImageDrawable(null);
+    if (posterBitmap != null) {
+      PosterFrameCache.get(getContext()).unpin(posterBitmap);
+      posterBitmap = null;
+    }
+  }
+
+  @TargetApi(VERSION_CODES.HONEYCOMB_MR1)
+  private void fadePoster() {
+    final Bitmap fading = posterBitmap;
+    posterView.animate().alpha(0f).setDuration(POSTER_FADE_MS)
+        .setListener(new AnimatorListenerAdapter() {
+          @Override
+          public void onAnimationEnd(Animator animation) {
+            if (posterBitmap == fading) {
+              releasePoster();
+            }
+          }
+        });
+  }
+
+  @TargetApi(VERSION_CODES.HONEYCOMB_MR1)
+  private void cancelPosterFade() {
+    posterView.animate().setListener(null).cancel();
+    posterView.setAlpha(1f);
+  }
+
+  @Override
+  protected void onDetachedFromWindow() {
+    super.onDetachedFromWindow();
+    cancelArtwork();
+    hidePoster(false);
+  }
+
   // ============================@Player@============================
   @Override
   public PlayerView setPlayer(IPlayer player) {
@@ -230,17 +450,24 @@ public final class PlayerView extends APlayerView<PlayerView> {
       return this;
     }
     if (this.player != null) {
+      capturePoster();
       this.player.removeListener(componentListener);
-      this.player.clearVideo();
+      if (!isHandoffPlayer(this.player)) {
+        this.player.clearVideo();
+      }//handoff: output moved by next attach, no clear
     }
     this.player = player;
+    updateArtwork();
+    updatePoster();
 
     if (useControlGroup) {
       controlGroupView.setPlayer(player);
     }
 
     if (player != null) {
-      if (surfaceView instanceof TextureView) {
+      if (isHandoffPlayer(player)) {
+        surfaceHandoff.attach(surfaceView);
+      } else if (surfaceView instanceof TextureView) {
         player.setVideo((TextureView) surfaceView);
       } else if (surfaceView instanceof SurfaceView) {
         player.setVideo((SurfaceView) surfaceView);
@@ -250,6 +477,29 @@ public final class PlayerView extends APlayerView<PlayerView> {
     return this;
   }
 
+  // =========@SurfaceHandoff@=========
+  private SurfaceHandoff surfaceHandoff;
+
+  /**
+   * @param surfaceHandoff non null -> the handoff's player video output move to this view via
+   * {@link SurfaceHandoff#attach(View)}, never clearVideo/setVideo (decoder keeps running)
+   */
+  public PlayerView setSurfaceHandoff(SurfaceHandoff surfaceHandoff) {
+    this.surfaceHandoff = surfaceHandoff;
+    if (surfaceHandoff != null && isHandoffPlayer(player)) {
+      surfaceHandoff.attach(surfaceView);
+    }
+    return this;
+  }
+
+  public SurfaceHandoff getSurfaceHandoff() {
+    return surfaceHandoff;
+  }
+
+  private boolean isHandoffPlayer(IPlayer player) {
+    return surfaceHandoff != null && player != null && surfaceHandoff.getPlayer() == player;
+  }
+
   // ============================@ComponentListener@============================
   private final ComponentListener componentListener;
 
@@ -280,8 +530,47 @@ public final class PlayerView extends APlayerView<PlayerView> {
           if (shutterView != null) {
             shutterView.setVisibility(VISIBLE);
           }
+          updateArtwork();
+          updatePoster();
           break;
       }
     }
+
+    @Override
+    public boolean onInfo(int what, int extra) {
+      if (what == IMediaPlayer.MEDIA_INFO_VIDEO_RENDERING_START && player != null) {
+        videoRendered = true;
+        renderedMediaId = player.getCurrentMediaId();
+        hidePoster(true);
+      }
+      return super.onInfo(what, extra);
+    }
+
+    @Override
+    public boolean onPlayProgress(long position, long duration) {
+      lastPosition = position;
+      playedToEnd = false;//replaying
+      return super.onPlayProgress(position, duration);
+    }
+
+    @Override
+    public void onSeekComplete() {
+      super.onSeekComplete();
+      playedToEnd = false;
+    }
+
+    @Override
+    public int onCompletion() {
+      playedToEnd = true;
+      return super.onCompletion();
+    }
+
+    @Override
+    public void onNotificationRequired(int order) {
+      super.onNotificationRequired(order);
+      if (order == 0) {//stop
+        capturePoster();
+      }
+    }
   }
 }
\ No newline at end of file
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.video;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.net.Uri;
+import android.view.Gravity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.LinearLayout;
+import android.widget.PopupWindow;
+import android.widget.TextView;
+import com.jcodeing.kmedia.IMediaPlayer;
+import com.jcodeing.kmedia.IPlayer;
+import com.jcodeing.kmedia.utils.Metrics;
+import com.jcodeing.kmedia.utils.TimeFormatter;
+import com.jcodeing.kmedia.worker.ThumbnailSprites;
+
+/**
+ * Default scrub preview: popup above the progress view, thumbnail ({@link ThumbnailSprites}) of
+ * the pending position and its time. Without thumbnail yet, time only.
+ * <pre>
+ * e.g.
+ * controlGroup.setScrubPreview(new ScrubPreviewPopup(context));
+ * </pre>
+ */
+public class ScrubPreviewPopup implements AControlGroupView.ScrubPreview,
+    ThumbnailSprites.Listener {
+
+  private final ThumbnailSprites thumbnailSprites;
+  private final PopupWindow popup;
+  private final LinearLayout content;
+  private final ImageView thumbView;
+  private final TextView timeView;
+  private final TimeFormatter timeFormatter = new TimeFormatter();
+  private final Bitmap thumb;
+  private final int[] location = new int[2];
+  private final int margin;
+
+  public ScrubPreviewPopup(Context context) {
+    thumbnailSprites = ThumbnailSprites.get(context);
+    thumb = Bitmap.createBitmap(thumbnailSprites.getThumbWidth(),
+        thumbnailSprites.getThumbHeight(), Bitmap.Config.RGB_565);
+    margin = Metrics.dp2px(context, 8f);
+    // =========@View@=========
+    content = new LinearLayout(context);
+    content.setOrientation(LinearLayout.VERTICAL);
+    content.setGravity(Gravity.CENTER_HORIZONTAL);
+    content.setBackgroundColor(0xCC000000);
+    int padding = Metrics.dp2px(context, 2f);
+    content.setPadding(padding, padding, padding, padding);
+    thumbView = new ImageView(context);
+    thumbView.setImageBitmap(thumb);
+    thumbView.setScaleType(ImageView.ScaleType.FIT_CENTER);
+    content.addView(thumbView, new LinearLayout.LayoutParams(
+        thumbnailSprites.getThumbWidth(), thumbnailSprites.getThumbHeight()));
+    timeView = new TextView(context);
+    timeView.setTextColor(Color.WHITE);
+    timeView.setGravity(Gravity.CENTER);
+    content.addView(timeView, new LinearLayout.LayoutParams(
+        ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+    popup = new PopupWindow(content,
+        ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+    popup.setTouchable(false);
+    popup.setClippingEnabled(true);
+  }
+
+  // ============================@Scrub@============================
+  private View anchor;
+  private ThumbnailSprites.Sprites sprites;
+  private long position;
+  private long duration;
+
+  @Override
+  public void onScrubStart(AControlGroupView controlGroup) {
+    anchor = controlGroup.getProgressView();
+    if (anchor == null) {
+      anchor = controlGroup;
+    }
+    openSprites(controlGroup.getPlayer());
+    thumbView.setVisibility(View.GONE);
+  }
+
+  private void openSprites(IPlayer player) {
+    if (sprites != null) {
+      sprites.removeListener(this);
+      sprites = null;
+    }
+    IMediaPlayer internalPlayer = player != null ? player.internalPlayer() : null;
+    String mediaId = player != null ? player.getCurrentMediaId() : null;
+    Uri uri = internalPlayer != null ? internalPlayer.getDataSource() : null;
+    if (mediaId != null && uri != null) {
+      sprites = thumbnailSprites.open(mediaId, uri);
+      sprites.addListener(this);
+      sprites.generate();
+    }
+  }
+
+  @Override
+  public void onScrub(long position, long duration) {
+    this.position = position;
+    this.duration = duration;
+    if (timeFormatter.update(position)) {
+      timeView.setText(timeFormatter.chars(), 0, timeFormatter.length());
+    }
+    updateThumb();
+    updateLocation();
+  }
+
+  @Override
+  public void onScrubEnd() {
+    if (popup.isShowing()) {
+      popup.dismiss();
+    }
+    if (sprites != null) {
+      sprites.removeListener(this);//keep generating, next scrub instant
+      sprites = null;
+    }
+    anchor = null;
+  }
+
+  @Override
+  public void onThumbnailsChanged(ThumbnailSprites.Sprites sprites) {
+    if (sprites == this.sprites && popup.isShowing()) {
+      updateThumb();
+    }
+  }
+
+  private void updateThumb() {
+    if (sprites == null) {
+      return;
+    }
+    sprites.setFocusPosition(position);
+    if (sprites.getThumbnail(position, thumb)) {
+      if (thumbView.getVisibility() != View.VISIBLE) {
+        thumbView.setVisibility(View.VISIBLE);
+      }
+      thumbView.invalidate();
+    }
+  }
+
+  private void updateLocation() {
+    if (anchor == null || anchor.getWindowToken() == null) {
+      return;
+    }
+    content.measure(View.MeasureSpec.UNSPECIFIED, View.MeasureSpec.UNSPECIFIED);
+    int width = content.getMeasuredWidth();
+    int height = content.getMeasuredHeight();
+    anchor.getLocationInWindow(location);
+    float fraction = duration > 0 ? Math.min(1f, (float) position / duration) : 0;
+    int x = location[0] + Math.round(anchor.getWidth() * fraction) - width / 2;
+    x = Math.max(location[0], Math.min(x, location[0] + anchor.getWidth() - width));
+    int y = Math.max(0, location[1] - height - margin);
+    if (popup.isShowing()) {
+      popup.update(x, y, -1, -1);
+    } else {
+      popup.showAtLocation(anchor, Gravity.NO_GRAVITY, x, y);
+    }
+  }
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.video;
+
+import android.annotation.TargetApi;
+import android.graphics.SurfaceTexture;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
+import android.os.SystemClock;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+import android.view.TextureView;
+import android.view.View;
+import com.jcodeing.kmedia.IMediaPlayer;
+import com.jcodeing.kmedia.IPlayer;
+import com.jcodeing.kmedia.utils.Histogram;
+import com.jcodeing.kmedia.utils.L;
+
+/**
+ * Move a playing player's video output between surface views (PlayerView <-> floating window)
+ * without clearVideo/setVideo, the decoder keeps running. <ul> <li>TextureView -> TextureView: old
+ * view detached, its SurfaceTexture kept and re-parented into the new view (API 16+), no decoder
+ * call at all <li>otherwise: switch queued until the new surface available, then one
+ * setSurface/setDisplay (never via null) <ul/> Gap between the last frame on the old output and the
+ * first frame on the new one, recorded in {@link #getGapHistogram()} (TextureView target; SurfaceView
+ * target has no frame callback, time until its surface attached).
+ * <pre>
+ * e.g.
+ * handoff = new SurfaceHandoff(player);
+ * playerView.setSurfaceHandoff(handoff);
+ * // =========@to floating window
+ * videoFloatingWindowView.setPlayer(player, handoff);
+ * // =========@back
+ * handoff.attach(playerView.getSurfaceView());
+ * </pre>
+ * WARNING: installs its own {@link TextureView.SurfaceTextureListener} on attached TextureViews.
+ */
+public class SurfaceHandoff {
+
+  private static final long UNSET = -1;
+
+  private final IPlayer player;
+
+  public SurfaceHandoff(IPlayer player) {
+    this.player = player;
+  }
+
+  public IPlayer getPlayer() {
+    return player;
+  }
+
+  // ============================@Output@============================
+  /**
+   * view the decoder renders into
+   */
+  private View current;
+  /**
+   * current is TextureView: its SurfaceTexture, Surface wrapper given to the decoder
+   */
+  private SurfaceTexture currentTexture;
+  private Surface currentSurface;
+  /**
+   * current TextureView detached, currentTexture kept (orphan) for re-parent
+   */
+  private boolean currentTextureDetached;
+  /**
+   * waiting surface available
+   */
+  private View pending;
+
+  public View getCurrentView() {
+    return current;
+  }
+
+  public boolean isPending() {
+    return pending != null;
+  }
+
+  /**
+   * Switch video output to surfaceView (SurfaceView/TextureView), queued until its surface
+   * available. (Main thread)
+   */
+  public void attach(View surfaceView) {
+    if (surfaceView == null || (surfaceView == current && pending == null)) {
+      return;
+    }
+    pending = null;
+    switchStart = player.isPlaying() && lastFrameTime != UNSET ? now() : UNSET;
+    if (VERSION.SDK_INT >= VERSION_CODES.ICE_CREAM_SANDWICH
+        && surfaceView instanceof TextureView) {
+      attachTexture((TextureView) surfaceView);
+    } else if (surfaceView instanceof SurfaceView) {
+      attachSurfaceView((SurfaceView) surfaceView);
+    }
+  }
+
+  private IMediaPlayer internalPlayer() {
+    return player.internalPlayer();
+  }
+
+  // =========@TextureView@=========
+  private TextureView.SurfaceTextureListener textureListener;
+
+  @TargetApi(VERSION_CODES.ICE_CREAM_SANDWICH)
+  private void attachTexture(TextureView to) {
+    if (textureListener == null) {
+      textureListener = new TextureListener();
+    }
+    to.setSurfaceTextureListener(textureListener);
+    if (reparent(to)) {
+      return;
+    }
+    if (to.isAvailable()) {
+      outputTexture(to, to.getSurfaceTexture());
+    } else {
+      pending = to;//-> onSurfaceTextureAvailable
+    }
+  }
+
+  /**
+   * @return current SurfaceTexture (orphan) moved into to
+   */
+  @TargetApi(VERSION_CODES.JELLY_BEAN)
+  private boolean reparent(TextureView to) {
+    if (VERSION.SDK_INT < VERSION_CODES.JELLY_BEAN
+        || currentTexture == null || !currentTextureDetached) {
+      return false;
+    }
+    try {
+      if (to.getSurfaceTexture() != currentTexture) {
+        to.setSurfaceTexture(currentTexture);//to's own texture released by TextureView
+      }
+    } catch (Exception e) {
+      //IllegalArgument(released)...
+      L.printStackTrace(e);
+      return false;
+    }
+    current = to;
+    currentTextureDetached = false;
+    return true;
+  }
+
+  @TargetApi(VERSION_CODES.ICE_CREAM_SANDWICH)
+  private void outputTexture(TextureView to, SurfaceTexture texture) {
+    IMediaPlayer mp = internalPlayer();
+    if (mp == null || texture == null) {
+      return;
+    }
+    Surface surface = new Surface(texture);
+    try {
+      mp.setSurface(surface);
+    } catch (Exception e) {
+      //IllegalState
+      L.printStackTrace(e);
+      surface.release();
+      return;
+    }
+    releaseCurrent();
+    current = to;
+    currentTexture = texture;
+    currentSurface = surface;
+  }
+
+  @TargetApi(VERSION_CODES.ICE_CREAM_SANDWICH)
+  private final class TextureListener implements TextureView.SurfaceTextureListener {
+
+    @Override
+    public void onSurfaceTextureAvailable(SurfaceTexture surface, int width, int height) {
+      if (pending instanceof TextureView
+          && ((TextureView) pending).getSurfaceTexture() == surface) {
+        TextureView to = (TextureView) pending;
+        pending = null;
+        outputTexture(to, surface);
+      }
+    }
+
+    @Override
+    public void onSurfaceTextureSizeChanged(SurfaceTexture surface, int width, int height) {
+      //Do nothing
+    }
+
+    @Override
+    public boolean onSurfaceTextureDestroyed(SurfaceTexture surface) {
+      if (surface == currentTexture) {
+        currentTextureDetached = true;
+        return false;//keep, decoder still renders into it, next attach re-parent
+      }
+      return true;
+    }
+
+    @Override
+    public void onSurfaceTextureUpdated(SurfaceTexture surface) {
+      if (surface == currentTexture) {
+        onFrame();
+      }
+    }
+  }
+
+  // =========@SurfaceView@=========
+  private SurfaceHolder.Callback holderCallback;
+
+  private void attachSurfaceView(SurfaceView to) {
+    SurfaceHolder holder = to.getHolder();
+    if (holderCallback == null) {
+      holderCallback = new HolderCallback();
+    }
+    holder.removeCallback(holderCallback);
+    holder.addCallback(holderCallback);
+    Surface surface = holder.getSurface();
+    if (surface != null && surface.isValid()) {
+      outputDisplay(to);
+    } else {
+      pending = to;//-> surfaceCreated
+    }
+  }
+
+  private void outputDisplay(SurfaceView to) {
+    IMediaPlayer mp = internalPlayer();
+    if (mp == null) {
+      return;
+    }
+    mp.setDisplay(to.getHolder());
+    releaseCurrent();
+    current = to;
+    //no frame callback, gap = until surface attached
+    onFrame();
+    lastFrameTime = UNSET;
+  }
+
+  private final class HolderCallback implements SurfaceHolder.Callback {
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+      if (pending instanceof SurfaceView && ((SurfaceView) pending).getHolder() == holder) {
+        SurfaceView to = (SurfaceView) pending;
+        pending = null;
+        outputDisplay(to);
+      }
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+      //Do nothing
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+      if (current instanceof SurfaceView && ((SurfaceView) current).getHolder() == holder) {
+        IMediaPlayer mp = internalPlayer();
+        if (mp != null) {
+          mp.setDisplay(null);//surface gone, don't render into it
+        }
+        current = null;
+      }
+    }
+  }
+
+  /**
+   * Old output no longer used by the decoder
+   */
+  private void releaseCurrent() {
+    if (currentSurface != null) {
+      currentSurface.release();
+      currentSurface = null;
+    }
+    if (currentTexture != null && currentTextureDetached) {
+      currentTexture.release();//orphan, no view owns it
+    }
+    currentTexture = null;
+    currentTextureDetached = false;
+  }
+
+  // ============================@Gap@============================
+  private final Histogram gapHistogram = new Histogram();
+  private long switchStart = UNSET;
+  private long lastFrameTime = UNSET;
+  private long lastGapMs = UNSET;
+
+  private static long now() {
+    return SystemClock.elapsedRealtime();
+  }
+
+  private void onFrame() {
+    long now = now();
+    if (switchStart != UNSET && lastFrameTime != UNSET) {
+      lastGapMs = now - lastFrameTime;
+      gapHistogram.record(lastGapMs);
+    }
+    switchStart = UNSET;
+    lastFrameTime = now;
+  }
+
+  /**
+   * @return ms between frames of the last switch (while playing), -1 none
+   */
+  public long getLastGapMs() {
+    return lastGapMs;
+  }
+
+  public Histogram getGapHistogram() {
+    return gapHistogram;
+  }
+
+  // ============================@Release@============================
+
+  /**
+   * Drop listeners and kept surfaces, decoder output untouched (player release by caller).
+   */
+  @TargetApi(VERSION_CODES.ICE_CREAM_SANDWICH)
+  public void release() {
+    if (VERSION.SDK_INT >= VERSION_CODES.ICE_CREAM_SANDWICH) {
+      if (current instanceof TextureView) {
+        ((TextureView) current).setSurfaceTextureListener(null);
+      }
+      if (pending instanceof TextureView) {
+        ((TextureView) pending).setSurfaceTextureListener(null);
+      }
+    }
+    if (holderCallback != null) {
+      if (current instanceof SurfaceView) {
+        ((SurfaceView) current).getHolder().removeCallback(holderCallback);
+      }
+      if (pending instanceof SurfaceView) {
+        ((SurfaceView) pending).getHolder().removeCallback(holderCallback);
+      }
+    }
+    if (currentTextureDetached) {
+      releaseCurrent();
+    }
+    current = null;
+    pending = null;
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.view;
+
+import android.annotation.TargetApi;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
+import android.os.SystemClock;
+import android.view.Choreographer;
+import android.view.View;
+import android.widget.ProgressBar;
+
+/**
+ * Vsync driven progress for {@link ProgressBar}/{@link ProgressAny}. <p>Player samples (e.g. once
+ * per second from onPlayProgress) are interpolated locally every frame while playing, so the bar
+ * moves smoothly without polling the player faster. Frames stop when not playing or {@link
+ * #shouldRender()} is false (hidden, detached), next {@link #update} restarts them.<p/>
+ * <pre>
+ * e.g.
+ * renderer.setTargets(seekBar, null);
+ * // =========@onPlayProgress
+ * renderer.update(position, duration, player.isPlaying(), player.getPlaybackSpeed());
+ * </pre>
+ * Choreographer on API 16+, View.postDelayed(16ms) before.
+ */
+public class SmoothProgressRenderer {
+
+  /**
+   * Recommended max, fine enough for sub-pixel steps on long media
+   */
+  public static final int PROGRESS_MAX = 10000;
+  /**
+   * Extrapolate no further than this past the last sample (player stalled, samples late)
+   */
+  public static final long MAX_EXTRAPOLATION_MS = 1500;
+  /**
+   * A sample behind the shown position by less than this holds the bar (no backward jitter),
+   * more is a real jump (seek)
+   */
+  public static final long BACKWARD_TOLERANCE_MS = 300;
+  private static final long FALLBACK_FRAME_MS = 16;
+
+  protected final View host;
+  private ProgressBar progressBar;
+  private ProgressAny progressAny;
+  private int max = PROGRESS_MAX;
+
+  // =========@Sample@=========
+  private long samplePosition;
+  private long sampleDuration;
+  private long sampleTime;
+  private boolean samplePlaying;
+  private float sampleSpeed = 1;
+  // =========@Render@=========
+  private long renderedPosition = -1;
+  private int renderedProgress = -1;
+  private boolean frameScheduled;
+
+  /**
+   * @param host view to post frames on (API < 16) and default visibility check
+   */
+  public SmoothProgressRenderer(View host) {
+    this.host = host;
+  }
+
+  public void setTargets(ProgressBar progressBar, ProgressAny progressAny) {
+    this.progressBar = progressBar;
+    this.progressAny = progressAny;
+    renderedProgress = -1;
+  }
+
+  /**
+   * Same max as set to the targets
+   */
+  public void setMax(int max) {
+    this.max = max;
+    renderedProgress = -1;
+  }
+
+  /**
+   * New player sample, renders it and (re)starts frames while playing
+   *
+   * @param speed playback speed, <= 0 taken as 1 (not supported)
+   */
+  public void update(long position, long duration, boolean playing, float speed) {
+    long now = SystemClock.uptimeMillis();
+    if (!playing || renderedPosition < 0 || position > renderedPosition
+        || renderedPosition - position > BACKWARD_TOLERANCE_MS) {
+      renderedPosition = -1;//render sample as is
+    }
+    samplePosition = position;
+    sampleDuration = duration;
+    sampleTime = now;
+    samplePlaying = playing;
+    sampleSpeed = speed > 0 ? speed : 1;
+    render(now);
+    if (playing) {
+      scheduleFrame();
+    } else {
+      stop();
+    }
+  }
+
+  /**
+   * Stop frames (e.g. user dragging), next {@link #update} restarts and sets the targets again
+   */
+  public void stop() {
+    renderedProgress = -1;//targets may be changed meanwhile
+    if (frameScheduled) {
+      frameScheduled = false;
+      if (VERSION.SDK_INT >= VERSION_CODES.JELLY_BEAN) {
+        removeFrameCallbackV16();
+      } else {
+        host.removeCallbacks(frameAction);
+      }
+    }
+  }
+
+  /**
+   * @return false: frames stop, default host shown and attached
+   */
+  protected boolean shouldRender() {
+    return host.isShown() && host.getWindowToken() != null;
+  }
+
+  // ============================@Frame@============================
+  private void scheduleFrame() {
+    if (frameScheduled) {
+      return;
+    }
+    frameScheduled = true;
+    if (VERSION.SDK_INT >= VERSION_CODES.JELLY_BEAN) {
+      postFrameCallbackV16();
+    } else {
+      host.postDelayed(frameAction, FALLBACK_FRAME_MS);
+    }
+  }
+
+  private void doFrame(long frameTimeMs) {
+    frameScheduled = false;
+    if (!samplePlaying || !shouldRender()) {
+      return;//not reposted, update(..) restarts
+    }
+    render(frameTimeMs);
+    scheduleFrame();
+  }
+
+  private void render(long timeMs) {
+    long position = samplePosition;
+    if (samplePlaying) {
+      long elapsed = Math.min(Math.max(timeMs - sampleTime, 0), MAX_EXTRAPOLATION_MS);
+      position += (long) (elapsed * sampleSpeed);
+    }
+    if (sampleDuration > 0 && position > sampleDuration) {
+      position = sampleDuration;
+    }
+    if (renderedPosition >= 0 && position < renderedPosition) {
+      position = renderedPosition;//hold, sample slightly behind
+    }
+    renderedPosition = position;
+    int progress = sampleDuration <= 0 ? 0 : (int) (position * max / sampleDuration);
+    if (progress != renderedProgress) {
+      renderedProgress = progress;
+      if (progressBar != null) {
+        progressBar.setProgress(progress);
+      }
+      if (progressAny != null) {
+        progressAny.setProgress(progress);
+      }
+    }
+  }
+
+  private final Runnable frameAction = new Runnable() {
+    @Override
+    public void run() {
+      doFrame(SystemClock.uptimeMillis());
+    }
+  };
+
+  // ============================@Choreographer(16)
+  private Object frameCallback;
+
+  @TargetApi(VERSION_CODES.JELLY_BEAN)
+  private void postFrameCallbackV16() {
+    if (frameCallback == null) {
+      frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+          SmoothProgressRenderer.this.doFrame(frameTimeNanos / 1000000);
+        }
+      };
+    }
+    Choreographer.getInstance().postFrameCallback((Choreographer.FrameCallback) frameCallback);
+  }
+
+  @TargetApi(VERSION_CODES.JELLY_BEAN)
+  private void removeFrameCallbackV16() {
+    if (frameCallback != null) {
+      Choreographer.getInstance()
+          .removeFrameCallback((Choreographer.FrameCallback) frameCallback);
+    }
+  }
+}
@@ -15,8 +15,15 @@
  */
 package com.jcodeing.kmedia.window;
 
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
+import android.view.Choreographer;
 import android.view.WindowManager;
 import android.view.WindowManager.LayoutParams;
 import com.jcodeing.kmedia.assist.C;
@@ -53,8 +60,11 @@ public class FloatingWindow {
     if (view == null || layoutParams == null) {
       return;
     }
+    cancelFrame();
     try {
       windowManager.addView(view, layoutParams);
+      appliedX = layoutParams.x;
+      appliedY = layoutParams.y;
       view.onAdded();
     } catch (Exception e) {
       //Do nothing
@@ -83,11 +93,15 @@ public class FloatingWindow {
    * need from {@link #setLayoutParams(LayoutParams)}->layoutParams</p>
    */
   public void updateViewLayout() {
+    cancelFrame();
     if (view == null || layoutParams == null) {
       return;
     }
+    updateApplyCount++;
     try {
       windowManager.updateViewLayout(view, layoutParams);
+      appliedX = layoutParams.x;
+      appliedY = layoutParams.y;
       view.onUpdated();
     } catch (Exception e) {//IllegalArgument
       try {
@@ -102,6 +116,7 @@ public class FloatingWindow {
     if (view == null) {
       return;
     }
+    cancelFrame();
     try {
       windowManager.removeView(view);
       view.onRemoved();
@@ -167,7 +182,10 @@ public class FloatingWindow {
       }
 
       if (isValid) {
-        updateViewLayout();
+        if (xIsAscending || yIsAscending) {
+          onMoveSample(xIsAscending ? x : 0, yIsAscending ? y : 0);
+        }
+        requestViewLayout();
       }
     }
   }
@@ -282,7 +300,7 @@ public class FloatingWindow {
         }
         checkMinMaxWidthHeight();
       }
-      updateViewLayout();
+      requestViewLayout();
     }
   }
 
@@ -292,4 +310,203 @@ public class FloatingWindow {
       updateViewLayout();
     }
   }
-}
\ No newline at end of file
+
+  // ============================@Batch Update@============================
+  // Drag move/resize: at most one updateViewLayout (system server IPC) per display frame,
+  // touch samples in between only accumulate into layoutParams.
+  private static final long FALLBACK_FRAME_MS = 16;
+  /**
+   * Predicted ahead of last touch sample, at most
+   */
+  private static final long MAX_PREDICTION_MS = 20;
+  /**
+   * Touch samples further apart, velocity reset
+   */
+  private static final long VELOCITY_RESET_MS = 100;
+
+  private boolean batchUpdates = true;
+  private boolean predictionEnabled = true;
+  private boolean frameScheduled;
+  private Handler handler;
+  // =========@Applied
+  private int appliedX;
+  private int appliedY;
+  // =========@Counter
+  private long updateRequestCount;
+  private long updateApplyCount;
+
+  /**
+   * @param batchUpdates false: every drag move/resize updateViewLayout immediately (default true)
+   */
+  public void setBatchUpdates(boolean batchUpdates) {
+    this.batchUpdates = batchUpdates;
+    if (!batchUpdates) {
+      flushViewLayout();
+    }
+  }
+
+  /**
+   * @param predictionEnabled drag location extrapolated by touch velocity to frame time (default
+   * true), dropped by {@link #flushViewLayout()}
+   */
+  public void setPredictionEnabled(boolean predictionEnabled) {
+    this.predictionEnabled = predictionEnabled;
+  }
+
+  /**
+   * layoutParams changed, apply on next display frame (coalesced)
+   */
+  public void requestViewLayout() {
+    updateRequestCount++;
+    if (!batchUpdates) {
+      updateViewLayout();
+      return;
+    }
+    scheduleFrame();
+  }
+
+  /**
+   * Apply pending layoutParams now, without prediction. (e.g. touch up)
+   */
+  public void flushViewLayout() {
+    velocityX = velocityY = 0;
+    if (frameScheduled || layoutParams != null
+        && (layoutParams.x != appliedX || layoutParams.y != appliedY)) {
+      updateViewLayout();
+    }
+  }
+
+  /**
+   * @return layoutParams x/y - window x/y shown (pending frame, prediction)
+   */
+  public int getPendingDeltaX() {
+    return layoutParams != null ? layoutParams.x - appliedX : 0;
+  }
+
+  public int getPendingDeltaY() {
+    return layoutParams != null ? layoutParams.y - appliedY : 0;
+  }
+
+  /**
+   * @return layout updates requested (drag move/resize...)
+   */
+  public long getUpdateRequestCount() {
+    return updateRequestCount;
+  }
+
+  /**
+   * @return updateViewLayout IPCs made
+   */
+  public long getUpdateApplyCount() {
+    return updateApplyCount;
+  }
+
+  /**
+   * @return updateViewLayout IPCs avoided by coalescing
+   */
+  public long getUpdatesAvoided() {
+    return Math.max(0, updateRequestCount - updateApplyCount);
+  }
+
+  public void resetUpdateCounters() {
+    updateRequestCount = 0;
+    updateApplyCount = 0;
+  }
+
+  // =========@Prediction
+  private float velocityX;//px/ms
+  private float velocityY;
+  private long lastSampleTime;
+
+  private void onMoveSample(int dx, int dy) {
+    long now = SystemClock.uptimeMillis();
+    long dt = now - lastSampleTime;
+    lastSampleTime = now;
+    if (dt <= 0 || dt > VELOCITY_RESET_MS) {
+      velocityX = velocityY = 0;
+      return;
+    }
+    velocityX = velocityX * 0.5f + dx * 0.5f / dt;
+    velocityY = velocityY * 0.5f + dy * 0.5f / dt;
+  }
+
+  private void applyFrame(long frameTimeMs) {
+    frameScheduled = false;
+    if (view == null || layoutParams == null) {
+      return;
+    }
+    int x = layoutParams.x;
+    int y = layoutParams.y;
+    long ahead = frameTimeMs - lastSampleTime;
+    if (predictionEnabled && ahead >= 0 && ahead <= VELOCITY_RESET_MS) {
+      ahead = Math.min(ahead + FALLBACK_FRAME_MS, MAX_PREDICTION_MS);//shown next frame
+      layoutParams.x += Math.round(velocityX * ahead);
+      layoutParams.y += Math.round(velocityY * ahead);
+    }
+    updateViewLayout();
+    //prediction only shown, touch accumulates on the real position
+    layoutParams.x = x;
+    layoutParams.y = y;
+  }
+
+  private void scheduleFrame() {
+    if (frameScheduled) {
+      return;
+    }
+    frameScheduled = true;
+    if (VERSION.SDK_INT >= VERSION_CODES.JELLY_BEAN) {
+      postFrameCallbackV16();
+    } else {
+      getHandler().postDelayed(frameAction, FALLBACK_FRAME_MS);
+    }
+  }
+
+  private void cancelFrame() {
+    if (frameScheduled) {
+      frameScheduled = false;
+      if (VERSION.SDK_INT >= VERSION_CODES.JELLY_BEAN) {
+        removeFrameCallbackV16();
+      } else {
+        getHandler().removeCallbacks(frameAction);
+      }
+    }
+  }
+
+  private Handler getHandler() {
+    if (handler == null) {
+      handler = new Handler(Looper.getMainLooper());
+    }
+    return handler;
+  }
+
+  private final Runnable frameAction = new Runnable() {
+    @Override
+    public void run() {
+      applyFrame(SystemClock.uptimeMillis());
+    }
+  };
+
+  // =========@Choreographer(16)
+  private Object frameCallback;
+
+  @TargetApi(VERSION_CODES.JELLY_BEAN)
+  private void postFrameCallbackV16() {
+    if (frameCallback == null) {
+      frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+          applyFrame(frameTimeNanos / 1000000);
+        }
+      };
+    }
+    Choreographer.getInstance().postFrameCallback((Choreographer.FrameCallback) frameCallback);
+  }
+
+  @TargetApi(VERSION_CODES.JELLY_BEAN)
+  private void removeFrameCallbackV16() {
+    if (frameCallback != null) {
+      Choreographer.getInstance()
+          .removeFrameCallback((Choreographer.FrameCallback) frameCallback);
+    }
+  }
+}
@@ -125,6 +125,9 @@ public class FloatingWindowView extends LocalFrameLayout {
 
         // =========@boundary treatment
         getLocationOnScreen(locationOnScreen);
+        //batched: layoutParams may be ahead of the window shown
+        locationOnScreen[0] += floatingWindow.getPendingDeltaX();
+        locationOnScreen[1] += floatingWindow.getPendingDeltaY();
 
         boolean isValid = false;
         if (dealX > 0) {//→ right
@@ -166,6 +169,13 @@ public class FloatingWindowView extends LocalFrameLayout {
       return true;
     }
 
+    @Override
+    protected boolean onTouchUp(View v, MotionEvent event) {
+      if (floatingWindow != null) {
+        floatingWindow.flushViewLayout();//settle, drop prediction
+      }
+      return super.onTouchUp(v, event);
+    }
   }
 
   protected View initConfigGetDragSizeView() {
@@ -203,6 +213,14 @@ public class FloatingWindowView extends LocalFrameLayout {
         boolean heightIsAscending) {
       floatingWindow.setLayoutParamsSize(width, height, widthIsAscending, heightIsAscending);
     }
+
+    @Override
+    protected boolean onTouchUp(View v, MotionEvent event) {
+      if (floatingWindow != null) {
+        floatingWindow.flushViewLayout();
+      }
+      return super.onTouchUp(v, event);
+    }
   }
 
   // ============================@Callback@============================
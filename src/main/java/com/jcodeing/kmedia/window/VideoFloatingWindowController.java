@@ -21,6 +21,7 @@ import android.view.View;
 import android.view.View.OnClickListener;
 import com.jcodeing.kmedia.IPlayer;
 import com.jcodeing.kmedia.R;
+import com.jcodeing.kmedia.video.SurfaceHandoff;
 
 public class VideoFloatingWindowController extends FloatingWindowController implements
     OnClickListener {
@@ -41,14 +42,27 @@ public class VideoFloatingWindowController extends FloatingWindowController impl
    * @param player {@link IPlayer} for internal video floating window view
    */
   public boolean show(IPlayer player) {
+    return show(player, null);
+  }
+
+  /**
+   * Show a video floating window view, video output moved by surfaceHandoff (decoder keeps
+   * running). hide() -> move back first: surfaceHandoff.attach(originPlayerView.getSurfaceView())
+   *
+   * @param surfaceHandoff for player, null -> clearVideo/setVideo
+   */
+  public boolean show(IPlayer player, SurfaceHandoff surfaceHandoff) {
     this.player = player;
+    this.surfaceHandoff = surfaceHandoff;
     return show();
   }
 
+  private SurfaceHandoff surfaceHandoff;
+
   @Override
   public boolean show() {
     if (super.show() && floatingView != null) {
-      floatingView.setPlayer(player);
+      floatingView.setPlayer(player, surfaceHandoff);
       return true;
     }
     return false;
@@ -60,7 +74,7 @@ public class VideoFloatingWindowController extends FloatingWindowController impl
   @Override
   public boolean hide() {
     super.hide();
-    floatingView.setPlayer(null);
+    floatingView.setPlayer(null, surfaceHandoff);
     if (listener != null) {
       listener.onHide(this);
     }//handle onHide()
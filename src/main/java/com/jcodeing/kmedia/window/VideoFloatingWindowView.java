@@ -24,6 +24,7 @@ import com.jcodeing.kmedia.IPlayer;
 import com.jcodeing.kmedia.R;
 import com.jcodeing.kmedia.utils.Metrics;
 import com.jcodeing.kmedia.video.PlayerView;
+import com.jcodeing.kmedia.video.SurfaceHandoff;
 
 /**
  * Default video floating window view <p /> Custom floating window view, can extends {@link
@@ -127,6 +128,30 @@ public class VideoFloatingWindowView extends FloatingWindowView {
     }
   }
 
+  /**
+   * Video output moved here without clearVideo (decoder keeps running), then back via {@link
+   * SurfaceHandoff#attach(View)} on the origin view.
+   *
+   * @param player if == null -> finish
+   * @param surfaceHandoff for player, null -> {@link #setPlayer(IPlayer)}
+   */
+  public void setPlayer(IPlayer player, SurfaceHandoff surfaceHandoff) {
+    if (surfaceHandoff == null) {
+      setPlayer(player);
+      return;
+    }
+    playerView.setSurfaceHandoff(surfaceHandoff);
+    if (player != null) {
+      playerView.setPlayer(player);
+    } else {
+      playerView.finish();
+    }
+  }
+
+  public PlayerView getPlayerView() {
+    return playerView;
+  }
+
   // ============================@Other@============================
   @Override
   protected void onSet(FloatingWindow floatingWindow) {
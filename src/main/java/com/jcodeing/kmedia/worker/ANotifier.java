@@ -21,12 +21,20 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.v7.app.NotificationCompat;
 import android.support.v7.app.NotificationCompat.Builder;
+import android.text.TextUtils;
 import com.jcodeing.kmedia.R;
+import com.jcodeing.kmedia.IPlayer;
 import com.jcodeing.kmedia.assist.NotificationMgrHelper;
 import com.jcodeing.kmedia.definition.IMediaItem;
+import com.jcodeing.kmedia.definition.IMediaQueue;
 import com.jcodeing.kmedia.service.PlayerService;
 import com.jcodeing.kmedia.utils.L;
 
@@ -55,7 +63,7 @@ public abstract class ANotifier extends BroadcastReceiver {
       return;
     }
     final String action = intent.getAction();
-    L.d(TAG, "Received intent with action " + action);
+    L.d(TAG, "Received intent with action {}", action);
     switch (action) {
       case ACTION_PAUSE:
         playerService.player().pause();
@@ -134,6 +142,9 @@ public abstract class ANotifier extends BroadcastReceiver {
         playerService.registerReceiver(this, getAudioControlsIntentFilter());
         playerService.startForeground(NOTIFICATION_ID, notification);
         started = true;
+        postedState.set(playerService.player());
+        lastPostTime = SystemClock.elapsedRealtime();
+        postCount++;
         return 1;//succeed
       }
       return 0;
@@ -149,6 +160,9 @@ public abstract class ANotifier extends BroadcastReceiver {
     }
     if (started) {
       started = false;
+      cancelPendingUpdate();
+      cancelArtwork();
+      postedState.clear();
       try {
         helper.cancel(NOTIFICATION_ID);
         playerService.unregisterReceiver(this);
@@ -160,17 +174,55 @@ public abstract class ANotifier extends BroadcastReceiver {
     }
   }
 
+  /**
+   * Post only if the visible {@link State} changed, and not more often than {@link
+   * #setMinUpdateInterval(long)} (the latest state is posted at the end of the interval).
+   */
   public void updateNotification() {
-    if (isInitSuccess()) {
-      IMediaItem currentMediaItem = playerService.player().getMediaQueue().getCurrentMediaItem();
-      if (mediaItem == currentMediaItem) {
-        updateNotification(false);
-      } else {
-        mediaItem = currentMediaItem;
-        updateNotification(true);
+    if (!isInitSuccess()) {
+      return;
+    }
+    pendingState.set(playerService.player());
+    if (pendingState.equals(postedState)) {
+      cancelPendingUpdate();//changed back before the pending post
+      postsSkippedCount++;
+      return;
+    }
+    long delay = lastPostTime + minUpdateInterval - SystemClock.elapsedRealtime();
+    if (delay > 0) {
+      if (!updatePending) {
+        updatePending = true;
+        getHandler().postDelayed(pendingUpdate, delay);
       }
-      helper.notify(NOTIFICATION_ID, notification);
+      postsCoalescedCount++;
+      return;
     }
+    cancelPendingUpdate();
+    postNotification();
+  }
+
+  /**
+   * Post right now, ignore state diff and min interval
+   */
+  public void updateNotificationNow() {
+    if (isInitSuccess()) {
+      cancelPendingUpdate();
+      postNotification();
+    }
+  }
+
+  private void postNotification() {
+    IMediaItem currentMediaItem = playerService.player().getMediaQueue().getCurrentMediaItem();
+    if (mediaItem == currentMediaItem) {
+      updateNotification(false);
+    } else {
+      mediaItem = currentMediaItem;
+      updateNotification(true);
+    }
+    helper.notify(NOTIFICATION_ID, notification);
+    postedState.set(playerService.player());
+    lastPostTime = SystemClock.elapsedRealtime();
+    postCount++;
   }
 
   /**
@@ -191,6 +243,140 @@ public abstract class ANotifier extends BroadcastReceiver {
    */
   protected abstract void updateNotification(boolean mediaItemChanged);
 
+  // ============================@Rate Limit
+  public static final long DEFAULT_MIN_UPDATE_INTERVAL = 300;//ms
+
+  private long minUpdateInterval = DEFAULT_MIN_UPDATE_INTERVAL;
+  private long lastPostTime;
+  private boolean updatePending;
+  private Handler handler;
+
+  /**
+   * @param minUpdateInterval min interval(ms) between two notification posts, <=0 not limit
+   */
+  public void setMinUpdateInterval(long minUpdateInterval) {
+    this.minUpdateInterval = minUpdateInterval;
+  }
+
+  private Handler getHandler() {
+    if (handler == null) {
+      handler = new Handler(Looper.getMainLooper());
+    }
+    return handler;
+  }
+
+  private final Runnable pendingUpdate = new Runnable() {
+    @Override
+    public void run() {
+      updatePending = false;
+      if (started && isInitSuccess()) {
+        pendingState.set(playerService.player());
+        if (!pendingState.equals(postedState)) {
+          postNotification();
+        }
+      }
+    }
+  };
+
+  private void cancelPendingUpdate() {
+    if (updatePending) {
+      updatePending = false;
+      getHandler().removeCallbacks(pendingUpdate);
+    }
+  }
+
+  // =========@Counter@=========
+  private int postCount;
+  private int postsSkippedCount;
+  private int postsCoalescedCount;
+
+  /**
+   * @return notification posts (start + update)
+   */
+  public int getPostCount() {
+    return postCount;
+  }
+
+  /**
+   * @return update requests avoided, visible state not changed
+   */
+  public int getPostsSkippedCount() {
+    return postsSkippedCount;
+  }
+
+  /**
+   * @return update requests merged into a delayed post (min interval)
+   */
+  public int getPostsCoalescedCount() {
+    return postsCoalescedCount;
+  }
+
+  public void resetCounters() {
+    postCount = 0;
+    postsSkippedCount = 0;
+    postsCoalescedCount = 0;
+  }
+
+  // ============================@State
+
+  /**
+   * What the notification shows, see {@link #addSimpleMediaAction(Builder)} and {@link
+   * #setSimpleMediaInfo(Builder, IMediaItem)}. Override {@link #set(IPlayer)}/{@link
+   * #equals(Object)} if a custom notification shows more.
+   */
+  protected static class State {
+
+    public boolean playing;
+    public boolean multiItem;
+    public String mediaId;
+    public CharSequence title;
+    public CharSequence description;
+
+    protected void set(IPlayer player) {
+      playing = player.isPlaying();
+      IMediaQueue queue = player.getMediaQueue();
+      multiItem = queue.size() > 1;
+      IMediaItem item = queue.getCurrentMediaItem();
+      mediaId = item != null ? item.getMediaId() : null;
+      title = item != null ? item.getTitle() : null;
+      description = item != null ? item.getDescription() : null;
+    }
+
+    protected void clear() {
+      playing = false;
+      multiItem = false;
+      mediaId = null;
+      title = null;
+      description = null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof State)) {
+        return false;
+      }
+      State state = (State) o;
+      return playing == state.playing && multiItem == state.multiItem &&
+          TextUtils.equals(mediaId, state.mediaId) && TextUtils.equals(title, state.title) &&
+          TextUtils.equals(description, state.description);
+    }
+
+    @Override
+    public int hashCode() {
+      return mediaId != null ? mediaId.hashCode() : 0;
+    }
+  }
+
+  protected State postedState = createState();
+  private State pendingState = createState();
+
+  protected State createState() {
+    return new State();
+  }
+
   // ============================@Create
   protected IMediaItem mediaItem;
   protected Notification notification;
@@ -229,10 +415,67 @@ public abstract class ANotifier extends BroadcastReceiver {
   }
 
   /**
-   * WARNING: internal not handle setLargeIcon(.)
+   * Large icon loaded from {@link IMediaItem#getIconUri()} in background, see {@link
+   * #setLoadArtwork(boolean)}
    */
   protected void setSimpleMediaInfo(@NonNull Builder builder, @NonNull IMediaItem mediaItem) {
     builder.setContentTitle(mediaItem.getTitle()).setContentText(mediaItem.getDescription());
+    if (loadArtwork) {
+      setSimpleMediaArtwork(builder, mediaItem);
+    }
+  }
+
+  // ============================@Artwork
+  private boolean loadArtwork = true;
+  private ArtworkLoader.Request artworkRequest;
+  private boolean artworkLoading;
+
+  /**
+   * @param loadArtwork false: not handle setLargeIcon(.)
+   */
+  public void setLoadArtwork(boolean loadArtwork) {
+    this.loadArtwork = loadArtwork;
+  }
+
+  /**
+   * Memory cached: set directly. Otherwise decode off main thread, then rebuild and post if the
+   * item still current. Previous item request cancelled.
+   */
+  protected void setSimpleMediaArtwork(@NonNull final Builder builder,
+      @NonNull final IMediaItem mediaItem) {
+    cancelArtwork();
+    Uri iconUri = mediaItem.getIconUri();
+    if (iconUri == null) {
+      return;
+    }
+    //standard notification large icon 64dp
+    int size = (int) (64 * playerService.getResources().getDisplayMetrics().density);
+    artworkLoading = true;
+    ArtworkLoader.Request request = ArtworkLoader.get(playerService)
+        .load(iconUri, size, size, new ArtworkLoader.Callback() {
+          @Override
+          public void onArtworkLoaded(Uri uri, Bitmap bitmap) {
+            if (bitmap == null) {
+              return;
+            }
+            builder.setLargeIcon(bitmap);
+            if (!artworkLoading && started && ANotifier.this.mediaItem == mediaItem) {
+              //async loaded, post again
+              notification = builder.build();
+              helper.notify(NOTIFICATION_ID, notification);
+              postCount++;
+            }
+          }
+        });
+    artworkLoading = false;
+    artworkRequest = request;
+  }
+
+  private void cancelArtwork() {
+    if (artworkRequest != null) {
+      artworkRequest.cancel();
+      artworkRequest = null;
+    }
   }
 
   /**
@@ -0,0 +1,496 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.worker;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.CompressFormat;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.AtomicFile;
+import android.support.v4.util.LruCache;
+import com.jcodeing.kmedia.utils.L;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Artwork({@link com.jcodeing.kmedia.definition.IMediaItem#getIconUri()}) loader. <ul> <li>Decode
+ * off main thread, downsampled to the requested size (inSampleSize), reuse released bitmaps
+ * <li>Memory LRU sized in bytes, disk cache of the downsampled thumbnails <li>Same uri and size
+ * requests are coalesced into one decode <li>{@link Request#cancel()} when the item changed<ul/>
+ * <pre>
+ * e.g.
+ * request = ArtworkLoader.get(context).load(item.getIconUri(), w, h, callback);
+ * // item changed
+ * request.cancel();
+ * </pre>
+ */
+public class ArtworkLoader {
+
+  private static ArtworkLoader instance;
+
+  public static synchronized ArtworkLoader get(Context context) {
+    if (instance == null) {
+      instance = new ArtworkLoader(context.getApplicationContext());
+    }
+    return instance;
+  }
+
+  public static final int DEFAULT_MAX_DISK_BYTES = 16 * 1024 * 1024;
+
+  private final Context context;
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+  protected ArtworkLoader(Context context) {
+    this.context = context;
+    //1/16 of app memory for artwork
+    int maxMemoryBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 16, Integer.MAX_VALUE);
+    memoryCache = new LruCache<String, Bitmap>(maxMemoryBytes) {
+      @Override
+      protected int sizeOf(String key, Bitmap value) {
+        return byteCount(value);
+      }
+    };
+    diskDir = new File(context.getCacheDir(), "k_artwork");
+  }
+
+  // ============================@Load@============================
+  public interface Callback {
+
+    /**
+     * Main thread, not called after {@link Request#cancel()}
+     *
+     * @param bitmap null: load failure
+     */
+    void onArtworkLoaded(Uri uri, @Nullable Bitmap bitmap);
+  }
+
+  public static final class Request {
+
+    private final Job job;
+    private final Callback callback;
+    private volatile boolean cancelled;
+
+    Request(Job job, Callback callback) {
+      this.job = job;
+      this.callback = callback;
+    }
+
+    public boolean isCancelled() {
+      return cancelled;
+    }
+
+    @MainThread
+    public void cancel() {
+      if (!cancelled) {
+        cancelled = true;
+        if (job != null) {
+          job.loader.cancel(this);
+        }
+      }
+    }
+  }
+
+  /**
+   * One decode of (uri, size), shared by coalesced requests
+   */
+  private static final class Job {
+
+    final ArtworkLoader loader;
+    final String key;
+    final Uri uri;
+    final int width;
+    final int height;
+    final ArrayList<Request> requests = new ArrayList<>(2);
+    Future<?> future;
+
+    Job(ArtworkLoader loader, String key, Uri uri, int width, int height) {
+      this.loader = loader;
+      this.key = key;
+      this.uri = uri;
+      this.width = width;
+      this.height = height;
+    }
+  }
+
+  /**
+   * key -> in flight job (main thread only)
+   */
+  private final HashMap<String, Job> jobs = new HashMap<>();
+
+  /**
+   * Load artwork of uri downsampled to fit (width, height). Memory cache hit delivers synchronously
+   * (before return).
+   *
+   * @return request, cancel it when the target not need anymore
+   */
+  @MainThread
+  public Request load(@Nullable Uri uri, int width, int height, @NonNull Callback callback) {
+    if (uri == null || width <= 0 || height <= 0) {
+      callback.onArtworkLoaded(uri, null);
+      return new Request(null, callback);
+    }
+    String key = key(uri, width, height);
+    Bitmap cached = memoryCache.get(key);
+    if (cached != null) {
+      callback.onArtworkLoaded(uri, cached);
+      return new Request(null, callback);
+    }
+    Job job = jobs.get(key);
+    if (job == null) {
+      job = new Job(this, key, uri, width, height);
+      jobs.put(key, job);
+      final Job j = job;
+      job.future = executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          final Bitmap bitmap = decode(j);
+          mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+              deliver(j, bitmap);
+            }
+          });
+        }
+      });
+    } else {
+      coalescedCount++;
+    }
+    Request request = new Request(job, callback);
+    job.requests.add(request);
+    return request;
+  }
+
+  /**
+   * @return memory cached artwork, or null
+   */
+  public Bitmap getCached(@Nullable Uri uri, int width, int height) {
+    return uri != null ? memoryCache.get(key(uri, width, height)) : null;
+  }
+
+  private void cancel(Request request) {
+    Job job = request.job;
+    job.requests.remove(request);
+    if (job.requests.isEmpty() && jobs.get(job.key) == job) {
+      //not started: not decode; running: result still cached
+      jobs.remove(job.key);
+      if (job.future != null) {
+        job.future.cancel(false);
+      }
+    }
+  }
+
+  private void deliver(Job job, Bitmap bitmap) {
+    if (jobs.get(job.key) == job) {
+      jobs.remove(job.key);
+    }
+    for (Request request : job.requests) {
+      if (!request.cancelled) {
+        request.callback.onArtworkLoaded(job.uri, bitmap);
+      }
+    }
+    job.requests.clear();
+  }
+
+  // ============================@Decode@============================
+
+  /**
+   * Worker thread: memory -> disk -> source
+   */
+  private Bitmap decode(Job job) {
+    Bitmap bitmap = memoryCache.get(job.key);
+    if (bitmap != null) {
+      return bitmap;
+    }
+    File diskFile = diskFile(job.key);
+    try {
+      if (diskFile.exists()) {
+        //bounds first, inBitmap needs the size
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(diskFile.getPath(), options);
+        bitmap = BitmapFactory.decodeFile(diskFile.getPath(), reuseOptions(options, 1));
+        if (bitmap != null) {
+          //noinspection ResultOfMethodCallIgnored
+          diskFile.setLastModified(System.currentTimeMillis());
+        }
+      }
+      if (bitmap == null) {
+        byte[] data = readSource(job.uri);
+        if (data != null) {
+          bitmap = decodeSampled(data, job.width, job.height);
+          if (bitmap != null) {
+            writeDisk(diskFile, bitmap);
+          }
+        }
+      }
+    } catch (Exception | OutOfMemoryError e) {
+      L.printStackTrace(e);
+      bitmap = null;
+    }
+    if (bitmap != null) {
+      memoryCache.put(job.key, bitmap);
+    }
+    return bitmap;
+  }
+
+  private Bitmap decodeSampled(byte[] data, int width, int height) {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    if (options.outWidth <= 0 || options.outHeight <= 0) {
+      return null;
+    }
+    int inSampleSize = 1;
+    //largest power of 2 keeps both sides >= requested
+    while (options.outWidth / (inSampleSize * 2) >= width
+        && options.outHeight / (inSampleSize * 2) >= height) {
+      inSampleSize *= 2;
+    }
+    options = reuseOptions(options, inSampleSize);
+    Bitmap decoded = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    if (decoded == null) {
+      return null;
+    }
+    // =========@fit exactly, decoded scratch back to pool@=========
+    float scale = Math.min((float) width / decoded.getWidth(), (float) height / decoded.getHeight());
+    if (scale >= 1f) {
+      return decoded;
+    }
+    Bitmap scaled = Bitmap.createScaledBitmap(decoded,
+        Math.max(1, Math.round(decoded.getWidth() * scale)),
+        Math.max(1, Math.round(decoded.getHeight() * scale)), true);
+    if (scaled != decoded) {
+      release(decoded);
+    }
+    return scaled;
+  }
+
+  private byte[] readSource(Uri uri) throws IOException {
+    InputStream in;
+    String scheme = uri.getScheme();
+    HttpURLConnection connection = null;
+    if ("http".equals(scheme) || "https".equals(scheme)) {
+      connection = (HttpURLConnection) new URL(uri.toString()).openConnection();
+      connection.setConnectTimeout(10000);
+      connection.setReadTimeout(10000);
+      in = connection.getInputStream();
+    } else {
+      in = context.getContentResolver().openInputStream(uri);
+    }
+    if (in == null) {
+      return null;
+    }
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(32 * 1024);
+      byte[] buffer = new byte[8 * 1024];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      return out.toByteArray();
+    } finally {
+      in.close();
+      if (connection != null) {
+        connection.disconnect();
+      }
+    }
+  }
+
+  // ============================@Reuse@============================
+  private static final int MAX_POOL_SIZE = 4;
+  private final ArrayList<Bitmap> pool = new ArrayList<>(MAX_POOL_SIZE);
+
+  /**
+   * Give back a bitmap not displayed anymore (must not be memory cached), next decode may reuse
+   * its memory. Only work on KITKAT+.
+   */
+  public void release(Bitmap bitmap) {
+    if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()
+        || VERSION.SDK_INT < VERSION_CODES.KITKAT) {
+      return;
+    }
+    synchronized (pool) {
+      if (pool.size() >= MAX_POOL_SIZE) {
+        pool.remove(0);
+      }
+      pool.add(bitmap);
+    }
+  }
+
+  private BitmapFactory.Options reuseOptions(BitmapFactory.Options options, int inSampleSize) {
+    if (options == null) {
+      options = new BitmapFactory.Options();
+    }
+    options.inJustDecodeBounds = false;
+    options.inSampleSize = inSampleSize;
+    options.inMutable = true;
+    if (VERSION.SDK_INT >= VERSION_CODES.KITKAT && options.outWidth > 0) {
+      //KITKAT+: any bitmap with enough allocation
+      long need = (long) (options.outWidth / inSampleSize + 1)
+          * (options.outHeight / inSampleSize + 1) * 4;
+      synchronized (pool) {
+        for (Iterator<Bitmap> it = pool.iterator(); it.hasNext(); ) {
+          Bitmap candidate = it.next();
+          if (candidate.getAllocationByteCount() >= need) {
+            it.remove();
+            options.inBitmap = candidate;
+            reusedCount++;
+            break;
+          }
+        }
+      }
+    }
+    return options;
+  }
+
+  // ============================@Cache@============================
+  private final LruCache<String, Bitmap> memoryCache;
+  private final File diskDir;
+  private long maxDiskBytes = DEFAULT_MAX_DISK_BYTES;
+  private int diskWrites;
+
+  public void setMaxDiskBytes(long maxDiskBytes) {
+    this.maxDiskBytes = maxDiskBytes;
+  }
+
+  public void clearMemory() {
+    memoryCache.evictAll();
+  }
+
+  private File diskFile(String key) {
+    return new File(diskDir, md5(key));
+  }
+
+  private void writeDisk(File file, Bitmap bitmap) {
+    if (!diskDir.exists() && !diskDir.mkdirs()) {
+      return;
+    }
+    AtomicFile atomicFile = new AtomicFile(file);
+    FileOutputStream out = null;
+    try {
+      out = atomicFile.startWrite();
+      bitmap.compress(bitmap.hasAlpha() ? CompressFormat.PNG : CompressFormat.JPEG, 90, out);
+      atomicFile.finishWrite(out);
+    } catch (IOException e) {
+      atomicFile.failWrite(out);
+      L.printStackTrace(e);
+    }
+    synchronized (diskDir) {
+      if (++diskWrites % 16 == 1) {
+        trimDir(diskDir, maxDiskBytes, null);
+      }
+    }
+  }
+
+  // ============================@Counter@============================
+  private volatile int coalescedCount;
+  private volatile int reusedCount;
+
+  /**
+   * @return requests joined an in flight decode
+   */
+  public int getCoalescedCount() {
+    return coalescedCount;
+  }
+
+  /**
+   * @return decodes into a reused bitmap
+   */
+  public int getReusedCount() {
+    return reusedCount;
+  }
+
+  // ============================@Assist@============================
+  private static String key(Uri uri, int width, int height) {
+    return uri.toString() + '@' + width + 'x' + height;
+  }
+
+  private static int byteCount(Bitmap bitmap) {
+    return bitmap.getRowBytes() * bitmap.getHeight();
+  }
+
+  /**
+   * Delete least recently modified files of dir until its total size is within maxBytes
+   *
+   * @param keep file names never deleted (in use), null: none
+   */
+  static void trimDir(File dir, long maxBytes, @Nullable Set<String> keep) {
+    File[] files = dir.listFiles();
+    if (files == null) {
+      return;
+    }
+    long total = 0;
+    for (File f : files) {
+      total += f.length();
+    }
+    if (total <= maxBytes) {
+      return;
+    }
+    Arrays.sort(files, new Comparator<File>() {
+      @Override
+      public int compare(File a, File b) {
+        long d = a.lastModified() - b.lastModified();
+        return d < 0 ? -1 : (d > 0 ? 1 : 0);
+      }
+    });
+    for (int i = 0; i < files.length && total > maxBytes; i++) {
+      if (keep != null && keep.contains(files[i].getName())) {
+        continue;
+      }
+      long length = files[i].length();
+      if (files[i].delete()) {
+        total -= length;
+      }
+    }
+  }
+
+  static String md5(String s) {
+    try {
+      byte[] digest = MessageDigest.getInstance("MD5").digest(s.getBytes("UTF-8"));
+      StringBuilder sb = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return sb.toString();
+    } catch (Exception e) {
+      return Integer.toHexString(s.hashCode());
+    }
+  }
+}
@@ -0,0 +1,425 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.worker;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.CompressFormat;
+import android.graphics.BitmapFactory;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.AtomicFile;
+import android.support.v4.util.LruCache;
+import android.view.TextureView;
+import com.jcodeing.kmedia.assist.C;
+import com.jcodeing.kmedia.utils.L;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Poster frame (last frame seen of a video item) cache, keyed by mediaId, with the position it was
+ * captured at. <ul> <li>Captured from TextureView into a pooled bitmap (no allocation once warm)
+ * <li>Memory LRU + compressed disk copy (JPEG) written off main thread, trimmed to
+ * {@link #setMaxDiskBytes(long)} <li>Bitmaps evicted and not
+ * {@link #pin(Bitmap)}ed go back to the pool, for next capture/decode <ul/>
+ * <pre>
+ * e.g.
+ * // =========@paused/stopped
+ * PosterFrameCache.get(context).capture(textureView, mediaId, position);
+ * // =========@next play
+ * PosterFrameCache.get(context).load(mediaId, startPosition, callback);
+ * </pre>
+ */
+public class PosterFrameCache {
+
+  private static PosterFrameCache instance;
+
+  public static synchronized PosterFrameCache get(Context context) {
+    if (instance == null) {
+      instance = new PosterFrameCache(context.getApplicationContext());
+    }
+    return instance;
+  }
+
+  /**
+   * Captured long side at most
+   */
+  public static final int MAX_POSTER_SIZE = 720;
+  public static final long DEFAULT_POSITION_TOLERANCE_MS = 5000;
+  public static final long DEFAULT_MAX_DISK_BYTES = 8 * 1024 * 1024;
+
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private final File diskDir;
+  private final LruCache<String, Poster> memoryCache;
+
+  protected PosterFrameCache(Context context) {
+    diskDir = new File(context.getCacheDir(), "k_posters");
+    //1/32 of app memory for posters
+    int maxMemoryBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 32, Integer.MAX_VALUE);
+    memoryCache = new LruCache<String, Poster>(maxMemoryBytes) {
+      @Override
+      protected int sizeOf(String key, Poster value) {
+        return value.bitmap.getRowBytes() * value.bitmap.getHeight();
+      }
+
+      @Override
+      protected void entryRemoved(boolean evicted, String key, Poster oldValue, Poster newValue) {
+        if (newValue == null || newValue.bitmap != oldValue.bitmap) {
+          recycleToPool(oldValue.bitmap);
+        }
+      }
+    };
+  }
+
+  public static final class Poster {
+
+    public final String mediaId;
+    public final long position;
+    public final Bitmap bitmap;
+
+    Poster(String mediaId, long position, Bitmap bitmap) {
+      this.mediaId = mediaId;
+      this.position = position;
+      this.bitmap = bitmap;
+    }
+  }
+
+  public interface Callback {
+
+    /**
+     * Main thread
+     *
+     * @param poster null: none (or position not match)
+     */
+    void onPosterLoaded(String mediaId, @Nullable Poster poster);
+  }
+
+  // ============================@Capture@============================
+
+  /**
+   * Capture current TextureView content as poster of mediaId. (Main thread)
+   *
+   * @return captured
+   */
+  @MainThread
+  @TargetApi(VERSION_CODES.ICE_CREAM_SANDWICH)
+  public boolean capture(TextureView textureView, String mediaId, long position) {
+    if (textureView == null || mediaId == null || !textureView.isAvailable()
+        || textureView.getWidth() <= 0 || textureView.getHeight() <= 0) {
+      return false;
+    }
+    float scale = Math.min(1f, (float) MAX_POSTER_SIZE
+        / Math.max(textureView.getWidth(), textureView.getHeight()));
+    int width = Math.max(1, Math.round(textureView.getWidth() * scale));
+    int height = Math.max(1, Math.round(textureView.getHeight() * scale));
+    Bitmap bitmap = obtain(width, height);
+    try {
+      if (bitmap != null) {
+        bitmap = textureView.getBitmap(bitmap);//draw into, scaled
+      } else {
+        bitmap = textureView.getBitmap(width, height);
+      }
+    } catch (Exception | OutOfMemoryError e) {
+      L.printStackTrace(e);
+      bitmap = null;
+    }
+    if (bitmap == null) {
+      return false;
+    }
+    final Poster poster = new Poster(mediaId, Math.max(0, position), bitmap);
+    memoryCache.put(mediaId, poster);
+    pin(bitmap);//while compressing
+    executor.submit(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          writeDisk(poster);
+        } finally {
+          mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+              unpin(poster.bitmap);
+            }
+          });
+        }
+      }
+    });
+    return true;
+  }
+
+  // ============================@Load@============================
+
+  /**
+   * Memory hit delivers synchronously (before return), else from disk off main thread.
+   *
+   * @param position expected start position, {@link C#POSITION_UNSET}: any
+   */
+  @MainThread
+  public void load(@NonNull final String mediaId, final long position,
+      @NonNull final Callback callback) {
+    Poster cached = memoryCache.get(mediaId);
+    if (cached != null) {
+      callback.onPosterLoaded(mediaId, matches(cached, position) ? cached : null);
+      return;
+    }
+    final File file = diskFile(mediaId);
+    if (!file.exists()) {
+      callback.onPosterLoaded(mediaId, null);
+      return;
+    }
+    executor.submit(new Runnable() {
+      @Override
+      public void run() {
+        final Poster poster = readDisk(mediaId, file);
+        mainHandler.post(new Runnable() {
+          @Override
+          public void run() {
+            if (poster != null && memoryCache.get(mediaId) == null) {
+              memoryCache.put(mediaId, poster);
+            }
+            callback.onPosterLoaded(mediaId,
+                poster != null && matches(poster, position) ? poster : null);
+          }
+        });
+      }
+    });
+  }
+
+  private static boolean matches(Poster poster, long position) {
+    return position == C.POSITION_UNSET
+        || Math.abs(poster.position - position) <= DEFAULT_POSITION_TOLERANCE_MS;
+  }
+
+  public void remove(String mediaId) {
+    memoryCache.remove(mediaId);
+    //noinspection ResultOfMethodCallIgnored
+    diskFile(mediaId).delete();
+  }
+
+  // ============================@Disk@============================
+  // [magic int][version int][position long][jpeg]
+  private static final int FILE_MAGIC = 0x4B505354;//KPST
+  private static final int FILE_VERSION = 1;
+  private volatile long maxDiskBytes = DEFAULT_MAX_DISK_BYTES;
+  private int diskWrites;
+
+  public void setMaxDiskBytes(long maxDiskBytes) {
+    this.maxDiskBytes = maxDiskBytes;
+  }
+
+  private File diskFile(String mediaId) {
+    return new File(diskDir, ArtworkLoader.md5(mediaId));
+  }
+
+  private void writeDisk(Poster poster) {
+    if (!diskDir.exists() && !diskDir.mkdirs()) {
+      return;
+    }
+    AtomicFile atomicFile = new AtomicFile(diskFile(poster.mediaId));
+    FileOutputStream out = null;
+    try {
+      out = atomicFile.startWrite();
+      DataOutputStream data = new DataOutputStream(out);
+      data.writeInt(FILE_MAGIC);
+      data.writeInt(FILE_VERSION);
+      data.writeLong(poster.position);
+      data.flush();
+      poster.bitmap.compress(CompressFormat.JPEG, 80, out);
+      atomicFile.finishWrite(out);
+    } catch (IOException e) {
+      atomicFile.failWrite(out);
+      L.printStackTrace(e);
+    }
+    if (++diskWrites % 16 == 1) {
+      ArtworkLoader.trimDir(diskDir, maxDiskBytes, null);
+    }
+  }
+
+  private Poster readDisk(String mediaId, File file) {
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new FileInputStream(file));
+      if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+        return null;
+      }
+      long position = in.readLong();
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) file.length());
+      byte[] buffer = new byte[8 * 1024];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        bytes.write(buffer, 0, read);
+      }
+      byte[] data = bytes.toByteArray();
+      BitmapFactory.Options options = new BitmapFactory.Options();
+      options.inJustDecodeBounds = true;
+      BitmapFactory.decodeByteArray(data, 0, data.length, options);
+      Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length,
+          reuseOptions(options));
+      if (bitmap == null) {
+        return null;
+      }
+      //recently used, trimmed last
+      //noinspection ResultOfMethodCallIgnored
+      file.setLastModified(System.currentTimeMillis());
+      return new Poster(mediaId, position, bitmap);
+    } catch (Exception | OutOfMemoryError e) {
+      L.printStackTrace(e);
+      return null;
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+          //Do nothing
+        }
+      }
+    }
+  }
+
+  // ============================@Reuse@============================
+  private static final int MAX_POOL_SIZE = 3;
+  private final ArrayList<Bitmap> pool = new ArrayList<>(MAX_POOL_SIZE);
+  /**
+   * Shown/compressing, not back to pool when evicted (may repeat)
+   */
+  private final ArrayList<Bitmap> pinned = new ArrayList<>(2);
+  private final ArrayList<Bitmap> evictedPinned = new ArrayList<>(2);
+  private volatile int reusedCount;
+
+  /**
+   * Bitmap shown (e.g. poster overlay), must {@link #unpin(Bitmap)} when not shown anymore
+   */
+  public void pin(Bitmap bitmap) {
+    synchronized (pool) {
+      pinned.add(bitmap);
+    }
+  }
+
+  public void unpin(Bitmap bitmap) {
+    synchronized (pool) {
+      if (!pinned.remove(bitmap) || pinned.contains(bitmap)) {
+        return;
+      }
+      //evicted while pinned -> pool now
+      if (!evictedPinned.remove(bitmap)) {
+        return;
+      }
+    }
+    recycleToPool(bitmap);
+  }
+
+  private void recycleToPool(Bitmap bitmap) {
+    if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+      return;
+    }
+    synchronized (pool) {
+      if (pinned.contains(bitmap)) {
+        if (!evictedPinned.contains(bitmap)) {
+          evictedPinned.add(bitmap);
+        }
+        return;
+      }
+      if (pool.size() >= MAX_POOL_SIZE) {
+        pool.remove(0);
+      }
+      pool.add(bitmap);
+    }
+  }
+
+  /**
+   * @return pooled bitmap of (width, height) ARGB_8888, null none
+   */
+  private Bitmap obtain(int width, int height) {
+    synchronized (pool) {
+      for (Iterator<Bitmap> it = pool.iterator(); it.hasNext(); ) {
+        Bitmap candidate = it.next();
+        if (candidate.getWidth() == width && candidate.getHeight() == height
+            && candidate.getConfig() == Bitmap.Config.ARGB_8888) {
+          it.remove();
+          reusedCount++;
+          return candidate;
+        }
+      }
+      if (VERSION.SDK_INT >= VERSION_CODES.KITKAT) {
+        return reconfigureFromPool(width, height);
+      }
+    }
+    return null;
+  }
+
+  @TargetApi(VERSION_CODES.KITKAT)
+  private Bitmap reconfigureFromPool(int width, int height) {
+    long need = (long) width * height * 4;
+    for (Iterator<Bitmap> it = pool.iterator(); it.hasNext(); ) {
+      Bitmap candidate = it.next();
+      if (candidate.getAllocationByteCount() >= need) {
+        it.remove();
+        candidate.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+        reusedCount++;
+        return candidate;
+      }
+    }
+    return null;
+  }
+
+  @TargetApi(VERSION_CODES.KITKAT)
+  private BitmapFactory.Options reuseOptions(BitmapFactory.Options options) {
+    options.inJustDecodeBounds = false;
+    options.inMutable = true;
+    if (VERSION.SDK_INT >= VERSION_CODES.KITKAT && options.outWidth > 0) {
+      long need = (long) options.outWidth * options.outHeight * 4;
+      synchronized (pool) {
+        for (Iterator<Bitmap> it = pool.iterator(); it.hasNext(); ) {
+          Bitmap candidate = it.next();
+          if (candidate.getAllocationByteCount() >= need) {
+            it.remove();
+            options.inBitmap = candidate;
+            reusedCount++;
+            break;
+          }
+        }
+      }
+    }
+    return options;
+  }
+
+  /**
+   * @return captures/decodes into a reused bitmap
+   */
+  public int getReusedCount() {
+    return reusedCount;
+  }
+
+  public void clearMemory() {
+    memoryCache.evictAll();
+  }
+}
@@ -0,0 +1,721 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.worker;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.CompressFormat;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import com.jcodeing.kmedia.utils.L;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Scrubbing thumbnails, keyed by mediaId. <ul> <li>Frames extracted every {@link
+ * #setIntervalMs(long)} (MediaMetadataRetriever, background), packed {@link #COLUMNS}x{@link
+ * #ROWS} per sprite sheet (JPEG) <li>One file per media item: header, sheet index, sheets. Sheets
+ * generated nearest the focus position first (ahead before behind), cancellable <li>File
+ * memory-mapped for lookup, decoded sheets kept (a few) and their bitmaps reused <ul/>
+ * <pre>
+ * e.g.
+ * sprites = ThumbnailSprites.get(context).open(mediaId, uri);
+ * sprites.generate();//e.g. onPrepared
+ * // =========@scrubbing
+ * sprites.setFocusPosition(position);
+ * if (sprites.getThumbnail(position, thumbBitmap)) { imageView.invalidate(); }
+ * // else -> Listener.onThumbnailsChanged, query again
+ * </pre>
+ */
+public class ThumbnailSprites {
+
+  private static ThumbnailSprites instance;
+
+  public static synchronized ThumbnailSprites get(Context context) {
+    if (instance == null) {
+      instance = new ThumbnailSprites(context.getApplicationContext());
+    }
+    return instance;
+  }
+
+  public static final long DEFAULT_INTERVAL_MS = 10000;
+  public static final int DEFAULT_THUMB_WIDTH = 160;
+  public static final int DEFAULT_THUMB_HEIGHT = 90;
+  public static final int COLUMNS = 5;
+  public static final int ROWS = 5;
+  public static final int FRAMES_PER_SHEET = COLUMNS * ROWS;
+  public static final long DEFAULT_MAX_DISK_BYTES = 64 * 1024 * 1024;
+
+  private final Context context;
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  /**
+   * Extract: one retriever at a time
+   */
+  private final ExecutorService generateExecutor = Executors.newSingleThreadExecutor();
+  private final ExecutorService decodeExecutor = Executors.newSingleThreadExecutor();
+  private final File dir;
+
+  protected ThumbnailSprites(Context context) {
+    this.context = context;
+    dir = new File(context.getCacheDir(), "k_thumbs");
+  }
+
+  // ============================@Config@============================
+  private long intervalMs = DEFAULT_INTERVAL_MS;
+  private int thumbWidth = DEFAULT_THUMB_WIDTH;
+  private int thumbHeight = DEFAULT_THUMB_HEIGHT;
+
+  /**
+   * Apply to media opened later, existing files with other config regenerated
+   */
+  public void setIntervalMs(long intervalMs) {
+    this.intervalMs = Math.max(1000, intervalMs);
+  }
+
+  public void setThumbSize(int width, int height) {
+    thumbWidth = Math.max(16, width);
+    thumbHeight = Math.max(16, height);
+  }
+
+  public int getThumbWidth() {
+    return thumbWidth;
+  }
+
+  public int getThumbHeight() {
+    return thumbHeight;
+  }
+
+  private volatile long maxDiskBytes = DEFAULT_MAX_DISK_BYTES;
+
+  /**
+   * Sprite files over this are deleted (least recently opened first, opened ones kept)
+   */
+  public void setMaxDiskBytes(long maxDiskBytes) {
+    this.maxDiskBytes = maxDiskBytes;
+  }
+
+  // ============================@Open@============================
+  private final HashMap<String, Sprites> opened = new HashMap<>();
+
+  /**
+   * @return sprites of mediaId (same instance while not closed), nothing generated yet
+   */
+  @MainThread
+  public Sprites open(@NonNull String mediaId, @NonNull Uri uri) {
+    Sprites sprites = opened.get(mediaId);
+    if (sprites == null || !uri.equals(sprites.uri)) {
+      if (sprites != null) {
+        sprites.close();
+      }
+      sprites = new Sprites(mediaId, uri, new File(dir, ArtworkLoader.md5(mediaId)),
+          intervalMs, thumbWidth, thumbHeight);
+      opened.put(mediaId, sprites);
+      trimDisk(sprites.file);
+    }
+    return sprites;
+  }
+
+  /**
+   * Touch opened file, then delete least recently used files over {@link #setMaxDiskBytes(long)}
+   */
+  @MainThread
+  private void trimDisk(final File touch) {
+    final HashSet<String> keep = new HashSet<>();
+    for (Sprites sprites : opened.values()) {
+      keep.add(sprites.file.getName());
+    }
+    generateExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        if (touch.exists()) {
+          //noinspection ResultOfMethodCallIgnored
+          touch.setLastModified(System.currentTimeMillis());
+        }
+        ArtworkLoader.trimDir(dir, maxDiskBytes, keep);
+      }
+    });
+  }
+
+  public interface Listener {
+
+    /**
+     * Main thread, a sheet generated or decoded, query {@link Sprites#getThumbnail(long, Bitmap)}
+     * again
+     */
+    void onThumbnailsChanged(Sprites sprites);
+  }
+
+  // ============================@File@============================
+  // [magic int][version int][interval long][duration long][thumbW int][thumbH int][columns int]
+  // [rows int][sheetCount int] [(offset long, length int) * sheetCount] [jpeg sheets...]
+  private static final int FILE_MAGIC = 0x4B544842;//KTHB
+  private static final int FILE_VERSION = 1;
+  private static final int HEADER_SIZE = 44;
+  private static final int INDEX_ENTRY_SIZE = 12;
+
+  private static int indexPosition(int sheet) {
+    return HEADER_SIZE + sheet * INDEX_ENTRY_SIZE;
+  }
+
+  public final class Sprites {
+
+    public final String mediaId;
+    public final Uri uri;
+    private final File file;
+    private final long intervalMs;
+    private final int thumbWidth;
+    private final int thumbHeight;
+
+    Sprites(String mediaId, Uri uri, File file, long intervalMs, int thumbWidth,
+        int thumbHeight) {
+      this.mediaId = mediaId;
+      this.uri = uri;
+      this.file = file;
+      this.intervalMs = intervalMs;
+      this.thumbWidth = thumbWidth;
+      this.thumbHeight = thumbHeight;
+    }
+
+    // =========@Listener@=========
+    private final CopyOnWriteArraySet<Listener> listeners = new CopyOnWriteArraySet<>();
+
+    public void addListener(Listener listener) {
+      if (listener != null) {
+        listeners.add(listener);
+      }
+    }
+
+    public void removeListener(Listener listener) {
+      listeners.remove(listener);
+    }
+
+    private void notifyChanged() {
+      for (Listener listener : listeners) {
+        listener.onThumbnailsChanged(this);
+      }
+    }
+
+    // =========@Generate@=========
+    private volatile long focusPosition;
+    /**
+     * Per run: a cancelled run still finishing never sees the flag of the next one
+     */
+    private AtomicBoolean generateCancel;
+    private Future<?> generateFuture;
+    private boolean closed;
+
+    /**
+     * Sheets generated nearest here first, can change while generating
+     */
+    public void setFocusPosition(long positionMs) {
+      focusPosition = Math.max(0, positionMs);
+    }
+
+    /**
+     * Start (or continue) generating missing sheets, in background
+     */
+    @MainThread
+    public void generate() {
+      if (closed || (generateFuture != null && !generateFuture.isDone())) {
+        return;
+      }
+      if (isComplete()) {
+        return;
+      }
+      final AtomicBoolean cancelled = new AtomicBoolean();
+      generateCancel = cancelled;
+      generateFuture = generateExecutor.submit(new Runnable() {
+        @Override
+        public void run() {
+          runGenerate(cancelled);
+        }
+      });
+    }
+
+    /**
+     * Stop generating (sheets done kept, {@link #generate()} continues)
+     */
+    @MainThread
+    public void cancel() {
+      if (generateCancel != null) {
+        generateCancel.set(true);
+        generateCancel = null;
+      }
+      if (generateFuture != null) {
+        generateFuture.cancel(false);
+        generateFuture = null;
+      }
+    }
+
+    public boolean isGenerating() {
+      return generateFuture != null && !generateFuture.isDone();
+    }
+
+    private void runGenerate(AtomicBoolean cancelled) {
+      MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+      RandomAccessFile raf = null;
+      Bitmap sheet = null;
+      try {
+        setDataSource(retriever);
+        raf = openForWrite(retriever);
+        if (raf == null) {
+          return;
+        }
+        raf.seek(HEADER_SIZE - 4);
+        int sheetCount = raf.readInt();
+        long duration = readLong(raf, 16);
+        int frameCount = (int) (duration / intervalMs) + 1;
+        boolean[] done = new boolean[sheetCount];
+        for (int i = 0; i < sheetCount; i++) {
+          raf.seek(indexPosition(i) + 8);
+          done[i] = raf.readInt() > 0;
+        }
+        sheet = Bitmap.createBitmap(COLUMNS * thumbWidth, ROWS * thumbHeight,
+            Bitmap.Config.RGB_565);
+        Canvas canvas = new Canvas(sheet);
+        Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        Rect dst = new Rect();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        int next;
+        while (!cancelled.get() && (next = nextSheet(done, frameCount)) >= 0) {
+          canvas.drawColor(0xFF000000);
+          for (int cell = 0; cell < FRAMES_PER_SHEET && !cancelled.get(); cell++) {
+            int frame = next * FRAMES_PER_SHEET + cell;
+            if (frame >= frameCount) {
+              break;
+            }
+            Bitmap bitmap = retriever.getFrameAtTime(frame * intervalMs * 1000,
+                MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+            if (bitmap != null) {
+              cellRect(cell, bitmap.getWidth(), bitmap.getHeight(), dst);
+              canvas.drawBitmap(bitmap, null, dst, paint);
+              bitmap.recycle();
+            }
+          }
+          if (cancelled.get()) {
+            break;
+          }
+          out.reset();
+          sheet.compress(CompressFormat.JPEG, 80, out);
+          // =========@data first, then index: readers never see unwritten data
+          long offset = raf.length();
+          raf.seek(offset);
+          raf.write(out.toByteArray(), 0, out.size());
+          raf.seek(indexPosition(next));
+          raf.writeLong(offset);
+          raf.writeInt(out.size());
+          done[next] = true;
+          postChanged();
+        }
+      } catch (Exception | OutOfMemoryError e) {
+        //IllegalArgument(data source), IO...
+        L.printStackTrace(e);
+      } finally {
+        retriever.release();
+        if (sheet != null) {
+          sheet.recycle();
+        }
+        if (raf != null) {
+          try {
+            raf.close();
+          } catch (IOException e) {
+            L.printStackTrace(e);
+          }
+        }
+      }
+    }
+
+    /**
+     * @return missing sheet nearest focus (ahead first), -1 all done
+     */
+    private int nextSheet(boolean[] done, int frameCount) {
+      int focus = (int) Math.min(focusPosition / intervalMs, frameCount - 1) / FRAMES_PER_SHEET;
+      for (int d = 0; d < done.length; d++) {
+        int ahead = focus + d;
+        if (ahead < done.length && !done[ahead]) {
+          return ahead;
+        }
+        int behind = focus - d - 1;
+        if (behind >= 0 && !done[behind]) {
+          return behind;
+        }
+      }
+      return -1;
+    }
+
+    private void cellRect(int cell, int frameWidth, int frameHeight, Rect out) {
+      int left = (cell % COLUMNS) * thumbWidth;
+      int top = (cell / COLUMNS) * thumbHeight;
+      //fit center, keep aspect
+      float scale = Math.min((float) thumbWidth / frameWidth, (float) thumbHeight / frameHeight);
+      int w = Math.round(frameWidth * scale);
+      int h = Math.round(frameHeight * scale);
+      left += (thumbWidth - w) / 2;
+      top += (thumbHeight - h) / 2;
+      out.set(left, top, left + w, top + h);
+    }
+
+    @TargetApi(VERSION_CODES.ICE_CREAM_SANDWICH)
+    private void setDataSource(MediaMetadataRetriever retriever) {
+      String scheme = uri.getScheme();
+      if (("http".equals(scheme) || "https".equals(scheme))
+          && VERSION.SDK_INT >= VERSION_CODES.ICE_CREAM_SANDWICH) {
+        retriever.setDataSource(uri.toString(), new HashMap<String, String>());
+      } else {
+        retriever.setDataSource(context, uri);
+      }
+    }
+
+    /**
+     * @return file with valid header for this config, created if needed. null: unknown duration
+     */
+    private RandomAccessFile openForWrite(MediaMetadataRetriever retriever) throws IOException {
+      if (file.exists() && readHeaderMatches()) {
+        return new RandomAccessFile(file, "rw");
+      }
+      long duration;
+      try {
+        duration = Long.parseLong(
+            retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION));
+      } catch (NumberFormatException e) {
+        return null;
+      }
+      if (duration <= 0 || (!dir.exists() && !dir.mkdirs())) {
+        return null;
+      }
+      int sheetCount = (int) (duration / intervalMs) / FRAMES_PER_SHEET + 1;
+      //unlink, not truncate: a stale mapping of the old file stays valid
+      //noinspection ResultOfMethodCallIgnored
+      file.delete();
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      raf.writeInt(FILE_MAGIC);
+      raf.writeInt(FILE_VERSION);
+      raf.writeLong(intervalMs);
+      raf.writeLong(duration);
+      raf.writeInt(thumbWidth);
+      raf.writeInt(thumbHeight);
+      raf.writeInt(COLUMNS);
+      raf.writeInt(ROWS);
+      raf.writeInt(sheetCount);
+      raf.write(new byte[sheetCount * INDEX_ENTRY_SIZE]);//all missing
+      return raf;
+    }
+
+    private boolean readHeaderMatches() {
+      RandomAccessFile raf = null;
+      try {
+        raf = new RandomAccessFile(file, "r");
+        return raf.length() >= HEADER_SIZE && raf.readInt() == FILE_MAGIC
+            && raf.readInt() == FILE_VERSION && raf.readLong() == intervalMs
+            && raf.readLong() > 0 && raf.readInt() == thumbWidth && raf.readInt() == thumbHeight
+            && raf.readInt() == COLUMNS && raf.readInt() == ROWS;
+      } catch (IOException e) {
+        return false;
+      } finally {
+        if (raf != null) {
+          try {
+            raf.close();
+          } catch (IOException e) {
+            //Do nothing
+          }
+        }
+      }
+    }
+
+    private void postChanged() {
+      mainHandler.post(new Runnable() {
+        @Override
+        public void run() {
+          if (!closed) {
+            notGenerated = false;
+            notifyChanged();
+          }
+        }
+      });
+    }
+
+    // =========@Lookup@=========
+    private MappedByteBuffer map;
+    private int sheetCount;
+    private long duration;
+    /**
+     * No valid file found, don't touch disk again (every scrub) until a sheet is written
+     */
+    private boolean notGenerated;
+
+    /**
+     * @return mapped, header valid
+     */
+    private boolean ensureMapped(long minSize) {
+      if (map != null && map.capacity() >= minSize) {
+        return true;
+      }
+      if (notGenerated) {
+        return false;
+      }
+      if (!file.exists() || !readHeaderMatches()) {
+        notGenerated = true;
+        return false;
+      }
+      RandomAccessFile raf = null;
+      try {
+        raf = new RandomAccessFile(file, "r");
+        FileChannel channel = raf.getChannel();
+        map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        //mapping stays valid after close
+        duration = map.getLong(16);
+        sheetCount = map.getInt(HEADER_SIZE - 4);
+        return map.capacity() >= minSize;
+      } catch (IOException e) {
+        L.printStackTrace(e);
+        map = null;
+        return false;
+      } finally {
+        if (raf != null) {
+          try {
+            raf.close();
+          } catch (IOException e) {
+            //Do nothing
+          }
+        }
+      }
+    }
+
+    /**
+     * @return duration known from file, -1 not yet generated
+     */
+    public long getDuration() {
+      return ensureMapped(HEADER_SIZE) ? duration : -1;
+    }
+
+    public boolean isComplete() {
+      if (!ensureMapped(HEADER_SIZE)) {
+        return false;
+      }
+      for (int i = 0; i < sheetCount; i++) {
+        if (map.getInt(indexPosition(i) + 8) <= 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private final LinkedHashMap<Integer, Bitmap> decoded =
+        new LinkedHashMap<Integer, Bitmap>(4, 0.75f, true);
+    private final ArrayList<Integer> decoding = new ArrayList<>(2);
+    private Canvas drawCanvas;
+    private final Rect src = new Rect();
+    private final Rect dst = new Rect();
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    /**
+     * Draw thumbnail nearest positionMs into dest (scaled to dest size), no allocation on hit.
+     *
+     * @return false: not available yet (decode/generate requested, {@link
+     * Listener#onThumbnailsChanged(Sprites)} later)
+     */
+    @MainThread
+    public boolean getThumbnail(long positionMs, @NonNull Bitmap dest) {
+      if (closed || !dest.isMutable()) {
+        return false;
+      }
+      if (!ensureMapped(HEADER_SIZE)) {
+        setFocusPosition(positionMs);
+        generate();
+        return false;
+      }
+      int frameCount = (int) (duration / intervalMs) + 1;
+      int frame = (int) Math.min(Math.max(positionMs, 0) / intervalMs, frameCount - 1);
+      int sheet = frame / FRAMES_PER_SHEET;
+      Bitmap sheetBitmap = decoded.get(sheet);
+      if (sheetBitmap == null) {
+        int length = map.getInt(indexPosition(sheet) + 8);
+        if (length <= 0) {
+          setFocusPosition(positionMs);
+          generate();
+        } else {
+          decode(sheet, map.getLong(indexPosition(sheet)), length);
+        }
+        return false;
+      }
+      int cell = frame % FRAMES_PER_SHEET;
+      int left = (cell % COLUMNS) * thumbWidth;
+      int top = (cell / COLUMNS) * thumbHeight;
+      src.set(left, top, left + thumbWidth, top + thumbHeight);
+      dst.set(0, 0, dest.getWidth(), dest.getHeight());
+      if (drawCanvas == null) {
+        drawCanvas = new Canvas();
+      }
+      drawCanvas.setBitmap(dest);
+      drawCanvas.drawBitmap(sheetBitmap, src, dst, paint);
+      return true;
+    }
+
+    private void decode(final int sheet, final long offset, final int length) {
+      if (decoding.contains(sheet)) {
+        return;
+      }
+      if (!ensureMapped(offset + length)) {
+        return;
+      }
+      decoding.add(sheet);
+      final ByteBuffer data = map.duplicate();
+      final Bitmap reuse = obtainReusable();
+      decodeExecutor.submit(new Runnable() {
+        @Override
+        public void run() {
+          Bitmap bitmap = null;
+          try {
+            data.position((int) offset);
+            data.limit((int) offset + length);
+            bitmap = BitmapFactory.decodeStream(new ByteBufferInputStream(data),
+                null, decodeOptions(reuse));
+          } catch (Exception | OutOfMemoryError e) {
+            //IllegalArgument(inBitmap not fit)...
+            L.printStackTrace(e);
+          }
+          final Bitmap result = bitmap;
+          mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+              decoding.remove(Integer.valueOf(sheet));
+              if (closed || result == null) {
+                return;
+              }
+              putDecoded(sheet, result);
+              notifyChanged();
+            }
+          });
+        }
+      });
+    }
+
+    private static final int MAX_DECODED = 3;
+    private final ArrayList<Bitmap> reusable = new ArrayList<>(1);
+
+    private void putDecoded(int sheet, Bitmap bitmap) {
+      decoded.put(sheet, bitmap);
+      if (decoded.size() > MAX_DECODED) {
+        Iterator<Map.Entry<Integer, Bitmap>> it = decoded.entrySet().iterator();
+        Bitmap eldest = it.next().getValue();
+        it.remove();
+        if (reusable.isEmpty()) {
+          reusable.add(eldest);//next decode into it
+        }
+      }
+    }
+
+    private Bitmap obtainReusable() {
+      return reusable.isEmpty() ? null : reusable.remove(reusable.size() - 1);
+    }
+
+    @TargetApi(VERSION_CODES.HONEYCOMB)
+    private BitmapFactory.Options decodeOptions(Bitmap reuse) {
+      BitmapFactory.Options options = new BitmapFactory.Options();
+      options.inPreferredConfig = Bitmap.Config.RGB_565;
+      if (VERSION.SDK_INT >= VERSION_CODES.HONEYCOMB) {
+        options.inMutable = true;
+        options.inBitmap = reuse;//same sheet size
+        options.inSampleSize = 1;
+      }
+      return options;
+    }
+
+    // =========@Close@=========
+
+    /**
+     * Cancel generating, drop mapping and decoded sheets (file kept)
+     */
+    @MainThread
+    public void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      cancel();
+      listeners.clear();
+      decoded.clear();
+      reusable.clear();
+      map = null;
+      if (opened.get(mediaId) == this) {
+        opened.remove(mediaId);
+      }
+    }
+  }
+
+  // ============================@Assist@============================
+  private static long readLong(RandomAccessFile raf, long position) throws IOException {
+    raf.seek(position);
+    return raf.readLong();
+  }
+
+  private static final class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(@NonNull byte[] b, int off, int len) {
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      len = Math.min(len, buffer.remaining());
+      buffer.get(b, off, len);
+      return len;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
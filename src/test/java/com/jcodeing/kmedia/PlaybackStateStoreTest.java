@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.jcodeing.kmedia.PlaybackStateStore.State;
+import com.jcodeing.kmedia.PlaybackStateStore.StoredMediaItem;
+import com.jcodeing.kmedia.definition.IMediaItem;
+import com.jcodeing.kmedia.definition.MediaQueue;
+import com.jcodeing.kmedia.definition.PagedMediaQueue;
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * Queue edits are coalesced into one snapshot, paged sources are never captured item by item.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 25)
+public class PlaybackStateStoreTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private Player player;
+  private int itemCaptures;
+  private int loads;
+
+  @Before
+  public void setUp() {
+    player = new Player(RuntimeEnvironment.application).init(new AndroidMediaPlayer());
+  }
+
+  private PlaybackStateStore attach(File dir) {
+    PlaybackStateStore store = new PlaybackStateStore(dir) {
+      @Override
+      protected State capture(boolean withItems) {
+        if (withItems) {
+          itemCaptures++;
+        }
+        return super.capture(withItems);
+      }
+    };
+    store.attach(player);
+    return store;
+  }
+
+  @Test
+  public void queueEditsCoalesced() throws Exception {
+    MediaQueue queue = new MediaQueue();
+    player.setMediaQueue(queue);
+    queue.update(new ArrayList<>(items(0, 10)));
+    File dir = folder.newFolder();
+    PlaybackStateStore store = attach(dir);
+    for (int i = 0; i < 50; i++) {
+      queue.insert(0, items(100 + i, 1));
+    }
+    queue.move(0, 5);
+    queue.remove(0, 2);
+    assertEquals(0, itemCaptures);
+    Robolectric.flushForegroundThreadScheduler();
+    assertEquals(1, itemCaptures);
+
+    release(store);
+    State state = new PlaybackStateStore(dir).restore();
+    assertEquals(58, state.items.size());
+    assertEquals(queue.getCurrentIndex(), state.currentIndex);
+  }
+
+  @Test
+  public void pagedSourceNotCaptured() throws Exception {
+    File dir = folder.newFolder();
+    //a stale queue file from a plain list saved before
+    MediaQueue plain = new MediaQueue();
+    player.setMediaQueue(plain);
+    PlaybackStateStore store = attach(dir);
+    plain.update(new ArrayList<>(items(0, 3)));
+    release(store);
+    assertEquals(3, new PlaybackStateStore(dir).restore().items.size());
+
+    PagedMediaQueue paged = new PagedMediaQueue(10, 3);
+    paged.setPrefetchPages(0);
+    player.setMediaQueue(paged);
+    itemCaptures = 0;
+    store = attach(dir);
+    paged.update(new PagedMediaQueue.Source() {
+      @Override
+      public int size() {
+        return 100000;
+      }
+
+      @Override
+      public List<? extends IMediaItem> load(int offset, int count) {
+        loads++;
+        return items(offset, count);
+      }
+
+      @Override
+      public boolean supportsIndexOf() {
+        return false;
+      }
+
+      @Override
+      public int indexOf(String mediaId) {
+        return -1;
+      }
+    });
+    int loadsBefore = loads;//current item only
+    Robolectric.flushForegroundThreadScheduler();
+    release(store);
+
+    assertEquals(0, itemCaptures);
+    assertEquals(loadsBefore, loads);
+    assertNull(new PlaybackStateStore(dir).restore().items);
+  }
+
+  /**
+   * release, and wait for the pending writes
+   */
+  private static void release(PlaybackStateStore store) throws Exception {
+    Robolectric.flushForegroundThreadScheduler();//pending saveQueue
+    Field field = PlaybackStateStore.class.getDeclaredField("writer");
+    field.setAccessible(true);
+    ExecutorService writer = (ExecutorService) field.get(store);
+    store.release();
+    if (writer != null) {
+      writer.awaitTermination(5, TimeUnit.SECONDS);
+    }
+  }
+
+  private static List<IMediaItem> items(int from, int count) {
+    List<IMediaItem> items = new ArrayList<>(count);
+    for (int i = from; i < from + count; i++) {
+      items.add(new StoredMediaItem("id" + i, "http://localhost/" + i, "t" + i, null, null));
+    }
+    return items;
+  }
+}
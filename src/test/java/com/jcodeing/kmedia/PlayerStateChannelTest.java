@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Seqlock: one writer, concurrent readers on separate mappings of the same file (as the player
+ * and ui processes), a read is never torn.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 25)
+public class PlayerStateChannelTest {
+
+  private static final int WRITES = 200000;
+  private static final int READERS = 3;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void notValidBeforePublisher() throws Exception {
+    PlayerStateChannel.Reader reader = new PlayerStateChannel.Reader(
+        new File(folder.getRoot(), "k_player_state"));
+    assertFalse(reader.isValid());
+    assertFalse(reader.read(new PlayerStateChannel.State()));
+  }
+
+  @Test
+  public void readsAreNeverTorn() throws Exception {
+    File file = new File(folder.getRoot(), "k_player_state");
+    final PlayerStateChannel.Publisher publisher = new PlayerStateChannel.Publisher(file);
+    publisher.publish(0, 0, IPlayer.STATE_READY, true, 1f, 0, 0);
+
+    final AtomicBoolean writing = new AtomicBoolean(true);
+    final AtomicReference<String> failure = new AtomicReference<>();
+    final AtomicLong reads = new AtomicLong();
+    final CountDownLatch done = new CountDownLatch(READERS);
+    final PlayerStateChannel.Reader[] readers = new PlayerStateChannel.Reader[READERS];
+    for (int r = 0; r < READERS; r++) {
+      final PlayerStateChannel.Reader reader = readers[r] = new PlayerStateChannel.Reader(file);
+      new Thread(new Runnable() {
+        @Override
+        public void run() {
+          PlayerStateChannel.State s = new PlayerStateChannel.State();
+          long last = -1;
+          try {
+            while (writing.get() && failure.get() == null) {
+              if (!reader.read(s)) {
+                continue;//writer kept writing, retry later
+              }
+              reads.incrementAndGet();
+              String torn = checkConsistent(s);
+              if (torn == null && s.position < last) {
+                torn = "position went back " + last + " -> " + s.position;
+              }
+              if (torn != null) {
+                failure.compareAndSet(null, torn);
+              }
+              last = s.position;
+            }
+          } finally {
+            done.countDown();
+          }
+        }
+      }).start();
+    }
+
+    //every field derived from k, a mix of two writes breaks the relation
+    for (int k = 1; k <= WRITES && failure.get() == null; k++) {
+      publisher.publish(k, 2L * k, k % 5, (k & 1) != 0, 1f + (k % 4), k, -k);
+    }
+    writing.set(false);
+    done.await();
+
+    assertNull(failure.get(), failure.get());
+    assertTrue("readers made no progress", reads.get() > 0);
+    assertEquals(WRITES + 1, publisher.getPublishCount());
+    //stable after the writer stopped
+    PlayerStateChannel.State s = new PlayerStateChannel.State();
+    assertTrue(readers[0].read(s));
+    assertEquals(WRITES, s.position);
+    assertNull(checkConsistent(s));
+  }
+
+  @Test
+  public void writerDiedMidWriteRecovered() throws Exception {
+    File file = new File(folder.getRoot(), "k_player_state");
+    PlayerStateChannel.Publisher publisher = new PlayerStateChannel.Publisher(file);
+    publisher.publish(7, 14, IPlayer.STATE_READY, false, 2f, 7, -7);
+    //odd sequence left by a dead writer
+    java.nio.ByteBuffer raw = PlayerStateChannel.map(file);
+    raw.putInt(8, raw.getInt(8) + 1);
+    PlayerStateChannel.Reader reader = new PlayerStateChannel.Reader(file);
+    assertFalse(reader.read(new PlayerStateChannel.State()));
+    assertEquals(PlayerStateChannel.MAX_READ_RETRIES, reader.getRetryCount());
+
+    new PlayerStateChannel.Publisher(file);//restarted player process
+    PlayerStateChannel.State s = new PlayerStateChannel.State();
+    assertTrue(reader.read(s));
+    assertEquals(7, s.position);
+  }
+
+  /**
+   * @return null: all fields from the same write
+   */
+  private static String checkConsistent(PlayerStateChannel.State s) {
+    long k = s.position;
+    if (s.duration != 2 * k || s.queueIndex != (int) k || s.posUnitIndex != (int) -k
+        || s.playbackState != (k == 0 ? IPlayer.STATE_READY : (int) (k % 5))
+        || (k != 0 && s.playing != ((k & 1) != 0))
+        || (k != 0 && s.speed != 1f + (k % 4))) {
+      return "torn read: position=" + k + " duration=" + s.duration + " queueIndex="
+          + s.queueIndex + " posUnitIndex=" + s.posUnitIndex + " state=" + s.playbackState
+          + " playing=" + s.playing + " speed=" + s.speed;
+    }
+    return null;
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.assist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Activity;
+import android.net.Uri;
+import com.jcodeing.kmedia.AndroidMediaPlayer;
+import com.jcodeing.kmedia.IPlayer;
+import com.jcodeing.kmedia.Player;
+import com.jcodeing.kmedia.video.PlayerView;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowMediaPlayer;
+import org.robolectric.shadows.util.DataSource;
+
+/**
+ * Activating an entry still pre-buffering the same uri plays it once prepared, no second prepare.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = "src/main/AndroidManifest.xml", libraries = "../test/appcompat-res", sdk = 25)
+public class FeedAutoPlayHelperTest {
+
+  private static final String URI = "http://localhost/feed.mp4";
+
+  private int prepares;
+
+  @Test
+  public void preBufferingEntryNotPreparedTwice() throws Exception {
+    ShadowMediaPlayer.addMediaInfo(DataSource.toDataSource(URI),
+        new ShadowMediaPlayer.MediaInfo(60000, 500));//prepare takes 500ms
+    final Activity activity = Robolectric.setupActivity(Activity.class);
+    FeedAutoPlayHelper helper = new FeedAutoPlayHelper(new FeedAutoPlayHelper.PlayerFactory() {
+      @Override
+      public IPlayer createPlayer() {
+        return new Player(activity).init(new AndroidMediaPlayer() {
+          @Override
+          public void prepareAsync() throws IllegalStateException {
+            prepares++;
+            super.prepareAsync();
+          }
+        });
+      }
+    });
+    PlayerView view = new PlayerView(activity, Robolectric.buildAttributeSet().build());
+    invoke(PlayerView.class, view, "onFinishInflate");
+    helper.register(view, Uri.parse(URI));
+    Field field = FeedAutoPlayHelper.class.getDeclaredField("entries");
+    field.setAccessible(true);
+    Object entry = ((List<?>) field.get(helper)).get(0);
+
+    invoke(FeedAutoPlayHelper.class, helper, "preBuffer", entry);
+    IPlayer player = helper.getPlayer(view);
+    assertFalse(player.isPlayable());//still preparing
+    invoke(FeedAutoPlayHelper.class, helper, "activate", entry);
+    Robolectric.getForegroundThreadScheduler().advanceBy(1000);
+
+    assertEquals(1, prepares);
+    assertTrue(player.isPlaying());
+  }
+
+  private static void invoke(Class<?> cls, Object target, String name, Object... args)
+      throws Exception {
+    for (Method method : cls.getDeclaredMethods()) {
+      if (method.getName().equals(name) && method.getParameterTypes().length == args.length) {
+        method.setAccessible(true);
+        method.invoke(target, args);
+        return;
+      }
+    }
+    throw new NoSuchMethodException(name);
+  }
+}
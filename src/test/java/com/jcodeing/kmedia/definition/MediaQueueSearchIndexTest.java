@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.definition;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.net.Uri;
+import android.os.Bundle;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * A failed build must not leave the index building forever.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 25)
+public class MediaQueueSearchIndexTest {
+
+  private static volatile boolean titleFails;
+
+  @Test
+  public void failedBuildNotStuck() throws Exception {
+    List<IMediaItem> items = new ArrayList<>();
+    items.add(new Item("Yellow Submarine"));
+    items.add(new Item("Let It Be"));
+    MediaQueue queue = new MediaQueue();
+    queue.update(items);
+    MediaQueueSearchIndex index = new MediaQueueSearchIndex();
+    titleFails = true;
+    try {
+      index.attach(queue);
+      long start = System.currentTimeMillis();
+      assertEquals(0, index.search("yel", 10, 5000).length);
+      assertTrue(System.currentTimeMillis() - start < 2000);
+      assertTrue(index.isReady());
+    } finally {
+      titleFails = false;
+    }
+    //next modification rebuilds
+    queue.insert(2, new Item("Help"));
+    assertArrayEquals(new int[]{0}, index.search("yel", 10, 5000));
+    assertArrayEquals(new int[]{2}, index.search("hel", 10, 5000));
+    index.release();
+  }
+
+  private static final class Item implements IMediaItem {
+
+    private final String title;
+
+    Item(String title) {
+      this.title = title;
+    }
+
+    @Override
+    public String getMediaId() {
+      return title;
+    }
+
+    @Override
+    public Uri getMediaUri() {
+      return null;
+    }
+
+    @Override
+    public CharSequence getTitle() {
+      if (titleFails) {
+        throw new IllegalStateException("source closed");
+      }
+      return title;
+    }
+
+    @Override
+    public CharSequence getDescription() {
+      return null;
+    }
+
+    @Override
+    public Uri getIconUri() {
+      return null;
+    }
+
+    @Override
+    public Bundle getExtras() {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.definition;
+
+import static org.junit.Assert.assertEquals;
+
+import android.net.Uri;
+import android.os.Bundle;
+import com.jcodeing.kmedia.assist.MediaQueueListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Listeners reading {@link MediaQueue#getCurrentMediaItem()} inside a change event see the item
+ * that keeps playing, not whatever the stale index points at.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 25)
+public class MediaQueueTest {
+
+  private MediaQueue queue;
+  /**
+   * current mediaId seen in each change event
+   */
+  private final List<String> seen = new ArrayList<>();
+
+  @Before
+  public void setUp() {
+    queue = new MediaQueue();
+    queue.update(new ArrayList<>(items("a", "b", "c", "d")));
+    queue.setCurrentIndex(2);//c
+    queue.addListener(new MediaQueueListener() {
+      @Override
+      public void onItemsInserted(int from, int count) {
+        see();
+      }
+
+      @Override
+      public void onItemMoved(int from, int to) {
+        see();
+      }
+
+      @Override
+      public void onItemsRemoved(int from, int count) {
+        see();
+      }
+    });
+  }
+
+  private void see() {
+    seen.add(queue.getCurrentMediaItem().getMediaId());
+  }
+
+  @Test
+  public void indexRevisedBeforeEvents() {
+    queue.insert(0, new Item("x"));
+    queue.remove(0);
+    queue.remove(0, 1);
+    queue.move(1, 0);
+    assertEquals(Arrays.asList("c", "c", "c", "c"), seen);
+  }
+
+  @Test
+  public void currentRemovedMovesToNext() {
+    queue.remove(2);
+    assertEquals(Arrays.asList("d"), seen);
+  }
+
+  @Test
+  public void diffUpdateIndexRevisedBeforeEvents() {
+    List<IMediaItem> newQueue = items("x", "y", "b", "c", "d");
+    queue.update(newQueue, MediaQueueDiff.calculate(items("a", "b", "c", "d"), newQueue));
+    for (String id : seen) {
+      assertEquals("c", id);
+    }
+    assertEquals(3, queue.getCurrentIndex());
+  }
+
+  @Test
+  public void pagedSourceNotDiffed() {
+    int[] loads = new int[1];
+    PagedMediaQueue paged = pagedQueue(loads);
+    paged.update(items("a", "b"), null);
+    assertEquals(2, paged.size());
+    paged = pagedQueue(loads);
+    paged.updateAsync(items("a", "b", "c"));//replaced at once, not diffed
+    assertEquals(3, paged.size());
+    assertEquals(0, loads[0]);
+  }
+
+  private static PagedMediaQueue pagedQueue(final int[] loads) {
+    PagedMediaQueue paged = new PagedMediaQueue(10, 3);
+    paged.setPrefetchPages(0);
+    paged.update(new PagedMediaQueue.Source() {
+      @Override
+      public int size() {
+        return 10000;
+      }
+
+      @Override
+      public List<? extends IMediaItem> load(int offset, int count) {
+        loads[0]++;
+        List<IMediaItem> page = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+          page.add(new Item(String.valueOf(offset + i)));
+        }
+        return page;
+      }
+
+      @Override
+      public boolean supportsIndexOf() {
+        return false;
+      }
+
+      @Override
+      public int indexOf(String mediaId) {
+        return -1;
+      }
+    });
+    return paged;
+  }
+
+  private static List<IMediaItem> items(String... ids) {
+    List<IMediaItem> items = new ArrayList<>();
+    for (String id : ids) {
+      items.add(new Item(id));
+    }
+    return items;
+  }
+
+  private static final class Item implements IMediaItem {
+
+    private final String mediaId;
+
+    Item(String mediaId) {
+      this.mediaId = mediaId;
+    }
+
+    @Override
+    public String getMediaId() {
+      return mediaId;
+    }
+
+    @Override
+    public Uri getMediaUri() {
+      return null;
+    }
+
+    @Override
+    public CharSequence getTitle() {
+      return mediaId;
+    }
+
+    @Override
+    public CharSequence getDescription() {
+      return null;
+    }
+
+    @Override
+    public Uri getIconUri() {
+      return null;
+    }
+
+    @Override
+    public Bundle getExtras() {
+      return null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Item && mediaId.equals(((Item) o).mediaId);
+    }
+
+    @Override
+    public int hashCode() {
+      return mediaId.hashCode();
+    }
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import android.net.Uri;
+import com.jcodeing.kmedia.AndroidMediaPlayer;
+import com.jcodeing.kmedia.IPlayer;
+import com.jcodeing.kmedia.Player;
+import com.jcodeing.kmedia.service.PlayerService.Session;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowMediaPlayer;
+import org.robolectric.shadows.util.DataSource;
+
+/**
+ * Session budget with the real {@link AndroidMediaPlayer} engine (shadowed MediaPlayer), which
+ * never goes back to {@link IPlayer#STATE_IDLE} on stop/reset.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 25)
+public class PlayerServiceTest {
+
+  private static final String URI_A = "http://localhost/a.mp4";
+  private static final String URI_B = "http://localhost/b.mp4";
+
+  private PlayerService service;
+  private final List<Session> preempted = new ArrayList<>();
+
+  @Before
+  public void setUp() {
+    ShadowMediaPlayer.addMediaInfo(DataSource.toDataSource(URI_A),
+        new ShadowMediaPlayer.MediaInfo(60000, 0));
+    ShadowMediaPlayer.addMediaInfo(DataSource.toDataSource(URI_B),
+        new ShadowMediaPlayer.MediaInfo(60000, 0));
+    service = Robolectric.setupService(PlayerService.class);
+    service.addSessionListener(new PlayerService.SessionListener() {
+      @Override
+      public void onSessionPreempted(Session session) {
+        preempted.add(session);
+        if (preempted.size() > 8) {
+          throw new AssertionError("same session preempted again and again");
+        }
+      }
+
+      @Override
+      public void onSessionTornDown(Session session) {
+        //Do nothing
+      }
+    });
+  }
+
+  private static Player newPlayer() {
+    return new Player(RuntimeEnvironment.application).init(new AndroidMediaPlayer());
+  }
+
+  @Test
+  public void preemptFreesTheDecoderOnce() {
+    service.setMaxActiveSessions(1);
+    Session a = service.openSession("a", PlayerService.PRIORITY_BACKGROUND, newPlayer());
+    Session b = service.openSession("b", PlayerService.PRIORITY_BACKGROUND, newPlayer());
+
+    assertTrue(a.player.prepare(Uri.parse(URI_A)));
+    assertTrue(a.isActive());
+    //engine stays not idle after stop/reset, must not loop
+    assertTrue(b.player.prepare(Uri.parse(URI_B)));
+
+    assertEquals(1, preempted.size());
+    assertTrue(preempted.get(0) == a);
+    assertTrue(a.isPreempted());
+    assertFalse(a.isActive());
+    assertTrue(a.player.getPlaybackState() != IPlayer.STATE_IDLE);
+    assertTrue(b.isActive());
+  }
+
+  @Test
+  public void requesterYieldsToHigherPriority() {
+    service.setMaxActiveSessions(1);
+    Session main = service.openSession("main2", PlayerService.PRIORITY_MAIN, newPlayer());
+    Session preview = service.openSession("preview", PlayerService.PRIORITY_PREVIEW, newPlayer());
+
+    assertTrue(main.player.prepare(Uri.parse(URI_A)));
+    //refused before its engine is touched
+    assertFalse(preview.player.prepare(Uri.parse(URI_B)));
+
+    assertEquals(1, preempted.size());
+    assertTrue(preempted.get(0) == preview);
+    assertTrue(preview.isPreempted());
+    assertTrue(main.isActive());
+    assertFalse(preview.isActive());
+    int state = preview.player.getPlaybackState();
+    assertTrue(state != IPlayer.STATE_GOT_SOURCE && state != IPlayer.STATE_BUFFERING
+        && state != IPlayer.STATE_READY);
+    assertTrue(preview.player.internalPlayer().getDataSource() == null);
+  }
+
+  @Test
+  public void stopReleasesTheBudget() {
+    service.setMaxActiveSessions(1);
+    Session a = service.openSession("a", PlayerService.PRIORITY_BACKGROUND, newPlayer());
+    Session b = service.openSession("b", PlayerService.PRIORITY_BACKGROUND, newPlayer());
+
+    a.player.prepare(Uri.parse(URI_A));
+    a.player.stop();
+    assertFalse(a.isActive());
+    b.player.prepare(Uri.parse(URI_B));
+
+    assertEquals(0, preempted.size());
+  }
+
+  @Test
+  public void replacedMainPlayerNotShutDown() {
+    Player first = newPlayer();
+    Player second = newPlayer();
+    service.setPlayer(first);
+    service.setPlayer(second);
+
+    assertNotNull(first.internalPlayer());//shutdown() releases the engine
+    assertTrue(service.getSession(PlayerService.SESSION_MAIN).player == second);
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Not ENABLE: the "{}" overloads must not allocate (no boxing, no varargs, no formatting).
+ */
+public class LTest {
+
+  private static final int CALLS = 100000;
+  /**
+   * slack for the measurement itself, one allocating call per invocation is CALLS * 16+ bytes
+   */
+  private static final long SLACK_BYTES = 1024;
+
+  private com.sun.management.ThreadMXBean threadBean;
+  private boolean enable;
+
+  @Before
+  public void setUp() {
+    enable = L.ENABLE;
+    L.ENABLE = false;
+    Object bean = ManagementFactory.getThreadMXBean();
+    assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+    threadBean = (com.sun.management.ThreadMXBean) bean;
+    assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+    threadBean.setThreadAllocatedMemoryEnabled(true);
+  }
+
+  @After
+  public void tearDown() {
+    L.ENABLE = enable;
+  }
+
+  @Test
+  public void disabledOverloadsDoNotAllocate() {
+    callAll(CALLS);//warm up
+    long allocated = allocatedBy(CALLS);
+    assertTrue("allocated " + allocated + " bytes in " + CALLS + " calls",
+        allocated < SLACK_BYTES);
+  }
+
+  @Test
+  public void measurementSeesAllocation() {
+    long tid = Thread.currentThread().getId();
+    long before = threadBean.getThreadAllocatedBytes(tid);
+    for (int i = 0; i < CALLS; i++) {
+      sink = L.format("Pos({})", i);
+    }
+    long allocated = threadBean.getThreadAllocatedBytes(tid) - before;
+    assertTrue("allocated " + allocated, allocated > CALLS * 16L);
+  }
+
+  @Test
+  public void format() {
+    assertEquals("Pos(5) Index(2)", L.format("Pos({}) Index({})", 5L, 2L));
+    assertEquals("a(x) {}", L.format("a({}) {}", "x"));
+    assertEquals("a", L.format("a", 1));
+  }
+
+  private static Object sink;
+
+  private long allocatedBy(int calls) {
+    long tid = Thread.currentThread().getId();
+    long before = threadBean.getThreadAllocatedBytes(tid);
+    callAll(calls);
+    return threadBean.getThreadAllocatedBytes(tid) - before;
+  }
+
+  private static void callAll(int calls) {
+    String tag = "L~LTest";
+    Object arg = tag;
+    for (int i = 0; i < calls; i++) {
+      long p = i * 1000L;
+      L.v(tag, "Pos({})", p);
+      L.v(tag, "Pos({}) Index({})", p, i);
+      L.d(tag, "Pos({})", p);
+      L.d(tag, "Pos({}) Index({})", p, i);
+      L.d(tag, "Item({})", arg);
+      L.d(tag, "Item({}) Index({})", arg, i);
+      L.dd(tag, "seekTo({})", p);
+    }
+  }
+}
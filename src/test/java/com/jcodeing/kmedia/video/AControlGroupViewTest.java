@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.video;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Activity;
+import android.content.Context;
+import android.view.View;
+import android.view.View.MeasureSpec;
+import android.view.ViewGroup.LayoutParams;
+import android.widget.SeekBar;
+import android.widget.TextView;
+import com.jcodeing.kmedia.R;
+import com.jcodeing.kmedia.view.ProgressAny;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Render cache: invalidations of the progress views per simulated minute of playback
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 25)
+public class AControlGroupViewTest {
+
+  private static final long DURATION_MS = 60 * 60 * 1000;
+  private static final long TICK_MS = 200;
+
+  private ControlGroupView group;
+  private CountingTextView positionTv;
+  private CountingTextView durationTv;
+  private CountingSeekBar progressBar;
+  private CountingProgressAny progressAny;
+
+  @Before
+  public void setUp() {
+    Activity activity = Robolectric.setupActivity(Activity.class);
+    Context context = activity;
+    group = new ControlGroupView(context);
+    TestLayer layer = new TestLayer(context);
+    layer.setId(R.id.k_ctrl_layer_port);
+    positionTv = new CountingTextView(context);
+    positionTv.setId(R.id.k_position_tv);
+    durationTv = new CountingTextView(context);
+    durationTv.setId(R.id.k_duration_tv);
+    progressBar = new CountingSeekBar(context);
+    progressBar.setId(R.id.k_progress_bar);
+    progressAny = new CountingProgressAny(context);
+    progressAny.setId(R.id.k_progress_any);
+    layer.addView(positionTv, new LayoutParams(LayoutParams.WRAP_CONTENT,
+        LayoutParams.WRAP_CONTENT));
+    layer.addView(durationTv, new LayoutParams(LayoutParams.WRAP_CONTENT,
+        LayoutParams.WRAP_CONTENT));
+    layer.addView(progressBar, new LayoutParams(LayoutParams.MATCH_PARENT,
+        LayoutParams.WRAP_CONTENT));
+    layer.addView(progressAny, new LayoutParams(LayoutParams.MATCH_PARENT, 10));
+    group.addView(layer);
+    activity.setContentView(group);
+    assertEquals(1, group.switchControlLayer(R.id.k_ctrl_layer_port));
+    assertTrue(group.isAttachedToWindow);
+  }
+
+  @Test
+  public void invalidationsPerMinute() {
+    long position = 10 * 60 * 1000;//10:00
+    playMinute(position);//first render, widths pinned
+    resetCounts();
+    playMinute(position + 60 * 1000);
+
+    //one new second shown per second, no relayout with pinned width
+    assertEquals(60, positionTv.texts);
+    assertTrue("position invalidations " + positionTv.invalidations,
+        positionTv.invalidations <= 60);
+    assertEquals(0, positionTv.layoutRequests);
+    //duration unchanged
+    assertEquals(0, durationTv.texts);
+    assertEquals(0, durationTv.invalidations);
+    //100 steps over an hour: 1 or 2 per minute
+    assertTrue("progress sets " + progressBar.progressSets, progressBar.progressSets <= 2);
+  }
+
+  @Test
+  public void relayoutOnlyWhenLengthChanges() {
+    group.updateProgressView(59 * 60 * 1000, DURATION_MS);
+    frame();
+    resetCounts();
+    playMinute(59 * 60 * 1000 + 30 * 1000);//59:30 -> 1:00:30 (rounded)
+    assertEquals(61, positionTv.texts);
+    //only the length change at one hour
+    assertEquals(1, positionTv.layoutRequests);
+  }
+
+  @Test
+  public void seekBarUserChangeResetsProgressCache() {
+    long position = 30 * 60 * 1000;
+    group.updateProgressView(position, DURATION_MS);
+    int sets = progressBar.progressSets;
+    group.updateProgressView(position, DURATION_MS);
+    assertEquals(sets, progressBar.progressSets);
+    //user moved the thumb away, the player position not changed yet
+    progressBar.listener.onProgressChanged(progressBar, 10, true);
+    group.updateProgressView(position, DURATION_MS);
+    assertEquals(sets + 1, progressBar.progressSets);
+  }
+
+  @Test
+  public void progressAnyUserChangeResetsProgressCache() {
+    long position = 30 * 60 * 1000;
+    group.updateProgressView(position, DURATION_MS);
+    int sets = progressAny.progressSets;
+    group.updateProgressView(position, DURATION_MS);
+    assertEquals(sets, progressAny.progressSets);
+    progressAny.listener.onProgressChanged(progressAny, 10, true);
+    group.updateProgressView(position, DURATION_MS);
+    assertEquals(sets + 1, progressAny.progressSets);
+  }
+
+  private void playMinute(long fromPosition) {
+    for (long t = 0; t < 60 * 1000; t += TICK_MS) {
+      group.updateProgressView(fromPosition + t, DURATION_MS);
+      frame();
+    }
+  }
+
+  /**
+   * measure/layout pass, as the next frame would do (TextView relayout checks need a layout)
+   */
+  private void frame() {
+    if (group.isLayoutRequested()) {
+      group.measure(MeasureSpec.makeMeasureSpec(1080, MeasureSpec.EXACTLY),
+          MeasureSpec.makeMeasureSpec(200, MeasureSpec.EXACTLY));
+      group.layout(0, 0, 1080, 200);
+    }
+  }
+
+  private void resetCounts() {
+    positionTv.reset();
+    durationTv.reset();
+    progressBar.progressSets = 0;
+  }
+
+  // ============================@Views@============================
+  static final class TestLayer extends AControlLayerView {
+
+    TestLayer(Context context) {
+      super(context);
+    }
+
+    @Override
+    public boolean isVisibleByInteractionArea() {
+      return true;
+    }
+
+    @Override
+    public boolean isVisibleByPlayController() {
+      return true;
+    }
+
+    @Override
+    public void setVisibilityByInteractionArea(int visibility, boolean animation) {
+      setVisibility(visibility);
+    }
+  }
+
+  static final class CountingTextView extends TextView {
+
+    int texts;
+    int invalidations;
+    int layoutRequests;
+
+    CountingTextView(Context context) {
+      super(context);
+    }
+
+    @Override
+    protected void onTextChanged(CharSequence text, int start, int lengthBefore,
+        int lengthAfter) {
+      super.onTextChanged(text, start, lengthBefore, lengthAfter);
+      texts++;
+    }
+
+    @Override
+    public void invalidate() {
+      super.invalidate();
+      invalidations++;
+    }
+
+    @Override
+    public void requestLayout() {
+      super.requestLayout();
+      layoutRequests++;
+    }
+
+    void reset() {
+      texts = invalidations = layoutRequests = 0;
+    }
+  }
+
+  static final class CountingSeekBar extends SeekBar {
+
+    int progressSets;
+    OnSeekBarChangeListener listener;
+
+    CountingSeekBar(Context context) {
+      super(context);
+    }
+
+    @Override
+    public synchronized void setProgress(int progress) {
+      super.setProgress(progress);
+      progressSets++;
+    }
+
+    @Override
+    public void setOnSeekBarChangeListener(OnSeekBarChangeListener l) {
+      super.setOnSeekBarChangeListener(l);
+      listener = l;
+    }
+  }
+
+  static final class CountingProgressAny extends View implements ProgressAny {
+
+    int progressSets;
+    OnChangeListener listener;
+    private int progress;
+    private int secondaryProgress;
+    private int max = 100;
+
+    CountingProgressAny(Context context) {
+      super(context);
+    }
+
+    @Override
+    public int getProgress() {
+      return progress;
+    }
+
+    @Override
+    public void setProgress(int progress) {
+      this.progress = progress;
+      progressSets++;
+    }
+
+    @Override
+    public int getSecondaryProgress() {
+      return secondaryProgress;
+    }
+
+    @Override
+    public void setSecondaryProgress(int secondaryProgress) {
+      this.secondaryProgress = secondaryProgress;
+    }
+
+    @Override
+    public int getMax() {
+      return max;
+    }
+
+    @Override
+    public void setMax(int max) {
+      this.max = max;
+    }
+
+    @Override
+    public void setOnChangeListener(OnChangeListener onChangeListener) {
+      listener = onChangeListener;
+    }
+  }
+}
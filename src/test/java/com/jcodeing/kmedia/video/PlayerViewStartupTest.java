@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2017 K Sun <jcodeing@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jcodeing.kmedia.video;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.util.AttributeSet;
+import android.view.View;
+import android.view.View.MeasureSpec;
+import android.view.ViewGroup;
+import com.jcodeing.kmedia.R;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * PlayerView startup: first frame (construct, attach, measure, layout, draw) with the landscape
+ * control layer eager vs app:lazy_inflate. <p>Robolectric wall time is not device time, the view
+ * count at first frame is the measure.<p/>
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = "src/main/AndroidManifest.xml", libraries = "../test/appcompat-res",
+    sdk = 25)
+public class PlayerViewStartupTest {
+
+  private static final int WIDTH = 1080;
+  private static final int HEIGHT = 608;
+
+  @Test
+  public void lazyLayerNotInflatedUntilSwitch() {
+    Activity activity = Robolectric.setupActivity(Activity.class);
+    PlayerView playerView = firstFrame(activity, true);
+    AControlGroupView group = playerView.getControlGroup();
+    AControlLayerView land = group.getControlLayerView(R.id.k_ctrl_layer_land);
+    assertTrue(group.getControlLayerView(R.id.k_ctrl_layer_port).isInflated());
+    assertFalse(land.isInflated());
+
+    assertEquals(1, group.switchControlLayer(R.id.k_ctrl_layer_land));
+    assertTrue(land.isInflated());
+    assertNotNull(land.findViewById(R.id.part_bottom_container));
+    assertTrue(group.durationTv != null || group.progressBar != null);
+  }
+
+  @Test
+  public void lazyLayerFewerViewsAtFirstFrame() {
+    Activity activity = Robolectric.setupActivity(Activity.class);
+    int eagerViews = countViews(firstFrame(activity, false));
+    int lazyViews = countViews(firstFrame(activity, true));
+    assertTrue("lazy " + lazyViews + " eager " + eagerViews, lazyViews < eagerViews);
+  }
+
+  /**
+   * As inflating: PlayerView > ControlGroupView > ControlLayerView port, land. Then attach and
+   * draw one frame.
+   */
+  private PlayerView firstFrame(Activity activity, boolean lazyLand) {
+    PlayerView playerView = new PlayerView(activity, Robolectric.buildAttributeSet().build());
+    ControlGroupView group = new ControlGroupView(activity);
+    group.setId(R.id.k_ctrl_group);
+    ControlLayerView port = new ControlLayerView(activity);
+    port.setId(R.id.k_ctrl_layer_port);
+    AttributeSet landAttrs = lazyLand ? Robolectric.buildAttributeSet()
+        .addAttribute(R.attr.lazy_inflate, "true").build() : null;
+    ControlLayerView land = new ControlLayerView(activity, landAttrs);
+    land.setId(R.id.k_ctrl_layer_land);
+    group.addView(port);
+    group.addView(land);
+    playerView.addView(group);
+    //children first, as LayoutInflater
+    port.onFinishInflate();
+    land.onFinishInflate();
+    group.onFinishInflate();
+    playerView.onFinishInflate();
+
+    activity.setContentView(playerView);
+    playerView.measure(MeasureSpec.makeMeasureSpec(WIDTH, MeasureSpec.EXACTLY),
+        MeasureSpec.makeMeasureSpec(HEIGHT, MeasureSpec.EXACTLY));
+    playerView.layout(0, 0, WIDTH, HEIGHT);
+    Bitmap frame = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+    playerView.draw(new Canvas(frame));
+    return playerView;
+  }
+
+  private static int countViews(View view) {
+    int count = 1;
+    if (view instanceof ViewGroup) {
+      ViewGroup group = (ViewGroup) view;
+      for (int i = 0; i < group.getChildCount(); i++) {
+        count += countViews(group.getChildAt(i));
+      }
+    }
+    return count;
+  }
+}